@@ -0,0 +1,630 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HilbertEncoder;
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.MappedHPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * An immutable graph stored in compressed sparse row (CSR) form.
+ * <p>
+ * Nodes and edges are identified by dense integer ids, coordinates and weights are kept in primitive arrays.<br/>
+ * The edges are sorted by their starting node, so the edges going out from node <code>n</code> are the ones with id in the range
+ * <code>[outOffsets[n], outOffsets[n + 1])</code>.
+ * </p>
+ * <p>
+ * {@link Node} and {@link Edge} objects are materialized lazily, and only once, the first time they are requested, so strategies
+ * working on the {@link Graph} interface keep working unchanged.
+ * </p>
+ * <p>
+ * The arrays are accessed through buffers, so a graph can also be backed by a memory-mapped snapshot (see {@link CompactGraphSnapshot}).
+ * </p>
+ * <p>
+ * The graph can be read concurrently: the spatial index is built while freezing, and the views are published through atomic arrays,
+ * so every reader sees them fully constructed; when two readers materialize the same view concurrently, only the first one published
+ * is kept and returned to both.
+ * </p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Sparse_matrix#Compressed_sparse_row_(CSR,_CRS_or_Yale_format)">Compressed sparse row</a>
+ */
+public class CompactGraph implements Graph{
+
+	//NOTE: the codes of the highest level (16) would not fit into a positive int
+	private static final int HILBERT_LEVEL = 15;
+
+	private final GeometryFactory factory;
+
+	private final int nodeCount;
+	private final int edgeCount;
+
+	/** Node coordinates, as <code>(x, y)</code> pairs. */
+	final DoubleBuffer nodeCoordinates;
+	final StringTable nodeIDs;
+	/** Offsets into the edges of the first edge going out from each node (plus a sentinel). */
+	final IntBuffer outOffsets;
+
+	final IntBuffer edgeSources;
+	final IntBuffer edgeTargets;
+	final DoubleBuffer edgeWeights;
+	final StringTable edgeIDs;
+	/** Offsets into the path coordinates of the first point of each edge path (plus a sentinel). */
+	final IntBuffer pathOffsets;
+	/** Path coordinates, as <code>(x, y)</code> pairs. */
+	final DoubleBuffer pathCoordinates;
+
+	/** Strongly connected component of each node, in reverse topological order. */
+	final IntBuffer strongComponents;
+	final int strongComponentCount;
+	/** Weakly connected component of each node. */
+	final IntBuffer weakComponents;
+	final int weakComponentCount;
+
+	final MappedHPRtree<Integer> tree;
+
+	//NOTE: views are published through atomic arrays, so a reader never sees a view not fully constructed
+	private final AtomicReferenceArray<CompactNode> nodeViews;
+	private final AtomicReferenceArray<Edge> edgeViews;
+
+
+	/**
+	 * Converts the given graph into its compact form.
+	 * <p>
+	 * A spatial index of the edges is created if the given graph has one.
+	 * </p>
+	 *
+	 * @param graph	The graph to be frozen.
+	 * @return	The compact (immutable) graph.
+	 */
+	public static CompactGraph freeze(final Graph graph){
+		return freeze(graph, false);
+	}
+
+	/**
+	 * Converts the given graph into its compact form, numbering the nodes along a Hilbert curve.
+	 * <p>
+	 * Nodes near in space get near ids, and so do their outgoing edges (that are sorted by starting node), so a search touches far fewer
+	 * memory pages than with the iteration order of the given graph.
+	 * </p>
+	 * <p>
+	 * A spatial index of the edges is created if the given graph has one.
+	 * </p>
+	 *
+	 * @param graph	The graph to be frozen.
+	 * @return	The compact (immutable) graph.
+	 */
+	public static CompactGraph freezeInHilbertOrder(final Graph graph){
+		return freeze(graph, true);
+	}
+
+	private static CompactGraph freeze(final Graph graph, final boolean hilbertOrder){
+		//assign node ids (NOTE: distinct nodes can share the same point, hence the identity map)
+		final Map<Node, Integer> nodeIndexes = new IdentityHashMap<>(graph.nodes().size());
+		List<Node> nodes = new ArrayList<>(graph.nodes().size());
+		for(final Node node : graph.nodes())
+			addNode(node, nodeIndexes, nodes);
+		final Collection<Edge> edges = graph.edges();
+		for(final Edge edge : edges){
+			addNode(edge.getFrom(), nodeIndexes, nodes);
+			addNode(edge.getTo(), nodeIndexes, nodes);
+		}
+		if(hilbertOrder)
+			nodes = renumberInHilbertOrder(nodes, nodeIndexes);
+
+		final int nodeCount = nodes.size();
+		final int edgeCount = edges.size();
+		final double[] nodeCoordinates = new double[nodeCount << 1];
+		final String[] nodeIDs = new String[nodeCount];
+		for(int n = 0; n < nodeCount; n ++){
+			final Node node = nodes.get(n);
+			nodeCoordinates[n << 1] = node.getPoint().getX();
+			nodeCoordinates[(n << 1) + 1] = node.getPoint().getY();
+			nodeIDs[n] = node.getID();
+		}
+
+		//sort edges by starting node (counting sort)
+		final int[] outOffsets = new int[nodeCount + 1];
+		for(final Edge edge : edges)
+			outOffsets[nodeIndexes.get(edge.getFrom()) + 1] ++;
+		for(int n = 0; n < nodeCount; n ++)
+			outOffsets[n + 1] += outOffsets[n];
+		final Edge[] sortedEdges = new Edge[edgeCount];
+		final int[] insertionPoints = new int[nodeCount];
+		System.arraycopy(outOffsets, 0, insertionPoints, 0, nodeCount);
+		int pathSize = 0;
+		for(final Edge edge : edges){
+			sortedEdges[insertionPoints[nodeIndexes.get(edge.getFrom())] ++] = edge;
+			pathSize += edge.getPath().size();
+		}
+
+		final int[] edgeSources = new int[edgeCount];
+		final int[] edgeTargets = new int[edgeCount];
+		final double[] edgeWeights = new double[edgeCount];
+		final String[] edgeIDs = new String[edgeCount];
+		final int[] pathOffsets = new int[edgeCount + 1];
+		final double[] pathCoordinates = new double[pathSize << 1];
+		for(int e = 0; e < edgeCount; e ++){
+			final Edge edge = sortedEdges[e];
+			edgeSources[e] = nodeIndexes.get(edge.getFrom());
+			edgeTargets[e] = nodeIndexes.get(edge.getTo());
+			edgeIDs[e] = edge.getID();
+
+			final Point[] points = edge.getPath().getPoints();
+			int offset = pathOffsets[e];
+			double weight = 0.;
+			for(int p = 0; p < points.length; p ++){
+				pathCoordinates[offset << 1] = points[p].getX();
+				pathCoordinates[(offset << 1) + 1] = points[p].getY();
+				if(p > 0)
+					weight += points[p - 1].distance(points[p]);
+				offset ++;
+			}
+			edgeWeights[e] = weight;
+			pathOffsets[e + 1] = offset;
+		}
+
+		final int[] strongComponents = new int[nodeCount];
+		final int strongComponentCount = ConnectedComponents.strong(nodeCount, IntBuffer.wrap(outOffsets), IntBuffer.wrap(edgeTargets),
+			strongComponents);
+		final int[] weakComponents = new int[nodeCount];
+		final int weakComponentCount = ConnectedComponents.weak(nodeCount, IntBuffer.wrap(edgeSources), IntBuffer.wrap(edgeTargets),
+			weakComponents);
+
+		MappedHPRtree<Integer> tree = null;
+		if(graph.canHaveEdgesNear()){
+			final HPRtree<Integer> heapTree = new HPRtree<>();
+			for(int e = 0; e < edgeCount; e ++)
+				heapTree.insert(sortedEdges[e].getPath().getBoundingBox(), e);
+			//NOTE: the same (buffer-backed) structure a snapshot maps
+			tree = MappedHPRtree.of(heapTree, Integer::intValue, Integer::valueOf);
+		}
+
+		final GeometryFactory factory = (nodeCount > 0? nodes.get(0).getPoint().getFactory(): graph.getFactory());
+		return new CompactGraph(factory, DoubleBuffer.wrap(nodeCoordinates), StringTable.of(nodeIDs), IntBuffer.wrap(outOffsets),
+			IntBuffer.wrap(edgeSources), IntBuffer.wrap(edgeTargets), DoubleBuffer.wrap(edgeWeights), StringTable.of(edgeIDs),
+			IntBuffer.wrap(pathOffsets), DoubleBuffer.wrap(pathCoordinates), IntBuffer.wrap(strongComponents), strongComponentCount,
+			IntBuffer.wrap(weakComponents), weakComponentCount, tree);
+	}
+
+	private static List<Node> renumberInHilbertOrder(final List<Node> nodes, final Map<Node, Integer> nodeIndexes){
+		final Envelope extent = Envelope.ofEmpty();
+		for(final Node node : nodes)
+			extent.expandToInclude(node.getPoint());
+		final HilbertEncoder encoder = new HilbertEncoder(HILBERT_LEVEL, extent);
+		final int nodeCount = nodes.size();
+		//pack the code and the current index into a long, so a primitive sort is enough (ties keep the current order)
+		final long[] keys = new long[nodeCount];
+		for(int n = 0; n < nodeCount; n ++){
+			final Point point = nodes.get(n).getPoint();
+			keys[n] = ((long)encoder.encode(point.getX(), point.getY()) << 32) | n;
+		}
+		Arrays.sort(keys);
+
+		final List<Node> orderedNodes = new ArrayList<>(nodeCount);
+		for(int n = 0; n < nodeCount; n ++){
+			final Node node = nodes.get((int)keys[n]);
+			nodeIndexes.put(node, n);
+			orderedNodes.add(node);
+		}
+		return orderedNodes;
+	}
+
+	private static void addNode(final Node node, final Map<Node, Integer> nodeIndexes, final List<Node> nodes){
+		if(!nodeIndexes.containsKey(node)){
+			nodeIndexes.put(node, nodes.size());
+			nodes.add(node);
+		}
+	}
+
+	CompactGraph(final GeometryFactory factory, final DoubleBuffer nodeCoordinates, final StringTable nodeIDs, final IntBuffer outOffsets,
+			final IntBuffer edgeSources, final IntBuffer edgeTargets, final DoubleBuffer edgeWeights, final StringTable edgeIDs,
+			final IntBuffer pathOffsets, final DoubleBuffer pathCoordinates, final IntBuffer strongComponents, final int strongComponentCount,
+			final IntBuffer weakComponents, final int weakComponentCount, final MappedHPRtree<Integer> tree){
+		this.factory = factory;
+
+		nodeCount = nodeIDs.size();
+		edgeCount = edgeIDs.size();
+		this.nodeCoordinates = nodeCoordinates;
+		this.nodeIDs = nodeIDs;
+		this.outOffsets = outOffsets;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeWeights = edgeWeights;
+		this.edgeIDs = edgeIDs;
+		this.pathOffsets = pathOffsets;
+		this.pathCoordinates = pathCoordinates;
+
+		this.strongComponents = strongComponents;
+		this.strongComponentCount = strongComponentCount;
+		this.weakComponents = weakComponents;
+		this.weakComponentCount = weakComponentCount;
+		this.tree = tree;
+
+		nodeViews = new AtomicReferenceArray<>(nodeCount);
+		edgeViews = new AtomicReferenceArray<>(edgeCount);
+	}
+
+	@Override
+	public GeometryFactory getFactory(){
+		return factory;
+	}
+
+
+	public int nodeCount(){
+		return nodeCount;
+	}
+
+	public int edgeCount(){
+		return edgeCount;
+	}
+
+	public double getNodeX(final int node){
+		return nodeCoordinates.get(node << 1);
+	}
+
+	public double getNodeY(final int node){
+		return nodeCoordinates.get((node << 1) + 1);
+	}
+
+	/**
+	 * Returns the id of the first edge going out from the given node.
+	 *
+	 * @param node	The node id.
+	 * @return	The id of the first out-edge.
+	 */
+	public int getOutEdgesStart(final int node){
+		return outOffsets.get(node);
+	}
+
+	/**
+	 * Returns the id following the one of the last edge going out from the given node.
+	 *
+	 * @param node	The node id.
+	 * @return	The (exclusive) id of the last out-edge.
+	 */
+	public int getOutEdgesEnd(final int node){
+		return outOffsets.get(node + 1);
+	}
+
+	public int getEdgeSource(final int edge){
+		return edgeSources.get(edge);
+	}
+
+	public int getEdgeTarget(final int edge){
+		return edgeTargets.get(edge);
+	}
+
+	/**
+	 * Returns the length of the path of the given edge.
+	 *
+	 * @param edge	The edge id.
+	 * @return	The weight of the edge.
+	 */
+	public double getEdgeWeight(final int edge){
+		return edgeWeights.get(edge);
+	}
+
+	/**
+	 * Returns the strongly connected component of the given node.
+	 * <p>
+	 * Components are numbered in reverse topological order: a node can reach a node of a different component only if its component
+	 * id is greater.
+	 * </p>
+	 *
+	 * @param node	The node id.
+	 * @return	The component id.
+	 */
+	public int getStrongComponent(final int node){
+		return strongComponents.get(node);
+	}
+
+	public int strongComponentCount(){
+		return strongComponentCount;
+	}
+
+	/**
+	 * Returns the weakly connected component (i.e. disregarding the direction of the edges) of the given node.
+	 *
+	 * @param node	The node id.
+	 * @return	The component id.
+	 */
+	public int getWeakComponent(final int node){
+		return weakComponents.get(node);
+	}
+
+	public int weakComponentCount(){
+		return weakComponentCount;
+	}
+
+	/**
+	 * Returns the number of nodes in each strongly connected component.
+	 * <p>
+	 * Useful as a map-quality diagnostic: beside the main component, large components usually mean missing or wrongly oriented
+	 * connections.
+	 * </p>
+	 *
+	 * @return	The size of each component, indexed by component id.
+	 */
+	public int[] strongComponentSizes(){
+		return componentSizes(strongComponents, strongComponentCount);
+	}
+
+	/**
+	 * Returns the number of nodes in each weakly connected component.
+	 *
+	 * @return	The size of each component, indexed by component id.
+	 */
+	public int[] weakComponentSizes(){
+		return componentSizes(weakComponents, weakComponentCount);
+	}
+
+	private int[] componentSizes(final IntBuffer components, final int componentCount){
+		final int[] sizes = new int[componentCount];
+		for(int n = 0; n < nodeCount; n ++)
+			sizes[components.get(n)] ++;
+		return sizes;
+	}
+
+	/**
+	 * Tells, in constant time, whether a node may reach another.
+	 * <p>
+	 * A node cannot reach another one if they lie in different weakly connected components, or if the strongly connected component
+	 * of the target comes later in topological order.
+	 * </p>
+	 *
+	 * @param from	The starting node id.
+	 * @param to	The ending node id.
+	 * @return	Whether the ending node is possibly reachable; if <code>false</code>, it is surely not.
+	 */
+	public boolean mayReach(final int from, final int to){
+		return (weakComponents.get(from) == weakComponents.get(to)
+			&& strongComponents.get(from) >= strongComponents.get(to));
+	}
+
+	@Override
+	public boolean mayReach(final Node from, final Node to){
+		final int fromIndex = indexOf(from);
+		final int toIndex = indexOf(to);
+		return (fromIndex < 0 || toIndex < 0 || mayReach(fromIndex, toIndex));
+	}
+
+	/**
+	 * Returns the id of the given node.
+	 *
+	 * @param node	The node.
+	 * @return	The node id, or <code>-1</code> if the node does not belong to this graph.
+	 */
+	public int indexOf(final Node node){
+		return (node instanceof CompactNode && ((CompactNode)node).graph() == this? node.getIndex(): -1);
+	}
+
+	/**
+	 * Returns the (lazily materialized) node with the given id.
+	 *
+	 * @param node	The node id.
+	 * @return	The node.
+	 */
+	public Node getNode(final int node){
+		final CompactNode view = nodeViews.get(node);
+		if(view != null)
+			return view;
+
+		final CompactNode newView = new CompactNode(node, nodeIDs.get(node), factory.createPoint(getNodeX(node), getNodeY(node)));
+		//keep the view created first, if any reader got ahead
+		final CompactNode witness = nodeViews.compareAndExchange(node, null, newView);
+		return (witness != null? witness: newView);
+	}
+
+	/**
+	 * Returns the (lazily materialized) edge with the given id.
+	 *
+	 * @param edge	The edge id.
+	 * @return	The edge.
+	 */
+	public Edge getEdge(final int edge){
+		final Edge view = edgeViews.get(edge);
+		if(view != null)
+			return view;
+
+		final int pathStart = pathOffsets.get(edge);
+		final Point[] points = new Point[pathOffsets.get(edge + 1) - pathStart];
+		for(int p = 0; p < points.length; p ++){
+			final int index = (pathStart + p) << 1;
+			points[p] = factory.createPoint(pathCoordinates.get(index), pathCoordinates.get(index + 1));
+		}
+
+		final Edge newView = Edge.createDirectEdge(edgeIDs.get(edge), edge, getNode(edgeSources.get(edge)), getNode(edgeTargets.get(edge)),
+			factory.createPolyline(points));
+		//keep the view created first, if any reader got ahead
+		final Edge witness = edgeViews.compareAndExchange(edge, null, newView);
+		return (witness != null? witness: newView);
+	}
+
+
+	@Override
+	public boolean isEmpty(){
+		return (nodeCount == 0);
+	}
+
+	@Override
+	public Collection<Node> nodes(){
+		return new AbstractList<>(){
+			@Override
+			public Node get(final int index){
+				return getNode(index);
+			}
+
+			@Override
+			public int size(){
+				return nodeCount;
+			}
+		};
+	}
+
+	@Override
+	public Collection<Edge> edges(){
+		return new EdgeRange(0, edgeCount);
+	}
+
+
+	@Override
+	public boolean canHaveEdgesNear(){
+		return (tree != null);
+	}
+
+	@Override
+	public Collection<Edge> getEdgesNear(final Point point, final double threshold){
+		final List<Integer> edgeIndexes = getEdgeIndexesIn(SpatialIndex.circumscribedEnvelope(point, threshold));
+
+		final List<Edge> edges = new ArrayList<>(edgeIndexes.size());
+		for(final Integer edgeIndex : edgeIndexes)
+			edges.add(getEdge(edgeIndex));
+		return edges;
+	}
+
+	/**
+	 * Returns the ids of the edges whose bounding box intersects the given envelope, without materializing them.
+	 *
+	 * @param envelope	The envelope.
+	 * @return	The edge ids.
+	 */
+	List<Integer> getEdgeIndexesIn(final Envelope envelope){
+		if(tree == null)
+			throw new IllegalArgumentException("Tree is not defined, freeze a graph that has one");
+
+		return tree.query(envelope);
+	}
+
+
+	@Override
+	public String toString(){
+		return graphAsString()
+			.toString();
+	}
+
+	@Override
+	public String toStringWithObservations(final GPSPoint[] observations){
+		final StringJoiner sj = graphAsString();
+		for(final GPSPoint observation : observations)
+			if(observation != null)
+				sj.add(observation.toString());
+		return sj.toString();
+	}
+
+	private StringJoiner graphAsString(){
+		final StringJoiner sj = new StringJoiner(", ", "GEOMETRYCOLLECTION (", ")");
+		for(int e = 0; e < edgeCount; e ++)
+			sj.add(getEdge(e).getPath().toString());
+		return sj;
+	}
+
+
+	private final class CompactNode extends Node{
+
+		private Collection<Edge> outEdges;
+
+
+		private CompactNode(final int index, final String id, final Point point){
+			super(id, point, index, null);
+		}
+
+		private CompactGraph graph(){
+			return CompactGraph.this;
+		}
+
+		@Override
+		public void setID(final String id){
+			throw new UnsupportedOperationException("Graph is immutable");
+		}
+
+		@Override
+		public Collection<Edge> getOutEdges(){
+			//NOTE: racy single-check, the range is immutable so at worst it is created more than once
+			Collection<Edge> edges = outEdges;
+			if(edges == null){
+				edges = new EdgeRange(outOffsets.get(getIndex()), outOffsets.get(getIndex() + 1));
+				outEdges = edges;
+			}
+			return edges;
+		}
+
+		@Override
+		public void addOutEdge(final Edge edge){
+			throw new UnsupportedOperationException("Graph is immutable");
+		}
+
+		@Override
+		protected void setPoint(final Point point){
+			throw new UnsupportedOperationException("Graph is immutable");
+		}
+
+	}
+
+	private final class EdgeRange extends AbstractList<Edge>{
+
+		private final int start;
+		private final int end;
+
+
+		private EdgeRange(final int start, final int end){
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Edge get(final int index){
+			if(index < 0 || index >= end - start)
+				throw new IndexOutOfBoundsException(index);
+
+			return getEdge(start + index);
+		}
+
+		@Override
+		public int size(){
+			return end - start;
+		}
+
+	}
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.MappedHPRtree;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Binary snapshot of a {@link CompactGraph}.
+ * <p>
+ * The snapshot is written once, and is then opened by memory-mapping the file: the node, edge, and path arrays are not copied on heap,
+ * they are read through buffers backed by the file, whose pages are loaded lazily and shared among processes by the OS cache.<br/>
+ * The node and edge ids are decoded on demand, and the spatial index (if any) is mapped as well (see {@link MappedHPRtree}), so opening
+ * a snapshot allocates a heap independent of the size of the graph.
+ * </p>
+ * <p>
+ * Layout (big-endian):
+ * <ul>
+ * 	<li>header: magic number, version, node count, edge count, path point count, strongly and weakly connected component counts,
+ * 	spatial index flag, padded to 8 bytes</li>
+ * 	<li><code>double</code> sections: node coordinates, edge weights, path coordinates</li>
+ * 	<li><code>int</code> sections: out-edges offsets, edge sources, edge targets, path offsets, strongly and weakly connected component
+ * 	of each node</li>
+ * 	<li>node ids, edge ids (as UTF-8)</li>
+ * 	<li>spatial index, if present, padded to start at a multiple of 8 bytes</li>
+ * </ul>
+ * </p>
+ * <p>
+ * NOTE: a snapshot cannot exceed 2 GiB, as it is mapped as a single buffer.
+ * </p>
+ */
+public final class CompactGraphSnapshot{
+
+	private static final int MAGIC_NUMBER = 0x4D4D_4753;
+	private static final int VERSION = 3;
+
+	private static final int HEADER_SIZE = 32;
+
+
+	private CompactGraphSnapshot(){}
+
+	/**
+	 * Writes the given graph into a snapshot file.
+	 *
+	 * @param graph	The graph.
+	 * @param file	The file to write into, replaced if already present.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	public static void write(final CompactGraph graph, final Path file) throws IOException{
+		try(final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+			final int nodeCount = graph.nodeCount();
+			final int edgeCount = graph.edgeCount();
+			final int pathCoordinates = graph.pathCoordinates.limit();
+
+			output.writeInt(MAGIC_NUMBER);
+			output.writeInt(VERSION);
+			output.writeInt(nodeCount);
+			output.writeInt(edgeCount);
+			output.writeInt(pathCoordinates >> 1);
+			output.writeInt(graph.strongComponentCount);
+			output.writeInt(graph.weakComponentCount);
+			output.writeBoolean(graph.tree != null);
+			pad(output);
+
+			write(output, graph.nodeCoordinates, nodeCount << 1);
+			write(output, graph.edgeWeights, edgeCount);
+			write(output, graph.pathCoordinates, pathCoordinates);
+			write(output, graph.outOffsets, nodeCount + 1);
+			write(output, graph.edgeSources, edgeCount);
+			write(output, graph.edgeTargets, edgeCount);
+			write(output, graph.pathOffsets, edgeCount + 1);
+			write(output, graph.strongComponents, nodeCount);
+			write(output, graph.weakComponents, nodeCount);
+
+			graph.nodeIDs.write(output);
+			graph.edgeIDs.write(output);
+
+			if(graph.tree != null){
+				pad(output);
+				graph.tree.write(output);
+			}
+		}
+	}
+
+	private static void write(final DataOutputStream output, final DoubleBuffer buffer, final int size) throws IOException{
+		for(int i = 0; i < size; i ++)
+			output.writeDouble(buffer.get(i));
+	}
+
+	private static void write(final DataOutputStream output, final IntBuffer buffer, final int size) throws IOException{
+		for(int i = 0; i < size; i ++)
+			output.writeInt(buffer.get(i));
+	}
+
+	private static void pad(final DataOutputStream output) throws IOException{
+		while((output.size() & (Double.BYTES - 1)) != 0)
+			output.writeByte(0);
+	}
+
+	/**
+	 * Opens a snapshot file by memory-mapping it.
+	 *
+	 * @param file	The snapshot file.
+	 * @param factory	The factory used to create the points of the graph.
+	 * @return	The graph backed by the file.
+	 * @throws IOException	If an I/O error occurs, or if the file is not a valid snapshot.
+	 */
+	public static CompactGraph open(final Path file, final GeometryFactory factory) throws IOException{
+		final ByteBuffer buffer;
+		try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot too large to be mapped: " + channel.size() + " bytes");
+			if(channel.size() < HEADER_SIZE)
+				throw new IOException("Not a graph snapshot: " + file);
+
+			//NOTE: the mapping remains valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if(buffer.getInt() != MAGIC_NUMBER)
+			throw new IOException("Not a graph snapshot: " + file);
+		final int version = buffer.getInt();
+		if(version != VERSION)
+			throw new IOException("Unsupported graph snapshot version " + version + ", expected " + VERSION);
+		final int nodeCount = buffer.getInt();
+		final int edgeCount = buffer.getInt();
+		final int pathPoints = buffer.getInt();
+		final int strongComponentCount = buffer.getInt();
+		final int weakComponentCount = buffer.getInt();
+		final boolean withTree = (buffer.get() != 0);
+		final long sectionsSize = (2L * nodeCount + edgeCount + 2L * pathPoints) * Double.BYTES
+			+ (3L * nodeCount + 3L * edgeCount + 2) * Integer.BYTES;
+		if(nodeCount < 0 || edgeCount < 0 || pathPoints < 0 || strongComponentCount < 0 || weakComponentCount < 0
+				|| buffer.limit() - HEADER_SIZE < sectionsSize)
+			throw new IOException("Corrupted graph snapshot: " + file);
+		buffer.position(HEADER_SIZE);
+
+		final DoubleBuffer nodeCoordinates = slice(buffer, (nodeCount << 1) * Double.BYTES).asDoubleBuffer();
+		final DoubleBuffer edgeWeights = slice(buffer, edgeCount * Double.BYTES).asDoubleBuffer();
+		final DoubleBuffer pathCoordinates = slice(buffer, (pathPoints << 1) * Double.BYTES).asDoubleBuffer();
+		final IntBuffer outOffsets = slice(buffer, (nodeCount + 1) * Integer.BYTES).asIntBuffer();
+		final IntBuffer edgeSources = slice(buffer, edgeCount * Integer.BYTES).asIntBuffer();
+		final IntBuffer edgeTargets = slice(buffer, edgeCount * Integer.BYTES).asIntBuffer();
+		final IntBuffer pathOffsets = slice(buffer, (edgeCount + 1) * Integer.BYTES).asIntBuffer();
+		final IntBuffer strongComponents = slice(buffer, nodeCount * Integer.BYTES).asIntBuffer();
+		final IntBuffer weakComponents = slice(buffer, nodeCount * Integer.BYTES).asIntBuffer();
+
+		final StringTable nodeIDs = StringTable.read(buffer);
+		final StringTable edgeIDs = StringTable.read(buffer);
+		if(nodeIDs.size() != nodeCount || edgeIDs.size() != edgeCount)
+			throw new IOException("Corrupted graph snapshot: " + file);
+
+		MappedHPRtree<Integer> tree = null;
+		if(withTree){
+			buffer.position((buffer.position() + Double.BYTES - 1) & -Double.BYTES);
+			tree = MappedHPRtree.map(buffer, Integer::valueOf);
+		}
+
+		return new CompactGraph(factory, nodeCoordinates, nodeIDs, outOffsets, edgeSources, edgeTargets, edgeWeights, edgeIDs,
+			pathOffsets, pathCoordinates, strongComponents, strongComponentCount, weakComponents, weakComponentCount, tree);
+	}
+
+	private static ByteBuffer slice(final ByteBuffer buffer, final int size){
+		final ByteBuffer slice = buffer.slice(buffer.position(), size);
+		buffer.position(buffer.position() + size);
+		return slice;
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Connected components of a graph in compressed sparse row form.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Tarjan%27s_strongly_connected_components_algorithm">Tarjan's strongly connected components algorithm</a>
+ */
+final class ConnectedComponents{
+
+	private ConnectedComponents(){}
+
+	/**
+	 * Assigns each node to its strongly connected component.
+	 * <p>
+	 * The components are numbered in reverse topological order: if a node in component <code>a</code> can reach a node in a different
+	 * component <code>b</code>, then <code>a &gt; b</code>.
+	 * </p>
+	 * <p>
+	 * NOTE: iterative version, so the depth of the graph is not limited by the call stack.
+	 * </p>
+	 *
+	 * @param nodeCount	The number of nodes.
+	 * @param outOffsets	The offsets of the first edge going out from each node (plus a sentinel).
+	 * @param edgeTargets	The target node of each edge.
+	 * @param components	The array to be filled with the component of each node.
+	 * @return	The number of components.
+	 */
+	static int strong(final int nodeCount, final IntBuffer outOffsets, final IntBuffer edgeTargets, final int[] components){
+		final int[] indexes = new int[nodeCount];
+		Arrays.fill(indexes, -1);
+		final int[] lowLinks = new int[nodeCount];
+		final boolean[] onStack = new boolean[nodeCount];
+		final int[] stack = new int[nodeCount];
+		int stackSize = 0;
+		final int[] callStack = new int[nodeCount];
+		final int[] edgeCursors = new int[nodeCount];
+
+		int index = 0;
+		int componentCount = 0;
+		for(int root = 0; root < nodeCount; root ++){
+			if(indexes[root] >= 0)
+				continue;
+
+			int callStackSize = 0;
+			indexes[root] = lowLinks[root] = index ++;
+			stack[stackSize ++] = root;
+			onStack[root] = true;
+			edgeCursors[root] = outOffsets.get(root);
+			callStack[callStackSize ++] = root;
+			while(callStackSize > 0){
+				final int node = callStack[callStackSize - 1];
+				if(edgeCursors[node] < outOffsets.get(node + 1)){
+					final int target = edgeTargets.get(edgeCursors[node] ++);
+					if(indexes[target] < 0){
+						//visit the target
+						indexes[target] = lowLinks[target] = index ++;
+						stack[stackSize ++] = target;
+						onStack[target] = true;
+						edgeCursors[target] = outOffsets.get(target);
+						callStack[callStackSize ++] = target;
+					}
+					else if(onStack[target])
+						lowLinks[node] = Math.min(lowLinks[node], indexes[target]);
+					continue;
+				}
+
+				//all the edges of the node are visited
+				callStackSize --;
+				if(lowLinks[node] == indexes[node]){
+					//the node is the root of a component
+					int member;
+					do{
+						member = stack[-- stackSize];
+						onStack[member] = false;
+						components[member] = componentCount;
+					}while(member != node);
+					componentCount ++;
+				}
+				if(callStackSize > 0){
+					final int parent = callStack[callStackSize - 1];
+					lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[node]);
+				}
+			}
+		}
+		return componentCount;
+	}
+
+	/**
+	 * Assigns each node to its weakly connected component (i.e. disregarding the direction of the edges).
+	 *
+	 * @param nodeCount	The number of nodes.
+	 * @param edgeSources	The source node of each edge.
+	 * @param edgeTargets	The target node of each edge.
+	 * @param components	The array to be filled with the component of each node.
+	 * @return	The number of components.
+	 */
+	static int weak(final int nodeCount, final IntBuffer edgeSources, final IntBuffer edgeTargets, final int[] components){
+		final int[] parents = new int[nodeCount];
+		for(int n = 0; n < nodeCount; n ++)
+			parents[n] = n;
+		for(int e = 0; e < edgeSources.limit(); e ++){
+			final int root1 = find(parents, edgeSources.get(e));
+			final int root2 = find(parents, edgeTargets.get(e));
+			if(root1 != root2)
+				parents[Math.max(root1, root2)] = Math.min(root1, root2);
+		}
+
+		//assign dense component ids (a root always precedes the other nodes of its component)
+		int componentCount = 0;
+		for(int n = 0; n < nodeCount; n ++){
+			final int root = find(parents, n);
+			components[n] = (root == n? componentCount ++: components[root]);
+		}
+		return componentCount;
+	}
+
+	private static int find(final int[] parents, int node){
+		while(parents[node] != node){
+			//path halving
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.EdgeWeightCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+
+/**
+ * A graph whose maximal chains of degree-2 nodes are contracted into single edges.
+ * <p>
+ * A node is in the middle of a chain if it has exactly one incoming and one outgoing edge (one-way road), or exactly two incoming and
+ * two outgoing edges from and to the same two neighbors (two-way road).<br/>
+ * Each chain is replaced by an edge whose path is the concatenation of the paths of the original edges, so searches relax far fewer
+ * nodes.
+ * </p>
+ * <p>
+ * Each contracted edge keeps the original edges it is made of, together with the index of the first point of each of them in the
+ * contracted path, so results can be reported in terms of the original edges.<br/>
+ * A contracted edge has the id of its first original edge, and weighs as the sum of the weights of its original edges (see
+ * {@link #getEdgeWeight(Edge, EdgeWeightCalculator)}), so the shortest paths have the same cost as in the original graph.
+ * </p>
+ * <p>
+ * The nodes with no edges are kept as they are.
+ * </p>
+ */
+public class ContractedGraph implements Graph{
+
+	private final GeometryFactory factory;
+	/** The graph that was contracted, that weighs the original edges. */
+	private final Graph originalGraph;
+
+	private final Collection<Node> nodes;
+	private final Collection<Edge> edges;
+	private final Map<Edge, Chain> chains;
+
+	private final SpatialIndex<Edge> tree;
+
+
+	/**
+	 * Contracts the chains of degree-2 nodes of the given graph.
+	 * <p>
+	 * A spatial index of the edges is created if the given graph has one.
+	 * </p>
+	 *
+	 * @param graph	The graph to be contracted.
+	 * @return	The contracted graph.
+	 */
+	public static ContractedGraph contract(final Graph graph){
+		final Map<Node, List<Edge>> inEdges = new IdentityHashMap<>(graph.nodes().size());
+		for(final Edge edge : graph.edges())
+			inEdges.computeIfAbsent(edge.getTo(), k -> new ArrayList<>(2))
+				.add(edge);
+
+		final ContractedGraph contractedGraph = new ContractedGraph(graph, graph.canHaveEdgesNear());
+		final Map<Node, Node> contractedNodes = new IdentityHashMap<>(graph.nodes().size());
+		final Set<Edge> visitedEdges = Collections.newSetFromMap(new IdentityHashMap<>(graph.edges().size()));
+		//start from the chains that leave a node that is not in a chain
+		for(final Edge edge : graph.edges())
+			if(!isInChain(edge.getFrom(), inEdges))
+				contractedGraph.addChain(edge, inEdges, contractedNodes, visitedEdges);
+		//what is left are cycles made only of chain nodes, break each one at an arbitrary node
+		for(final Edge edge : graph.edges())
+			if(!visitedEdges.contains(edge))
+				contractedGraph.addChain(edge, inEdges, contractedNodes, visitedEdges);
+		//keep the isolated nodes
+		for(final Node node : graph.nodes())
+			if(node.getOutEdges().isEmpty() && !inEdges.containsKey(node))
+				contractedGraph.contractedNode(node, contractedNodes);
+		if(contractedGraph.tree != null)
+			contractedGraph.tree.build();
+		return contractedGraph;
+	}
+
+	private static boolean isInChain(final Node node, final Map<Node, List<Edge>> inEdges){
+		final List<Edge> incoming = inEdges.getOrDefault(node, List.of());
+		final Collection<Edge> outgoing = node.getOutEdges();
+		if(incoming.size() == 1 && outgoing.size() == 1){
+			final Node previous = incoming.get(0).getFrom();
+			final Node next = outgoing.iterator().next().getTo();
+			return (previous != node && next != node && previous != next);
+		}
+		if(incoming.size() == 2 && outgoing.size() == 2){
+			final Set<Node> previous = newIdentitySet();
+			for(final Edge edge : incoming)
+				previous.add(edge.getFrom());
+			final Set<Node> next = newIdentitySet();
+			for(final Edge edge : outgoing)
+				next.add(edge.getTo());
+			return (previous.size() == 2 && !previous.contains(node) && previous.equals(next));
+		}
+		return false;
+	}
+
+	private static Set<Node> newIdentitySet(){
+		return Collections.newSetFromMap(new IdentityHashMap<>(2));
+	}
+
+	/**
+	 * Returns the edge leaving a chain node that does not go back to where the given incoming edge comes from.
+	 */
+	private static Edge nextInChain(final Edge incoming){
+		final Node previous = incoming.getFrom();
+		for(final Edge edge : incoming.getTo().getOutEdges())
+			if(edge.getTo() != previous)
+				return edge;
+		return null;
+	}
+
+	private ContractedGraph(final Graph originalGraph, final boolean withTree){
+		factory = originalGraph.getFactory();
+		this.originalGraph = originalGraph;
+
+		nodes = new ArrayList<>(0);
+		edges = new ArrayList<>(0);
+		chains = new IdentityHashMap<>(0);
+		tree = (withTree? new HPRtree<>(): null);
+	}
+
+	private void addChain(final Edge firstEdge, final Map<Node, List<Edge>> inEdges, final Map<Node, Node> contractedNodes,
+			final Set<Edge> visitedEdges){
+		final List<Edge> originalEdges = new ArrayList<>(1);
+		Edge edge = firstEdge;
+		while(edge != null && visitedEdges.add(edge)){
+			originalEdges.add(edge);
+			if(!isInChain(edge.getTo(), inEdges))
+				break;
+
+			edge = nextInChain(edge);
+		}
+
+		//concatenate the paths
+		final List<Point> points = new ArrayList<>(0);
+		final int[] pointOffsets = new int[originalEdges.size()];
+		for(int i = 0; i < originalEdges.size(); i ++){
+			final Point[] edgePoints = originalEdges.get(i).getPath()
+				.getPoints();
+			//NOTE: merged nodes may not coincide with the path endpoints, keep both points in such a case
+			final boolean sharedPoint = (!points.isEmpty() && points.get(points.size() - 1).equals(edgePoints[0]));
+			pointOffsets[i] = (sharedPoint? points.size() - 1: points.size());
+			points.addAll(Arrays.asList(edgePoints).subList(sharedPoint? 1: 0, edgePoints.length));
+		}
+		final Polyline path = factory.createPolyline(points.toArray(Point[]::new));
+
+		final Node from = contractedNode(firstEdge.getFrom(), contractedNodes);
+		final Node to = contractedNode(originalEdges.get(originalEdges.size() - 1).getTo(), contractedNodes);
+		final Edge contractedEdge = Edge.createDirectEdge(firstEdge.getID(), edges.size(), from, to, path);
+		from.addOutEdge(contractedEdge);
+		edges.add(contractedEdge);
+		chains.put(contractedEdge, new Chain(originalEdges.toArray(Edge[]::new), pointOffsets));
+		if(tree != null)
+			tree.insert(path.getBoundingBox(), contractedEdge);
+	}
+
+	private Node contractedNode(final Node node, final Map<Node, Node> contractedNodes){
+		Node contractedNode = contractedNodes.get(node);
+		if(contractedNode == null){
+			contractedNode = Node.of(node.getID(), node.getPoint());
+			contractedNodes.put(node, contractedNode);
+			nodes.add(contractedNode);
+		}
+		return contractedNode;
+	}
+
+	@Override
+	public GeometryFactory getFactory(){
+		return factory;
+	}
+
+
+	/**
+	 * Calculates the weight of the given edge as the sum of the weights of the original edges it is made of.
+	 * <p>
+	 * The sum is computed once and cached in the chain for the last calculator used, so the relaxations of a search do not walk the
+	 * original edges every time.
+	 * </p>
+	 *
+	 * @param edge	The (contracted) edge.
+	 * @param calculator	The calculator of the weight between two points.
+	 * @return	The weight of the edge.
+	 */
+	@Override
+	public double getEdgeWeight(final Edge edge, final EdgeWeightCalculator calculator){
+		final Chain chain = chains.get(edge);
+		if(chain == null)
+			return Graph.super.getEdgeWeight(edge, calculator);
+
+		final ChainWeight cachedWeight = chain.weight;
+		if(cachedWeight != null && cachedWeight.calculator == calculator)
+			return cachedWeight.weight;
+
+		double weight = 0.;
+		for(final Edge originalEdge : chain.originalEdges)
+			weight += originalGraph.getEdgeWeight(originalEdge, calculator);
+		chain.weight = new ChainWeight(calculator, weight);
+		return weight;
+	}
+
+	/**
+	 * Returns the original edges the given contracted edge is made of.
+	 *
+	 * @param contractedEdge	The contracted edge.
+	 * @return	The original edges, in path order.
+	 */
+	public Edge[] getOriginalEdges(final Edge contractedEdge){
+		final Chain chain = chains.get(contractedEdge);
+		return (chain != null? chain.originalEdges.clone(): new Edge[0]);
+	}
+
+	/**
+	 * Returns the index, in the path of the given contracted edge, of the first point of each original edge.
+	 *
+	 * @param contractedEdge	The contracted edge.
+	 * @return	The point offsets, parallel to {@link #getOriginalEdges(Edge)}.
+	 */
+	public int[] getOriginalPointOffsets(final Edge contractedEdge){
+		final Chain chain = chains.get(contractedEdge);
+		return (chain != null? chain.pointOffsets.clone(): new int[0]);
+	}
+
+	/**
+	 * Returns the original edge containing the given point index of the path of a contracted edge.
+	 *
+	 * @param contractedEdge	The contracted edge.
+	 * @param pointIndex	The index of a point of the contracted path.
+	 * @return	The original edge.
+	 */
+	public Edge getOriginalEdge(final Edge contractedEdge, final int pointIndex){
+		final Chain chain = chains.get(contractedEdge);
+		if(chain == null)
+			return null;
+
+		int index = Arrays.binarySearch(chain.pointOffsets, pointIndex);
+		if(index < 0)
+			index = -index - 2;
+		return chain.originalEdges[Math.max(index, 0)];
+	}
+
+	/**
+	 * Returns the original edge of the given contracted edge that is closest to the given point (e.g. an observation matched to the
+	 * contracted edge).
+	 *
+	 * @param contractedEdge	The contracted edge.
+	 * @param point	The point.
+	 * @return	The closest original edge.
+	 */
+	public Edge getOriginalEdge(final Edge contractedEdge, final Point point){
+		final Chain chain = chains.get(contractedEdge);
+		if(chain == null)
+			return null;
+
+		Edge closestEdge = null;
+		double minDistance = Double.POSITIVE_INFINITY;
+		for(final Edge edge : chain.originalEdges){
+			final double distance = point.distance(edge.getPath().onTrackClosestPoint(point));
+			if(distance < minDistance){
+				minDistance = distance;
+				closestEdge = edge;
+			}
+		}
+		return closestEdge;
+	}
+
+	/**
+	 * Expands a path of contracted edges into the corresponding path of original edges.
+	 *
+	 * @param path	The path of contracted edges (<code>null</code> elements are skipped).
+	 * @return	The path of original edges.
+	 */
+	public Edge[] expandPath(final Edge[] path){
+		final List<Edge> expandedPath = new ArrayList<>(path.length);
+		for(final Edge edge : path)
+			if(edge != null){
+				final Chain chain = chains.get(edge);
+				if(chain != null)
+					expandedPath.addAll(Arrays.asList(chain.originalEdges));
+				else
+					expandedPath.add(edge);
+			}
+		return expandedPath.toArray(Edge[]::new);
+	}
+
+
+	@Override
+	public boolean isEmpty(){
+		return nodes.isEmpty();
+	}
+
+	@Override
+	public Collection<Node> nodes(){
+		return nodes;
+	}
+
+	@Override
+	public Collection<Edge> edges(){
+		return edges;
+	}
+
+
+	@Override
+	public boolean canHaveEdgesNear(){
+		return (tree != null);
+	}
+
+	@Override
+	public Collection<Edge> getEdgesNear(final Point point, final double threshold){
+		if(tree == null)
+			throw new IllegalArgumentException("Tree is not defined, contract a graph that has one");
+
+		//NOTE: each edge is indexed once, so there are no duplicates to filter out
+		final List<Edge> edgesNear = new ArrayList<>(0);
+		tree.query(SpatialIndex.circumscribedEnvelope(point, threshold), (edge, edgeEnvelope) -> edgesNear.add(edge));
+		return edgesNear;
+	}
+
+
+	@Override
+	public String toString(){
+		return graphAsString()
+			.toString();
+	}
+
+	@Override
+	public String toStringWithObservations(final GPSPoint[] observations){
+		final StringJoiner sj = graphAsString();
+		for(final GPSPoint observation : observations)
+			if(observation != null)
+				sj.add(observation.toString());
+		return sj.toString();
+	}
+
+	private StringJoiner graphAsString(){
+		final StringJoiner sj = new StringJoiner(", ", "GEOMETRYCOLLECTION (", ")");
+		for(final Edge edge : edges)
+			sj.add(edge.getPath().toString());
+		return sj;
+	}
+
+
+	private static final class Chain{
+
+		private final Edge[] originalEdges;
+		private final int[] pointOffsets;
+		//the weight of the chain for the last calculator used, replaced as a whole so concurrent searches see a consistent pair
+		private volatile ChainWeight weight;
+
+
+		private Chain(final Edge[] originalEdges, final int[] pointOffsets){
+			this.originalEdges = originalEdges;
+			this.pointOffsets = pointOffsets;
+		}
+
+	}
+
+	private static final class ChainWeight{
+
+		private final EdgeWeightCalculator calculator;
+		private final double weight;
+
+
+		private ChainWeight(final EdgeWeightCalculator calculator, final double weight){
+			this.calculator = calculator;
+			this.weight = weight;
+		}
+
+	}
+
+}
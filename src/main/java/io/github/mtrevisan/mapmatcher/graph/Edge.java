@@ -34,7 +34,9 @@ import java.util.Objects;
 
 public class Edge{
 
-	private String id;
+	private final String id;
+	/** Dense id of the edge inside its graph, <code>-1</code> if not assigned. */
+	private final int index;
 
 	protected final Node from;
 	protected final Node to;
@@ -43,20 +45,37 @@ public class Edge{
 
 	public static Edge createDirectEdge(final Node from, final Node to){
 		final GeometryFactory factory = from.getPoint().getFactory();
-		return new Edge(from, to, factory.createPolyline(from.getPoint(), to.getPoint()));
+		return new Edge(null, -1, from, to, factory.createPolyline(from.getPoint(), to.getPoint()));
 	}
 
 	public static Edge createDirectEdge(final Node from, final Node to, final Polyline path){
-		return new Edge(from, to, path);
+		return new Edge(null, -1, from, to, path);
+	}
+
+	/**
+	 * Creates an edge with a given id and dense id inside its graph.
+	 *
+	 * @param id	The id of the edge, if <code>null</code> it is rendered from the ids of its nodes.
+	 * @param index	The dense id of the edge inside its graph.
+	 * @param from	The starting node.
+	 * @param to	The ending node.
+	 * @param path	The path of the edge.
+	 * @return	The edge.
+	 */
+	static Edge createDirectEdge(final String id, final int index, final Node from, final Node to, final Polyline path){
+		if(id != null && id.length() == 0)
+			throw new IllegalArgumentException("`id` cannot be empty");
+
+		return new Edge(id, index, from, to, path);
 	}
 
 	public static Edge createSelfEdge(final Node node){
 		final Point point = node.getPoint();
 		final GeometryFactory factory = point.getFactory();
-		return new Edge(node, node, factory.createPolyline(point, point));
+		return new Edge(null, -1, node, node, factory.createPolyline(point, point));
 	}
 
-	private Edge(final Node from, final Node to, final Polyline path){
+	private Edge(final String id, final int index, final Node from, final Node to, final Polyline path){
 		if(from == null)
 			throw new IllegalArgumentException("`from` node cannot be null");
 		if(to == null)
@@ -64,23 +83,34 @@ public class Edge{
 		if(path == null || path.isEmpty())
 			throw new IllegalArgumentException("`path` node cannot be null or empty");
 
-		id = Objects.requireNonNullElse(from.getID(), "<null>")
-			+ "-"
-			+ Objects.requireNonNullElse(to.getID(), "<null>");
+		this.id = id;
+		this.index = index;
 		this.from = from;
 		this.to = to;
 		this.path = path;
 	}
 
+	/**
+	 * Returns the id of this edge.
+	 * <p>
+	 * If no id was explicitly given, it is rendered (each time) from the ids of its nodes.
+	 * </p>
+	 *
+	 * @return	The id of the edge.
+	 */
 	public String getID(){
-		return id;
+		return (id != null
+			? id
+			: Objects.requireNonNullElse(from.getID(), "<null>") + "-" + Objects.requireNonNullElse(to.getID(), "<null>"));
 	}
 
-	void setID(final String id){
-		if(id == null || id.length() == 0)
-			throw new IllegalArgumentException("`id` cannot be null or empty");
-
-		this.id = id;
+	/**
+	 * Returns the dense id of this edge inside its graph.
+	 *
+	 * @return	The index of the edge, <code>-1</code> if not assigned.
+	 */
+	public int getIndex(){
+		return index;
 	}
 
 	public Node getFrom(){
@@ -127,7 +157,7 @@ public class Edge{
 
 	@Override
 	public String toString(){
-		return "Edge{id = " + id + ", from = " + from + ", to = " + to
+		return "Edge{id = " + getID() + ", from = " + from + ", to = " + to
 			+ (path.size() > 1? ", path = " + path: "")
 			+ "}";
 	}
@@ -24,6 +24,7 @@
  */
 package io.github.mtrevisan.mapmatcher.graph;
 
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.EdgeWeightCalculator;
 import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
 import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
 import io.github.mtrevisan.mapmatcher.spatial.Point;
@@ -56,6 +57,48 @@ public interface Graph{
 	 */
 	Collection<Edge> edges();
 
+	/**
+	 * Returns a counter that changes whenever the graph is modified.
+	 * <p>
+	 * Used to tell whether what is derived from the graph is stale, the default implementation is for immutable graphs and always
+	 * returns <code>0</code>.
+	 * </p>
+	 *
+	 * @return	The modification count.
+	 */
+	default int getModificationCount(){
+		return 0;
+	}
+
+
+	/**
+	 * Calculates the weight of the given edge of this graph.
+	 * <p>
+	 * The default implementation weights the segment joining the nodes of the edge.
+	 * </p>
+	 *
+	 * @param edge	The edge.
+	 * @param calculator	The calculator of the weight between two points.
+	 * @return	The weight of the edge.
+	 */
+	default double getEdgeWeight(final Edge edge, final EdgeWeightCalculator calculator){
+		return calculator.calculateWeight(edge.getFrom().getPoint(), edge.getTo().getPoint());
+	}
+
+	/**
+	 * Tells whether a node may reach another one.
+	 * <p>
+	 * Used to skip searches that are bound to fail, the default implementation does not know and returns <code>true</code>.
+	 * </p>
+	 *
+	 * @param from	The starting node.
+	 * @param to	The ending node.
+	 * @return	Whether the ending node is possibly reachable; if <code>false</code>, it is surely not.
+	 */
+	default boolean mayReach(final Node from, final Node to){
+		return true;
+	}
+
 
 	boolean canHaveEdgesNear();
 
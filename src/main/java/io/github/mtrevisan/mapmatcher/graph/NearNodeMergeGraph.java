@@ -25,9 +25,9 @@
 package io.github.mtrevisan.mapmatcher.graph;
 
 import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
 import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
-import io.github.mtrevisan.mapmatcher.spatial.GeodeticHelper;
 import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
 import io.github.mtrevisan.mapmatcher.spatial.Point;
 import io.github.mtrevisan.mapmatcher.spatial.Polyline;
@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -43,6 +44,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.TreeMap;
+import java.util.function.IntFunction;
 
 
 public class NearNodeMergeGraph implements Graph{
@@ -51,13 +53,27 @@ public class NearNodeMergeGraph implements Graph{
 
 	private static final String EMPTY = "";
 
+	private static final int ROLE_FROM = 0;
+	private static final int ROLE_TO = 1;
+
 
 	private final Set<Edge> edges = new HashSet<>(0);
 	private final Map<Point, Node> nodeMap = new TreeMap<>();
 
+	//original ids of the edges, shared by all the nodes referring to them
+	private final List<String> sourceIDs = new ArrayList<>(0);
+	//for each node (by its index), the references to the source ids of its edges, as `sourceIndex << 1 | role`
+	private final List<int[]> nodeReferences = new ArrayList<>(0);
+	private final IntFunction<String> nodeIDRenderer = this::renderNodeID;
+
 	private final double threshold;
+	//spatial hash of the node points, sized to the merge threshold
+	private PointGrid<Node> nodeGrid;
 
-	private HPRtree<Polyline> tree;
+	//spatial index of the edges, each edge is stored under the bounding box of its path
+	private SpatialIndex<Edge> tree;
+
+	private int modificationCount;
 
 
 	public NearNodeMergeGraph(final double threshold){
@@ -65,15 +81,25 @@ public class NearNodeMergeGraph implements Graph{
 	}
 
 	public NearNodeMergeGraph withTree(){
-		tree = new HPRtree<>();
+		return withTree(new HPRtree<>());
+	}
+
+	/**
+	 * Indexes the edges into the given spatial index, to be able to find the edges near a point.
+	 *
+	 * @param tree	An empty spatial index.
+	 * @return	This graph.
+	 */
+	public NearNodeMergeGraph withTree(final SpatialIndex<Edge> tree){
+		this.tree = tree;
 
 		return this;
 	}
 
 	@Override
 	public GeometryFactory getFactory(){
-		for(final Polyline polyline : tree.nodes())
-			return polyline.getFactory();
+		for(final Edge edge : edges)
+			return edge.getPath().getFactory();
 		return null;
 	}
 
@@ -93,22 +119,34 @@ public class NearNodeMergeGraph implements Graph{
 		if(path == null || path.size() < 2)
 			return Collections.emptyList();
 
+		final Collection<Node> startNodes = connectNodes(getNodesNear(path.getStartPoint()), path.getStartPoint());
+		final Collection<Node> endNodes = connectNodes(getNodesNear(path.getEndPoint()), path.getEndPoint());
+		return connectEdges(id, path, startNodes, endNodes);
+	}
+
+	/**
+	 * Adds the edges between each of the given starting nodes and each of the given ending nodes.
+	 *
+	 * @param id	The id of the edge, can be <code>null</code>.
+	 * @param path	The path of the edge.
+	 * @param startNodes	The nodes connected to the start of the path.
+	 * @param endNodes	The nodes connected to the end of the path.
+	 * @return	The added edges.
+	 */
+	Collection<Edge> connectEdges(final String id, final Polyline path, final Collection<Node> startNodes,
+			final Collection<Node> endNodes){
+		modificationCount ++;
+		final int sourceIndex = (id != null? addSourceID(id): -1);
 		final Collection<Edge> addedEdges = new HashSet<>(0);
-		final Collection<Node> startNodes = connectNodes(path.getStartPoint());
-		final Collection<Node> endNodes = connectNodes(path.getEndPoint());
 		final Set<Node> intersectionNodes = new HashSet<>(startNodes);
 		intersectionNodes.retainAll(endNodes);
 
 		for(final Node fromNode : startNodes)
 			for(final Node toNode : endNodes){
-				final Edge edge = Edge.createDirectEdge(fromNode, toNode, path);
+				final Edge edge = Edge.createDirectEdge(id, edges.size(), fromNode, toNode, path);
 				if(id != null){
-					edge.setID(id);
-
-					String nodeID = (fromNode.getID() != null && fromNode.getID().length() > 0? fromNode.getID() + ",": EMPTY);
-					fromNode.setID(nodeID + edge.getID() + "/from");
-					nodeID = (toNode.getID() != null && toNode.getID().length() > 0? toNode.getID() + ",": EMPTY);
-					toNode.setID(nodeID + edge.getID() + "/to");
+					addNodeReference(fromNode, sourceIndex, ROLE_FROM);
+					addNodeReference(toNode, sourceIndex, ROLE_TO);
 
 					LOGGER.debug("Create edge '{}' from '{}' to '{}'", edge.getID(), fromNode.getPoint(), toNode.getPoint());
 				}
@@ -118,21 +156,17 @@ public class NearNodeMergeGraph implements Graph{
 
 					addedEdges.add(edge);
 
-					LOGGER.debug("Connect edge '{}' to node '{}' and '{}'", edge.getID(), fromNode.getID(), toNode.getID());
+					if(LOGGER.isDebugEnabled())
+						LOGGER.debug("Connect edge '{}' to node '{}' and '{}'", edge.getID(), fromNode.getID(), toNode.getID());
 				}
 			}
 		for(final Node intersectionNode1 : intersectionNodes)
 			for(final Node intersectionNode2 : intersectionNodes)
 				if(!intersectionNode1.equals(intersectionNode2)){
-					final Edge edge = Edge.createDirectEdge(intersectionNode1, intersectionNode2, path);
-					if(id != null){
-						edge.setID(id);
-
-						final String nodeID = (edge.getID() != null && edge.getID().length() > 0? edge.getID() + ",": EMPTY);
-						edge.setID(nodeID + edge.getID() + "/from-to");
-
+					final String selfID = (id != null? id + "," + id + "/from-to": null);
+					final Edge edge = Edge.createDirectEdge(selfID, edges.size(), intersectionNode1, intersectionNode2, path);
+					if(id != null)
 						LOGGER.debug("Create self edge '{}': point {}", edge.getID(), edge.getFrom().getPoint());
-					}
 					if(!edges.contains(edge)){
 						intersectionNode1.addOutEdge(edge);
 						intersectionNode2.addOutEdge(edge);
@@ -140,20 +174,67 @@ public class NearNodeMergeGraph implements Graph{
 
 						addedEdges.add(edge);
 
-						LOGGER.debug("Connect edge '{}' to intersection node '{}' and '{}'", edge.getID(), intersectionNode1.getID(), intersectionNode2.getID());
+						if(LOGGER.isDebugEnabled())
+							LOGGER.debug("Connect edge '{}' to intersection node '{}' and '{}'", edge.getID(), intersectionNode1.getID(), intersectionNode2.getID());
 					}
 				}
 
-		if(tree != null){
+		if(tree != null && !addedEdges.isEmpty()){
 			final Envelope geoBoundingBox = path.getBoundingBox();
-			tree.insert(geoBoundingBox, path);
+			for(final Edge edge : addedEdges)
+				tree.insert(geoBoundingBox, edge);
 		}
 
 		return addedEdges;
 	}
 
-	private Collection<Node> connectNodes(final Point newPoint){
-		final Collection<Node> nodes = getApproximateNode(newPoint);
+	private int addSourceID(final String id){
+		sourceIDs.add(id);
+		return sourceIDs.size() - 1;
+	}
+
+	private void addNodeReference(final Node node, final int sourceIndex, final int role){
+		final int reference = (sourceIndex << 1) | role;
+		final int[] references = nodeReferences.get(node.getIndex());
+		if(references == null)
+			nodeReferences.set(node.getIndex(), new int[]{reference});
+		//NOTE: a node connected to more nodes at the other end is referenced once per source edge
+		else if(references[references.length - 1] != reference){
+			final int[] newReferences = Arrays.copyOf(references, references.length + 1);
+			newReferences[references.length] = reference;
+			nodeReferences.set(node.getIndex(), newReferences);
+		}
+	}
+
+	/**
+	 * Renders the id of a node as the comma-separated list of the source ids of its edges, each followed by the role of the node in the
+	 * edge (e.g. <code>e1/to,e2/from</code>).
+	 *
+	 * @param nodeIndex	The index of the node.
+	 * @return	The id of the node.
+	 */
+	private String renderNodeID(final int nodeIndex){
+		final int[] references = nodeReferences.get(nodeIndex);
+		if(references == null)
+			return EMPTY;
+
+		final StringJoiner sj = new StringJoiner(",");
+		for(final int reference : references)
+			sj.add(sourceIDs.get(reference >> 1) + ((reference & 1) == ROLE_FROM? "/from": "/to"));
+		return sj.toString();
+	}
+
+	/**
+	 * Connects a point to the given (near) nodes, moving them to a common virtual point, or to a new node if there are none.
+	 *
+	 * @param nodes	The nodes near the given point, a new node is added to it if empty.
+	 * @param newPoint	The point.
+	 * @return	The connected nodes.
+	 */
+	Collection<Node> connectNodes(final Collection<Node> nodes, final Point newPoint){
+		modificationCount ++;
+		if(nodes.isEmpty())
+			nodes.add(addNode(newPoint));
 		final Point virtualStartPoint = calculateVirtualPoint(nodes, newPoint);
 		for(final Node node : nodes)
 			node.setPoint(virtualStartPoint);
@@ -178,27 +259,39 @@ public class NearNodeMergeGraph implements Graph{
 		return factory.createPoint(longitude, latitude);
 	}
 
-	private Collection<Node> getApproximateNode(final Point point){
-		final Collection<Node> closest = getNodesNear(point);
-		if(closest.isEmpty()){
-			final Node node = Node.of(EMPTY, point);
-			nodeMap.put(point, node);
-			closest.add(node);
+	/**
+	 * Adds a new node at the given point.
+	 *
+	 * @param point	The point of the node.
+	 * @return	The new node.
+	 */
+	Node addNode(final Point point){
+		modificationCount ++;
+		final Node node = Node.of(nodeReferences.size(), nodeIDRenderer, point);
+		nodeReferences.add(null);
+		nodeMap.put(point, node);
+		if(threshold > 0.){
+			if(nodeGrid == null)
+				nodeGrid = new PointGrid<>(point, threshold);
+			nodeGrid.add(point, node);
 		}
-		return closest;
+		return node;
 	}
 
 	public Collection<Node> getNodesNear(final Point point){
 		final Set<Node> closest = new HashSet<>(0);
-		if(threshold > 0.)
-			for(final Map.Entry<Point, Node> entry : nodeMap.entrySet()){
-				if(point.distance(entry.getKey()) <= threshold)
-					closest.add(entry.getValue());
-			}
-		else
-			for(final Map.Entry<Point, Node> entry : nodeMap.entrySet())
-				if(threshold == 0. && point.equals(entry.getKey()))
-					closest.add(entry.getValue());
+		if(threshold > 0.){
+			if(nodeGrid != null)
+				nodeGrid.forEachCandidate(point, (nodePoint, node) -> {
+					if(point.distance(nodePoint) <= threshold)
+						closest.add(node);
+				});
+		}
+		else if(threshold == 0.){
+			final Node node = nodeMap.get(point);
+			if(node != null)
+				closest.add(node);
+		}
 		return closest;
 	}
 
@@ -217,6 +310,11 @@ public class NearNodeMergeGraph implements Graph{
 		return edges;
 	}
 
+	@Override
+	public int getModificationCount(){
+		return modificationCount;
+	}
+
 
 	@Override
 	public boolean canHaveEdgesNear(){
@@ -228,16 +326,10 @@ public class NearNodeMergeGraph implements Graph{
 		if(tree == null)
 			throw new IllegalArgumentException("Tree is not defined, call .withTree() while constructing the graph");
 
-		final Point northEast = GeodeticHelper.destination(point, 45., threshold);
-		final Point southWest = GeodeticHelper.destination(point, 225., threshold);
-		final Envelope envelope = Envelope.of(northEast, southWest);
-		final List<Polyline> polylines = tree.query(envelope);
-
-		final List<Edge> edges = new ArrayList<>(0);
-		for(final Edge edge : this.edges)
-			if(polylines.contains(edge.getPath()))
-				edges.add(edge);
-		return edges;
+		//NOTE: each edge is indexed once, so there are no duplicates to filter out
+		final List<Edge> edgesNear = new ArrayList<>(0);
+		tree.query(SpatialIndex.circumscribedEnvelope(point, threshold), (edge, edgeEnvelope) -> edgesNear.add(edge));
+		return edgesNear;
 	}
 
 
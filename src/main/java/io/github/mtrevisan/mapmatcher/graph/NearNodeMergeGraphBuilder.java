@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+
+/**
+ * Bulk builder of a {@link NearNodeMergeGraph}.
+ * <p>
+ * The graph is built in two phases:
+ * <ol>
+ * 	<li>for each distinct endpoint of the edges, the endpoints within the merge threshold are found in parallel, through a uniform grid
+ * 	sized to the threshold (this is where all the distance calculations are done)</li>
+ * 	<li>nodes, edges, and the spatial index are emitted in a single pass, in the order the edges were given: an endpoint is merged into
+ * 	the nodes already created at its neighbors, or creates a new node if there are none</li>
+ * </ol>
+ * The second phase replays exactly the merges (and the node moves) of
+ * {@link NearNodeMergeGraph#addApproximateDirectEdge(String, Polyline)}, so the graph is the same as the one built by adding the edges
+ * one at a time.
+ * </p>
+ */
+public class NearNodeMergeGraphBuilder{
+
+	private final double threshold;
+	//the factory of the spatial index of the edges, if any
+	private Supplier<? extends SpatialIndex<Edge>> treeFactory;
+
+	private final List<String> ids = new ArrayList<>(0);
+	private final List<Polyline> paths = new ArrayList<>(0);
+
+
+	public NearNodeMergeGraphBuilder(final double threshold){
+		this.threshold = threshold;
+	}
+
+	public NearNodeMergeGraphBuilder withTree(){
+		return withTree(HPRtree::new);
+	}
+
+	/**
+	 * Indexes the edges of the built graph into the spatial index given by the factory.
+	 *
+	 * @param treeFactory	The factory of an empty spatial index.
+	 * @return	This builder.
+	 */
+	public NearNodeMergeGraphBuilder withTree(final Supplier<? extends SpatialIndex<Edge>> treeFactory){
+		this.treeFactory = treeFactory;
+
+		return this;
+	}
+
+	/**
+	 * Adds an edge to be built.
+	 *
+	 * @param id	The id of the edge, can be <code>null</code>.
+	 * @param path	The path of the edge, ignored if with less than two points.
+	 * @return	This builder.
+	 */
+	public NearNodeMergeGraphBuilder addApproximateDirectEdge(final String id, final Polyline path){
+		if(path != null && path.size() >= 2){
+			ids.add(id);
+			paths.add(path);
+		}
+
+		return this;
+	}
+
+	public NearNodeMergeGraph build(){
+		final int edgeCount = paths.size();
+		//the same point is shared by more endpoints (e.g. at a junction, or for the reversed edges), compute its neighbors only once
+		final Map<Point, Integer> pointIndexes = new HashMap<>(edgeCount);
+		final List<Point> points = new ArrayList<>(edgeCount);
+		final int[] endpoints = new int[edgeCount << 1];
+		for(int e = 0; e < edgeCount; e ++){
+			endpoints[e << 1] = pointIndex(paths.get(e).getStartPoint(), pointIndexes, points);
+			endpoints[(e << 1) + 1] = pointIndex(paths.get(e).getEndPoint(), pointIndexes, points);
+		}
+
+		//phase 1: find the neighbors of each point
+		final int[][] neighbors = (threshold > 0.? findNeighbors(points): null);
+
+		//phase 2: emit nodes and edges
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(threshold);
+		if(treeFactory != null)
+			graph.withTree(treeFactory.get());
+		//the node created at each point, if any
+		final Node[] createdNodes = new Node[points.size()];
+		for(int e = 0; e < edgeCount; e ++){
+			final Collection<Node> startNodes = connectNodes(graph, endpoints[e << 1], points, neighbors, createdNodes);
+			final Collection<Node> endNodes = connectNodes(graph, endpoints[(e << 1) + 1], points, neighbors, createdNodes);
+			graph.connectEdges(ids.get(e), paths.get(e), startNodes, endNodes);
+		}
+		return graph;
+	}
+
+	private static int pointIndex(final Point point, final Map<Point, Integer> pointIndexes, final List<Point> points){
+		Integer index = pointIndexes.get(point);
+		if(index == null){
+			index = points.size();
+			pointIndexes.put(point, index);
+			points.add(point);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns, for each point, the points within the threshold (itself included).
+	 */
+	private int[][] findNeighbors(final List<Point> points){
+		final int[][] neighbors = new int[points.size()][];
+		if(!points.isEmpty()){
+			final PointGrid<Integer> grid = new PointGrid<>(points.get(0), threshold);
+			for(int i = 0; i < points.size(); i ++)
+				grid.add(points.get(i), i);
+
+			IntStream.range(0, points.size())
+				.parallel()
+				.forEach(i -> {
+					final Point point = points.get(i);
+					final List<Integer> near = new ArrayList<>(1);
+					grid.forEachCandidate(point, (nodePoint, j) -> {
+						if(point.distance(nodePoint) <= threshold)
+							near.add(j);
+					});
+					neighbors[i] = near.stream()
+						.mapToInt(Integer::intValue)
+						.toArray();
+				});
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Connects an endpoint to the nodes created so far at its neighboring points, or to a new node, as
+	 * {@link NearNodeMergeGraph#addApproximateDirectEdge(String, Polyline)} does.
+	 * <p>
+	 * NOTE: only the first endpoint at a given point can create a node, as any later one finds it.
+	 * </p>
+	 */
+	private static Collection<Node> connectNodes(final NearNodeMergeGraph graph, final int pointIndex, final List<Point> points,
+			final int[][] neighbors, final Node[] createdNodes){
+		final Point point = points.get(pointIndex);
+		final Collection<Node> nodes;
+		if(neighbors != null){
+			nodes = new HashSet<>(0);
+			for(final int neighbor : neighbors[pointIndex])
+				if(createdNodes[neighbor] != null)
+					nodes.add(createdNodes[neighbor]);
+		}
+		else
+			//no threshold, just an exact lookup
+			nodes = graph.getNodesNear(point);
+
+		final boolean createsNode = nodes.isEmpty();
+		graph.connectNodes(nodes, point);
+		if(createsNode)
+			createdNodes[pointIndex] = nodes.iterator().next();
+		return nodes;
+	}
+
+}
@@ -30,11 +30,16 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.IntFunction;
 
 
 public class Node{
 
 	protected String id;
+	/** Dense id of the node inside its graph, <code>-1</code> if not assigned. */
+	private final int index;
+	/** Renders the id of the node from its index, used when no explicit id is given. */
+	private final IntFunction<String> idRenderer;
 
 	protected Point point;
 
@@ -42,21 +47,46 @@ public class Node{
 
 
 	public static Node of(final String id, final Point point){
-		return new Node(id, point);
+		return new Node(id, point, -1, null);
 	}
 
-	protected Node(){}
+	/**
+	 * Creates a node whose id is rendered on demand from its index.
+	 *
+	 * @param index	The dense id of the node inside its graph.
+	 * @param idRenderer	The function that renders the id of the node given its index.
+	 * @param point	The point of the node.
+	 * @return	The node.
+	 */
+	static Node of(final int index, final IntFunction<String> idRenderer, final Point point){
+		return new Node(null, point, index, idRenderer);
+	}
+
+	protected Node(){
+		index = -1;
+		idRenderer = null;
+	}
 
-	private Node(final String id, final Point point){
+	protected Node(final String id, final Point point, final int index, final IntFunction<String> idRenderer){
 		if(point == null)
 			throw new IllegalArgumentException("`point` cannot be null");
 
 		this.id = id;
 		this.point = point;
+		this.index = index;
+		this.idRenderer = idRenderer;
 	}
 
+	/**
+	 * Returns the id of this node.
+	 * <p>
+	 * If no id was explicitly given, it is rendered (each time) from the index of the node, if a renderer was given.
+	 * </p>
+	 *
+	 * @return	The id of the node.
+	 */
 	public String getID(){
-		return id;
+		return (id == null && idRenderer != null? idRenderer.apply(index): id);
 	}
 
 	public void setID(final String id){
@@ -66,6 +96,15 @@ public class Node{
 		this.id = id;
 	}
 
+	/**
+	 * Returns the dense id of this node inside its graph.
+	 *
+	 * @return	The index of the node, <code>-1</code> if not assigned.
+	 */
+	public int getIndex(){
+		return index;
+	}
+
 	public Collection<Edge> getOutEdges(){
 		return outEdges;
 	}
@@ -108,7 +147,7 @@ public class Node{
 
 	@Override
 	public String toString(){
-		return "Node{id = " + id + ", point = " + point + "}";
+		return "Node{id = " + getID() + ", point = " + point + "}";
 	}
 
 }
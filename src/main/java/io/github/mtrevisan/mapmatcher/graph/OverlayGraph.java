@@ -0,0 +1,357 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
+import io.github.mtrevisan.mapmatcher.spatial.GeodeticHelper;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+
+/**
+ * An immutable view of a {@link CompactGraph} with some of its edges removed, and some new edges added.
+ * <p>
+ * The base graph is shared as is, only the delta is stored: the ids of the removed edges, and the added edges (with their new nodes).
+ * <br/>
+ * An endpoint of an added edge is attached to the nearest node (of the base graph or of the added edges) within the merge threshold,
+ * or creates a new node if there is none; unlike {@link NearNodeMergeGraph}, nodes are never moved nor merged together.
+ * </p>
+ * <p>
+ * Nodes and edges of the base graph are wrapped only when reached, and the wrappers are not retained (they are equal to any other
+ * wrapper of the same element), so the memory of a view is proportional to its delta; only the base nodes an added edge is attached
+ * to are wrapped once, at construction.<br/>
+ * The graph is never modified after construction, so it can be read concurrently.
+ * </p>
+ */
+final class OverlayGraph implements Graph{
+
+	private final CompactGraph base;
+	//ids of the edges of the base graph that are removed
+	private final BitSet removedEdges;
+	private final int removedEdgeCount;
+	private final double threshold;
+	private final GeometryFactory factory;
+
+	private final List<OverlayNode> addedNodes = new ArrayList<>(0);
+	//added nodes by x, to find the ones near an endpoint
+	private final NavigableMap<Double, List<OverlayNode>> addedNodesByX = new TreeMap<>();
+	private final List<Edge> addedEdges = new ArrayList<>(0);
+
+	//nodes of the base graph an added edge is attached to (the only wrappers of base nodes that are retained)
+	private final Map<Integer, OverlayNode> attachedBaseNodes = new HashMap<>(0);
+
+
+	/**
+	 * Creates a view of the base graph with the given changes.
+	 *
+	 * @param base	The base graph, with a spatial index.
+	 * @param removedEdges	The ids of the edges of the base graph to be removed.
+	 * @param addedSegments	The segments to be added, by id.
+	 * @param threshold	The threshold under which an endpoint of an added segment is attached to an existing node.
+	 */
+	OverlayGraph(final CompactGraph base, final BitSet removedEdges, final Map<String, Polyline> addedSegments, final double threshold){
+		if(!base.canHaveEdgesNear())
+			throw new IllegalArgumentException("Base graph must have a spatial index");
+
+		this.base = base;
+		this.removedEdges = removedEdges;
+		removedEdgeCount = removedEdges.cardinality();
+		this.threshold = threshold;
+
+		GeometryFactory factory = base.getFactory();
+		for(final Map.Entry<String, Polyline> entry : addedSegments.entrySet()){
+			final String id = entry.getKey();
+			final Polyline path = entry.getValue();
+			final OverlayNode from = attachNode(path.getStartPoint(), id + "/from");
+			final OverlayNode to = attachNode(path.getEndPoint(), id + "/to");
+			final Edge edge = Edge.createDirectEdge(id, base.edgeCount() + addedEdges.size(), from, to, path);
+			from.attachOutEdge(edge);
+			addedEdges.add(edge);
+
+			if(factory == null)
+				factory = path.getFactory();
+		}
+		this.factory = factory;
+	}
+
+	private OverlayNode attachNode(final Point point, final String id){
+		int nearestBaseNode = -1;
+		double nearestDistance = threshold;
+		//NOTE: the envelope must contain the whole circle of radius `threshold`
+		final Envelope envelope = Envelope.ofEmpty();
+		envelope.expandToInclude(GeodeticHelper.destination(point, 0., threshold), GeodeticHelper.destination(point, 90., threshold),
+			GeodeticHelper.destination(point, 180., threshold), GeodeticHelper.destination(point, 270., threshold));
+		for(final Integer edge : base.getEdgeIndexesIn(envelope))
+			for(final int node : new int[]{base.getEdgeSource(edge), base.getEdgeTarget(edge)}){
+				final double distance = point.distance(base.getFactory().createPoint(base.getNodeX(node), base.getNodeY(node)));
+				if(distance <= nearestDistance && (nearestBaseNode < 0 || distance < nearestDistance)){
+					nearestBaseNode = node;
+					nearestDistance = distance;
+				}
+			}
+		OverlayNode nearestNode = null;
+		if(nearestBaseNode >= 0)
+			nearestNode = attachedBaseNodes.computeIfAbsent(nearestBaseNode, this::createBaseNode);
+		for(final List<OverlayNode> nodes : addedNodesByX.subMap(envelope.getMinX(), true, envelope.getMaxX(), true).values())
+			for(final OverlayNode node : nodes){
+				final double distance = point.distance(node.getPoint());
+				if(distance <= nearestDistance && (nearestNode == null || distance < nearestDistance)){
+					nearestNode = node;
+					nearestDistance = distance;
+				}
+			}
+
+		if(nearestNode == null){
+			nearestNode = new OverlayNode(id, point, base.nodeCount() + addedNodes.size());
+			addedNodes.add(nearestNode);
+			addedNodesByX.computeIfAbsent(point.getX(), x -> new ArrayList<>(1))
+				.add(nearestNode);
+		}
+		return nearestNode;
+	}
+
+	/**
+	 * Returns the base graph.
+	 *
+	 * @return	The base graph.
+	 */
+	CompactGraph getBase(){
+		return base;
+	}
+
+	/**
+	 * Returns the size of the delta with respect to the base graph.
+	 *
+	 * @return	The number of removed edges plus the number of added edges.
+	 */
+	int overlaySize(){
+		return removedEdgeCount + addedEdges.size();
+	}
+
+	private OverlayNode getBaseNode(final int node){
+		final OverlayNode attachedNode = attachedBaseNodes.get(node);
+		return (attachedNode != null? attachedNode: createBaseNode(node));
+	}
+
+	private OverlayNode createBaseNode(final int node){
+		return new OverlayNode(base.nodeIDs.get(node), base.getFactory().createPoint(base.getNodeX(node), base.getNodeY(node)), node);
+	}
+
+	private Edge getBaseEdge(final int edge){
+		//NOTE: the path of the base edge is shared
+		final Edge baseEdge = base.getEdge(edge);
+		return Edge.createDirectEdge(baseEdge.getID(), edge, getBaseNode(base.getEdgeSource(edge)), getBaseNode(base.getEdgeTarget(edge)),
+			baseEdge.getPath());
+	}
+
+
+	@Override
+	public GeometryFactory getFactory(){
+		return factory;
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return (base.isEmpty() && addedNodes.isEmpty());
+	}
+
+	@Override
+	public Collection<Node> nodes(){
+		return new AbstractList<>(){
+			@Override
+			public Node get(final int index){
+				return (index < base.nodeCount()? getBaseNode(index): addedNodes.get(index - base.nodeCount()));
+			}
+
+			@Override
+			public int size(){
+				return base.nodeCount() + addedNodes.size();
+			}
+		};
+	}
+
+	@Override
+	public Collection<Edge> edges(){
+		return new AbstractCollection<>(){
+			@Override
+			public Iterator<Edge> iterator(){
+				return new Iterator<>(){
+					private int nextBaseEdge = removedEdges.nextClearBit(0);
+					private final Iterator<Edge> addedEdgesIterator = addedEdges.iterator();
+
+					@Override
+					public boolean hasNext(){
+						return (nextBaseEdge < base.edgeCount() || addedEdgesIterator.hasNext());
+					}
+
+					@Override
+					public Edge next(){
+						if(nextBaseEdge < base.edgeCount()){
+							final Edge edge = getBaseEdge(nextBaseEdge);
+							nextBaseEdge = removedEdges.nextClearBit(nextBaseEdge + 1);
+							return edge;
+						}
+						if(!addedEdgesIterator.hasNext())
+							throw new NoSuchElementException();
+
+						return addedEdgesIterator.next();
+					}
+				};
+			}
+
+			@Override
+			public int size(){
+				return base.edgeCount() - removedEdgeCount + addedEdges.size();
+			}
+		};
+	}
+
+	@Override
+	public boolean mayReach(final Node from, final Node to){
+		//NOTE: removing edges cannot join two components of the base graph, adding them can
+		if(!addedEdges.isEmpty())
+			return true;
+
+		return (!belongsTo(from) || !belongsTo(to) || base.mayReach(from.getIndex(), to.getIndex()));
+	}
+
+	private boolean belongsTo(final Node node){
+		return (node instanceof OverlayNode && ((OverlayNode)node).graph() == this);
+	}
+
+
+	@Override
+	public boolean canHaveEdgesNear(){
+		return true;
+	}
+
+	@Override
+	public Collection<Edge> getEdgesNear(final Point point, final double threshold){
+		final Envelope envelope = SpatialIndex.circumscribedEnvelope(point, threshold);
+
+		final List<Edge> edges = new ArrayList<>(0);
+		for(final Integer edge : base.getEdgeIndexesIn(envelope))
+			if(!removedEdges.get(edge))
+				edges.add(getBaseEdge(edge));
+		for(final Edge edge : addedEdges)
+			if(envelope.intersects(edge.getPath().getBoundingBox()))
+				edges.add(edge);
+		return edges;
+	}
+
+
+	@Override
+	public String toString(){
+		return graphAsString()
+			.toString();
+	}
+
+	@Override
+	public String toStringWithObservations(final GPSPoint[] observations){
+		final StringJoiner sj = graphAsString();
+		for(final GPSPoint observation : observations)
+			if(observation != null)
+				sj.add(observation.toString());
+		return sj.toString();
+	}
+
+	private StringJoiner graphAsString(){
+		final StringJoiner sj = new StringJoiner(", ", "GEOMETRYCOLLECTION (", ")");
+		for(final Edge edge : edges())
+			sj.add(edge.getPath().toString());
+		return sj;
+	}
+
+
+	private final class OverlayNode extends Node{
+
+		private Collection<Edge> outEdges;
+
+
+		private OverlayNode(final String id, final Point point, final int index){
+			super(id, point, index, null);
+		}
+
+		private OverlayGraph graph(){
+			return OverlayGraph.this;
+		}
+
+		private void attachOutEdge(final Edge edge){
+			super.addOutEdge(edge);
+		}
+
+		@Override
+		public void setID(final String id){
+			throw new UnsupportedOperationException("Graph is immutable");
+		}
+
+		@Override
+		public Collection<Edge> getOutEdges(){
+			//NOTE: racy single-check, the list is immutable so at worst it is created more than once
+			Collection<Edge> edges = outEdges;
+			if(edges == null){
+				final List<Edge> list = new ArrayList<>(super.getOutEdges());
+				final int index = getIndex();
+				if(index < base.nodeCount())
+					for(int e = base.getOutEdgesStart(index); e < base.getOutEdgesEnd(index); e ++)
+						if(!removedEdges.get(e))
+							list.add(getBaseEdge(e));
+				edges = Collections.unmodifiableList(list);
+				outEdges = edges;
+			}
+			return edges;
+		}
+
+		@Override
+		public void addOutEdge(final Edge edge){
+			throw new UnsupportedOperationException("Graph is immutable");
+		}
+
+		@Override
+		protected void setPoint(final Point point){
+			throw new UnsupportedOperationException("Graph is immutable");
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+
+/**
+ * A uniform grid that buckets values by the cell their point falls into.
+ * <p>
+ * The cells are sized to the given search radius, so a lookup inspects only the handful of cells around the searched point, and not
+ * every point inserted so far.<br/>
+ * The radius is expressed in the units of the topology of the points (e.g. meters for a geoid), and is converted into coordinate units
+ * through {@link Point#destination(double, double)}.
+ * </p>
+ *
+ * @param <T>	The type of the values.
+ */
+class PointGrid<T>{
+
+	private final double radius;
+	private final double cellWidth;
+	private final double cellHeight;
+
+	private final Map<Long, Cell<T>> cells = new HashMap<>(0);
+
+
+	/**
+	 * Creates a grid whose cells have the size of the given radius around the given reference point.
+	 *
+	 * @param reference	A point used to convert the radius into coordinate units.
+	 * @param radius	The search radius.
+	 */
+	PointGrid(final Point reference, final double radius){
+		if(radius <= 0.)
+			throw new IllegalArgumentException("`radius` must be positive");
+
+		this.radius = radius;
+		final double[] halfSize = halfSize(reference, radius);
+		cellWidth = Math.max(halfSize[0], Double.MIN_NORMAL);
+		cellHeight = Math.max(halfSize[1], Double.MIN_NORMAL);
+	}
+
+	/**
+	 * Calculates the half extents, in coordinate units, of the box that circumscribes a circle with the given radius.
+	 * <p>
+	 * NOTE: two orthogonal bearings are enough, as the box is (approximately) symmetric for small radiuses.
+	 * </p>
+	 */
+	private static double[] halfSize(final Point point, final double radius){
+		final Point destination0 = point.destination(0., radius);
+		final Point destination90 = point.destination(90., radius);
+		return new double[]{
+			Math.max(Math.abs(destination0.getX() - point.getX()), Math.abs(destination90.getX() - point.getX())),
+			Math.max(Math.abs(destination0.getY() - point.getY()), Math.abs(destination90.getY() - point.getY()))
+		};
+	}
+
+	void add(final Point point, final T value){
+		final long key = cellKey(cellIndex(point.getX(), cellWidth), cellIndex(point.getY(), cellHeight));
+		cells.computeIfAbsent(key, k -> new Cell<>())
+			.add(point, value);
+	}
+
+	/**
+	 * Performs the given action on each value whose point may be within the radius of the given point.
+	 * <p>
+	 * The caller is responsible to filter the true distance.
+	 * </p>
+	 *
+	 * @param point	The point.
+	 * @param action	The action to be performed on each candidate point and its value.
+	 */
+	void forEachCandidate(final Point point, final BiConsumer<Point, T> action){
+		final double[] halfSize = halfSize(point, radius);
+		final int minCellX = cellIndex(point.getX() - halfSize[0], cellWidth);
+		final int maxCellX = cellIndex(point.getX() + halfSize[0], cellWidth);
+		final int minCellY = cellIndex(point.getY() - halfSize[1], cellHeight);
+		final int maxCellY = cellIndex(point.getY() + halfSize[1], cellHeight);
+		for(int cellX = minCellX; cellX <= maxCellX; cellX ++)
+			for(int cellY = minCellY; cellY <= maxCellY; cellY ++){
+				final Cell<T> cell = cells.get(cellKey(cellX, cellY));
+				if(cell != null)
+					for(int i = 0; i < cell.points.size(); i ++)
+						action.accept(cell.points.get(i), cell.values.get(i));
+			}
+	}
+
+	private static int cellIndex(final double coordinate, final double cellSize){
+		return (int)Math.floor(coordinate / cellSize);
+	}
+
+	private static long cellKey(final int cellX, final int cellY){
+		return ((long)cellX << 32) | (cellY & 0xFFFF_FFFFL);
+	}
+
+
+	private static class Cell<T>{
+		private final List<Point> points = new ArrayList<>(1);
+		private final List<T> values = new ArrayList<>(1);
+
+		private void add(final Point point, final T value){
+			points.add(point);
+			values.add(value);
+		}
+	}
+
+}
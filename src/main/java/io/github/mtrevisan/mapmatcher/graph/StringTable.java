@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A read-only table of (possibly <code>null</code>) strings, addressed by index.
+ * <p>
+ * The strings can be held on heap, or can be decoded on demand from their UTF-8 encoding (e.g. from a memory-mapped file).
+ * </p>
+ */
+abstract class StringTable{
+
+	private static final int NULL_LENGTH = -1;
+
+
+	static StringTable of(final String[] strings){
+		return new StringTable(){
+			@Override
+			int size(){
+				return strings.length;
+			}
+
+			@Override
+			String get(final int index){
+				return strings[index];
+			}
+		};
+	}
+
+	/**
+	 * Reads a table previously written with {@link #write(DataOutput)}, starting at the current position of the given buffer.
+	 * <p>
+	 * NOTE: the strings are not copied, they are decoded from the buffer each time they are requested.
+	 * </p>
+	 *
+	 * @param input	The buffer to read the table from, its position is advanced past the table.
+	 * @return	The table.
+	 * @throws IOException	If the buffer does not contain a valid table at its position.
+	 */
+	static StringTable read(final ByteBuffer input) throws IOException{
+		if(input.remaining() < 2 * Integer.BYTES)
+			throw new IOException("Corrupted string table");
+		final int size = input.getInt();
+		final int bytesSize = input.getInt();
+		if(size < 0 || bytesSize < 0 || input.remaining() < 2L * size * Integer.BYTES + bytesSize)
+			throw new IOException("Corrupted string table");
+		final IntBuffer starts = slice(input, size).asIntBuffer();
+		final IntBuffer lengths = slice(input, size).asIntBuffer();
+		final ByteBuffer bytes = input.slice(input.position(), bytesSize);
+		input.position(input.position() + bytesSize);
+
+		return new StringTable(){
+			@Override
+			int size(){
+				return size;
+			}
+
+			@Override
+			String get(final int index){
+				final int length = lengths.get(index);
+				if(length == NULL_LENGTH)
+					return null;
+
+				final byte[] buffer = new byte[length];
+				bytes.get(starts.get(index), buffer);
+				return new String(buffer, StandardCharsets.UTF_8);
+			}
+		};
+	}
+
+	private static ByteBuffer slice(final ByteBuffer input, final int ints){
+		final ByteBuffer slice = input.slice(input.position(), ints * Integer.BYTES);
+		input.position(input.position() + ints * Integer.BYTES);
+		return slice;
+	}
+
+
+	abstract int size();
+
+	abstract String get(int index);
+
+	/**
+	 * Writes the UTF-8 encoding of this table.
+	 *
+	 * @param output	The output to write the table into.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	void write(final DataOutput output) throws IOException{
+		final int size = size();
+		final byte[][] encoded = new byte[size][];
+		int bytesSize = 0;
+		for(int i = 0; i < size; i ++){
+			final String string = get(i);
+			if(string != null){
+				encoded[i] = string.getBytes(StandardCharsets.UTF_8);
+				bytesSize += encoded[i].length;
+			}
+		}
+
+		output.writeInt(size);
+		output.writeInt(bytesSize);
+		int start = 0;
+		for(int i = 0; i < size; i ++){
+			output.writeInt(start);
+			if(encoded[i] != null)
+				start += encoded[i].length;
+		}
+		for(int i = 0; i < size; i ++)
+			output.writeInt(encoded[i] != null? encoded[i].length: NULL_LENGTH);
+		for(int i = 0; i < size; i ++)
+			if(encoded[i] != null)
+				output.write(encoded[i]);
+	}
+
+}
@@ -0,0 +1,364 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.index.Corridor;
+import io.github.mtrevisan.mapmatcher.helpers.index.ItemVisitor;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A road network stored on disk as fixed-size geographic tiles, loaded on demand.
+ * <p>
+ * Each segment is bucketed into every tile its bounding box touches, and each tile is stored in its own file.<br/>
+ * A query loads only the tiles its envelope touches; at most <code>maxResidentTiles</code> tiles are kept in memory, the least
+ * recently used being evicted first, so the heap needed does not depend on the size of the whole network.<br/>
+ * Tiles are loaded outside of the lock guarding the resident ones, so readers of different tiles never wait on each other's I/O, and
+ * concurrent readers of the same tile wait for a single load.
+ * </p>
+ * <p>
+ * The index file lists the keys of the written tiles, so only the tiles of the last write are ever read.
+ * </p>
+ * <p>
+ * When a graph is assembled from more tiles, segments spanning more tiles are added only once, and their endpoints are stitched by
+ * position (see {@link NearNodeMergeGraphBuilder}), so no node id is stored.
+ * </p>
+ */
+public class TiledGraph{
+
+	private static final String INDEX_FILENAME = "tiles.index";
+	private static final String TILE_EXTENSION = ".tile";
+
+	private static final int MAGIC_NUMBER = 0x4D4D_5447;
+	private static final int VERSION = 3;
+
+	private static final Tile EMPTY_TILE = new Tile(new String[0], new Polyline[0]);
+
+
+	private final Path directory;
+	private final GeometryFactory factory;
+	private final double tileSize;
+	//keys of the tiles written
+	private final Set<Long> tileKeys;
+
+	private final Map<Long, Tile> residentTiles;
+	private final ConcurrentHashMap<Long, Tile> loadingTiles = new ConcurrentHashMap<>(0);
+
+
+	/**
+	 * Writes the given segments as tiles into the given directory.
+	 * <p>
+	 * The tiles of a previous write into the same directory are deleted.
+	 * </p>
+	 *
+	 * @param segments	The segments, by id.
+	 * @param tileSize	The size of a (square) tile, in coordinate units.
+	 * @param directory	The directory to write the tiles into.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	public static void write(final Map<String, Polyline> segments, final double tileSize, final Path directory) throws IOException{
+		if(tileSize <= 0.)
+			throw new IllegalArgumentException("`tileSize` must be positive");
+
+		final Map<Long, List<String>> tiles = new HashMap<>(0);
+		for(final Map.Entry<String, Polyline> entry : segments.entrySet()){
+			final Envelope boundingBox = entry.getValue().getBoundingBox();
+			final int minTileX = tileIndex(boundingBox.getMinX(), tileSize);
+			final int maxTileX = tileIndex(boundingBox.getMaxX(), tileSize);
+			final int minTileY = tileIndex(boundingBox.getMinY(), tileSize);
+			final int maxTileY = tileIndex(boundingBox.getMaxY(), tileSize);
+			for(int tileX = minTileX; tileX <= maxTileX; tileX ++)
+				for(int tileY = minTileY; tileY <= maxTileY; tileY ++)
+					tiles.computeIfAbsent(tileKey(tileX, tileY), k -> new ArrayList<>(1))
+						.add(entry.getKey());
+		}
+
+		Files.createDirectories(directory);
+		deleteTiles(directory);
+		for(final Map.Entry<Long, List<String>> tile : tiles.entrySet())
+			writeTile(directory.resolve(tileFilename(tile.getKey())), tile.getValue(), segments);
+		//NOTE: the index is written last, and lists the valid tiles
+		try(final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(directory.resolve(INDEX_FILENAME))))){
+			output.writeInt(MAGIC_NUMBER);
+			output.writeInt(VERSION);
+			output.writeDouble(tileSize);
+			output.writeInt(tiles.size());
+			for(final Long key : tiles.keySet())
+				output.writeLong(key);
+		}
+	}
+
+	private static void deleteTiles(final Path directory) throws IOException{
+		Files.deleteIfExists(directory.resolve(INDEX_FILENAME));
+		try(final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TILE_EXTENSION)){
+			for(final Path file : files)
+				Files.delete(file);
+		}
+	}
+
+	private static void writeTile(final Path file, final List<String> ids, final Map<String, Polyline> segments) throws IOException{
+		try(final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+			output.writeInt(ids.size());
+			for(final String id : ids){
+				final Point[] points = segments.get(id)
+					.getPoints();
+				output.writeUTF(id);
+				output.writeInt(points.length);
+				for(final Point point : points){
+					output.writeDouble(point.getX());
+					output.writeDouble(point.getY());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens the tiles written into the given directory.
+	 *
+	 * @param directory	The directory containing the tiles.
+	 * @param factory	The factory used to create the points of the segments.
+	 * @param maxResidentTiles	The maximum number of tiles kept in memory.
+	 * @return	The tiled graph.
+	 * @throws IOException	If an I/O error occurs, or if the directory does not contain tiles.
+	 */
+	public static TiledGraph open(final Path directory, final GeometryFactory factory, final int maxResidentTiles) throws IOException{
+		if(maxResidentTiles <= 0)
+			throw new IllegalArgumentException("`maxResidentTiles` must be positive");
+
+		try(final DataInputStream input = new DataInputStream(Files.newInputStream(directory.resolve(INDEX_FILENAME)))){
+			if(input.readInt() != MAGIC_NUMBER)
+				throw new IOException("Not a tiled graph: " + directory);
+			final int version = input.readInt();
+			if(version != VERSION)
+				throw new IOException("Unsupported tiled graph version " + version + ", expected " + VERSION);
+
+			final double tileSize = input.readDouble();
+			final int tileCount = input.readInt();
+			final Set<Long> tileKeys = new HashSet<>(tileCount);
+			for(int t = 0; t < tileCount; t ++)
+				tileKeys.add(input.readLong());
+			return new TiledGraph(directory, factory, tileSize, tileKeys, maxResidentTiles);
+		}
+	}
+
+	private TiledGraph(final Path directory, final GeometryFactory factory, final double tileSize, final Set<Long> tileKeys,
+			final int maxResidentTiles){
+		this.directory = directory;
+		this.factory = factory;
+		this.tileSize = tileSize;
+		this.tileKeys = tileKeys;
+
+		residentTiles = new LinkedHashMap<>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, Tile> eldest){
+				return (size() > maxResidentTiles);
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of tiles currently kept in memory.
+	 *
+	 * @return	The number of resident tiles.
+	 */
+	public int residentTiles(){
+		synchronized(residentTiles){
+			return residentTiles.size();
+		}
+	}
+
+	/**
+	 * Extracts the segments whose bounding box intersects the given envelope.
+	 *
+	 * @param envelope	The envelope.
+	 * @return	The segments, by id.
+	 */
+	public Map<String, Polyline> query(final Envelope envelope){
+		final Map<String, Polyline> segments = new LinkedHashMap<>(0);
+		final int minTileX = tileIndex(envelope.getMinX(), tileSize);
+		final int maxTileX = tileIndex(envelope.getMaxX(), tileSize);
+		final int minTileY = tileIndex(envelope.getMinY(), tileSize);
+		final int maxTileY = tileIndex(envelope.getMaxY(), tileSize);
+		for(int tileX = minTileX; tileX <= maxTileX; tileX ++)
+			for(int tileY = minTileY; tileY <= maxTileY; tileY ++){
+				final Tile tile = getTile(tileKey(tileX, tileY));
+				for(final Integer edge : tile.query(envelope))
+					segments.putIfAbsent(tile.edgeIDs[edge], tile.paths[edge]);
+			}
+		return segments;
+	}
+
+	/**
+	 * Extracts the segments whose bounding box intersects the given corridor.
+	 * <p>
+	 * Only the tiles that intersect the corridor are loaded, not all the tiles its envelope touches.
+	 * </p>
+	 *
+	 * @param corridor	The corridor.
+	 * @return	The segments, by id.
+	 */
+	public Map<String, Polyline> query(final Corridor corridor){
+		final Map<String, Polyline> segments = new LinkedHashMap<>(0);
+		if(corridor.size() == 0)
+			return segments;
+
+		final Envelope envelope = corridor.getEnvelope();
+		final int minTileX = tileIndex(envelope.getMinX(), tileSize);
+		final int maxTileX = tileIndex(envelope.getMaxX(), tileSize);
+		final int minTileY = tileIndex(envelope.getMinY(), tileSize);
+		final int maxTileY = tileIndex(envelope.getMaxY(), tileSize);
+		for(int tileX = minTileX; tileX <= maxTileX; tileX ++)
+			for(int tileY = minTileY; tileY <= maxTileY; tileY ++)
+				if(corridor.intersects(tileX * tileSize, tileY * tileSize, (tileX + 1) * tileSize, (tileY + 1) * tileSize)){
+					final Tile tile = getTile(tileKey(tileX, tileY));
+					tile.query(corridor, (edge, edgeEnvelope) -> {
+						segments.putIfAbsent(tile.edgeIDs[edge], tile.paths[edge]);
+						return true;
+					});
+				}
+		return segments;
+	}
+
+	/**
+	 * Extracts the graph of the segments whose distance is less than the given radius from the trajectory of the observations.
+	 * <p>
+	 * The segments coming from different tiles are stitched together by the position of their endpoints (see
+	 * {@link NearNodeMergeGraphBuilder}).
+	 * </p>
+	 *
+	 * @param observations	The observations.
+	 * @param threshold	The threshold [m].
+	 * @param mergeThreshold	The threshold under which two nodes are considered the same.
+	 * @return	The graph, with a spatial index of the edges.
+	 */
+	public Graph extractGraph(final Point[] observations, final double threshold, final double mergeThreshold){
+		final NearNodeMergeGraphBuilder builder = new NearNodeMergeGraphBuilder(mergeThreshold)
+			.withTree();
+		for(final Map.Entry<String, Polyline> entry : query(Corridor.of(observations, threshold)).entrySet())
+			builder.addApproximateDirectEdge(entry.getKey(), entry.getValue());
+		return builder.build();
+	}
+
+	private Tile getTile(final long key){
+		if(!tileKeys.contains(key))
+			return EMPTY_TILE;
+
+		synchronized(residentTiles){
+			final Tile tile = residentTiles.get(key);
+			if(tile != null)
+				return tile;
+		}
+
+		//load outside the lock, a tile requested concurrently is loaded once (a tile evicted meanwhile may be loaded again)
+		final Tile tile = loadingTiles.computeIfAbsent(key, k -> readTile(directory.resolve(tileFilename(k))));
+		synchronized(residentTiles){
+			residentTiles.put(key, tile);
+		}
+		loadingTiles.remove(key, tile);
+		return tile;
+	}
+
+	private Tile readTile(final Path file){
+		try(final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))){
+			final int edgeCount = input.readInt();
+			final String[] edgeIDs = new String[edgeCount];
+			final Polyline[] paths = new Polyline[edgeCount];
+			for(int e = 0; e < edgeCount; e ++){
+				edgeIDs[e] = input.readUTF();
+				final Point[] points = new Point[input.readInt()];
+				for(int p = 0; p < points.length; p ++)
+					points[p] = factory.createPoint(input.readDouble(), input.readDouble());
+				paths[e] = factory.createPolyline(points);
+			}
+			return new Tile(edgeIDs, paths);
+		}
+		catch(final IOException ioe){
+			throw new UncheckedIOException("Cannot read tile " + file, ioe);
+		}
+	}
+
+	private static int tileIndex(final double coordinate, final double tileSize){
+		return (int)Math.floor(coordinate / tileSize);
+	}
+
+	private static long tileKey(final int tileX, final int tileY){
+		return ((long)tileX << 32) | (tileY & 0xFFFF_FFFFL);
+	}
+
+	private static String tileFilename(final long key){
+		return (int)(key >> 32) + "_" + (int)key + TILE_EXTENSION;
+	}
+
+
+	private static final class Tile{
+
+		private final String[] edgeIDs;
+		private final Polyline[] paths;
+		private final HPRtree<Integer> tree = new HPRtree<>();
+
+
+		private Tile(final String[] edgeIDs, final Polyline[] paths){
+			this.edgeIDs = edgeIDs;
+			this.paths = paths;
+
+			for(int e = 0; e < paths.length; e ++)
+				tree.insert(paths[e].getBoundingBox(), e);
+			tree.build();
+		}
+
+		private List<Integer> query(final Envelope envelope){
+			return tree.query(envelope);
+		}
+
+		private void query(final Corridor corridor, final ItemVisitor<Integer> visitor){
+			tree.query(corridor, visitor);
+		}
+
+	}
+
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+
+/**
+ * A holder of successive, immutable, versions of a graph.
+ * <p>
+ * Readers get the current {@link Snapshot} and keep working on it for as long as they need, without locks, even if a newer version
+ * is published in the meanwhile.<br/>
+ * Writers describe the changes (new or closed road segments) on an {@link Editor}, a new snapshot is then prepared aside and published
+ * atomically.
+ * </p>
+ * <p>
+ * Each snapshot is an {@link OverlayGraph} on a frozen {@link CompactGraph} (the base): the base, its spatial index, and the source
+ * segment polylines are shared between versions, and an update only stores its delta with respect to the base (the removed base
+ * edges and the added segments).<br/>
+ * So an update costs a copy of the segment map and of the removed-edge bit set (linear in the number of segments and edges, but with
+ * a tiny constant), plus the attachment of the added segments to the base nodes; the graph structure is not rebuilt.<br/>
+ * When the delta grows beyond an eighth of the base edges (and at least {@value #MIN_COMPACTION_SIZE} changes), the writer compacts
+ * it: the base is rebuilt from all the segments through a {@link NearNodeMergeGraphBuilder} and frozen, a cost linear in the size of
+ * the whole graph.
+ * </p>
+ */
+public class VersionedGraph{
+
+	/** Minimum size of the delta that triggers a rebuild of the base graph. */
+	static final int MIN_COMPACTION_SIZE = 64;
+	/** The base graph is rebuilt once the delta exceeds its number of edges divided by this ratio. */
+	private static final int COMPACTION_RATIO = 8;
+
+	private static final int[] EMPTY_EDGES = new int[0];
+
+	private final double threshold;
+
+	private final AtomicReference<Snapshot> current;
+
+
+	/**
+	 * Creates an empty versioned graph.
+	 *
+	 * @param threshold	The threshold under which two nodes are considered the same (see {@link NearNodeMergeGraph}).
+	 */
+	public VersionedGraph(final double threshold){
+		this.threshold = threshold;
+
+		current = new AtomicReference<>(createSnapshot(0L, Collections.emptyMap()));
+	}
+
+	/**
+	 * Returns the current snapshot.
+	 *
+	 * @return	The current snapshot.
+	 */
+	public Snapshot current(){
+		return current.get();
+	}
+
+	/**
+	 * Applies the given changes on top of the current snapshot, and publishes the new snapshot.
+	 * <p>
+	 * Writers are serialized, readers are never blocked.
+	 * </p>
+	 *
+	 * @param changes	The changes to be applied.
+	 * @return	The published snapshot.
+	 */
+	public synchronized Snapshot update(final Consumer<Editor> changes){
+		final Snapshot previous = current.get();
+		final Editor editor = new Editor(previous.segments);
+		changes.accept(editor);
+		if(editor.changedIDs.isEmpty())
+			return previous;
+
+		final Base base = previous.base;
+		final BitSet removedEdges = (BitSet)previous.removedEdges.clone();
+		final Map<String, Polyline> addedSegments = new LinkedHashMap<>(previous.addedSegments);
+		for(final String id : editor.changedIDs){
+			final Polyline basePath = base.segments.get(id);
+			final Polyline path = editor.segments.get(id);
+			//a segment restored to its base path is no longer part of the delta
+			final boolean inBase = (basePath != null && basePath.equals(path));
+			final int[] baseEdges = base.segmentEdges.getOrDefault(id, EMPTY_EDGES);
+			for(final int edge : baseEdges)
+				removedEdges.set(edge, !inBase);
+			if(path != null && !inBase)
+				addedSegments.put(id, path);
+			else
+				addedSegments.remove(id);
+		}
+
+		final Snapshot snapshot;
+		final int deltaSize = removedEdges.cardinality() + addedSegments.size();
+		if(deltaSize > Math.max(MIN_COMPACTION_SIZE, base.graph.edgeCount() / COMPACTION_RATIO))
+			snapshot = createSnapshot(previous.version + 1, editor.segments);
+		else
+			snapshot = new Snapshot(previous.version + 1, Collections.unmodifiableMap(editor.segments), base, removedEdges,
+				addedSegments, new OverlayGraph(base.graph, removedEdges, addedSegments, threshold));
+		current.set(snapshot);
+		return snapshot;
+	}
+
+	private Snapshot createSnapshot(final long version, final Map<String, Polyline> segments){
+		final NearNodeMergeGraphBuilder builder = new NearNodeMergeGraphBuilder(threshold)
+			.withTree();
+		for(final Map.Entry<String, Polyline> entry : segments.entrySet())
+			builder.addApproximateDirectEdge(entry.getKey(), entry.getValue());
+		final Map<String, Polyline> unmodifiableSegments = Collections.unmodifiableMap(segments);
+		final Base base = new Base(CompactGraph.freeze(builder.build()), unmodifiableSegments);
+		final BitSet removedEdges = new BitSet();
+		final Map<String, Polyline> addedSegments = Collections.emptyMap();
+		return new Snapshot(version, unmodifiableSegments, base, removedEdges, addedSegments,
+			new OverlayGraph(base.graph, removedEdges, addedSegments, threshold));
+	}
+
+
+	/**
+	 * A frozen graph shared by the snapshots, and the edges each source segment was turned into.
+	 */
+	private static final class Base{
+
+		private final CompactGraph graph;
+		private final Map<String, Polyline> segments;
+		private final Map<String, int[]> segmentEdges;
+
+
+		private Base(final CompactGraph graph, final Map<String, Polyline> segments){
+			this.graph = graph;
+			this.segments = segments;
+
+			//a segment becomes edges with its own id, or with `id,id/from-to` when both its ends merge into the same node
+			final Map<String, String> segmentIDs = new HashMap<>(segments.size() << 1);
+			for(final String id : segments.keySet()){
+				segmentIDs.put(id, id);
+				segmentIDs.put(id + "," + id + "/from-to", id);
+			}
+			final Map<String, int[]> segmentEdges = new HashMap<>(segments.size());
+			for(int e = 0; e < graph.edgeCount(); e ++){
+				final String id = segmentIDs.get(graph.edgeIDs.get(e));
+				if(id != null){
+					final int[] edges = segmentEdges.get(id);
+					final int[] newEdges = (edges != null? Arrays.copyOf(edges, edges.length + 1): new int[1]);
+					newEdges[newEdges.length - 1] = e;
+					segmentEdges.put(id, newEdges);
+				}
+			}
+			this.segmentEdges = segmentEdges;
+		}
+
+	}
+
+	/**
+	 * An immutable version of the graph.
+	 */
+	public static final class Snapshot{
+
+		private final long version;
+		private final Map<String, Polyline> segments;
+		private final Base base;
+		private final BitSet removedEdges;
+		private final Map<String, Polyline> addedSegments;
+		private final OverlayGraph graph;
+
+
+		private Snapshot(final long version, final Map<String, Polyline> segments, final Base base, final BitSet removedEdges,
+				final Map<String, Polyline> addedSegments, final OverlayGraph graph){
+			this.version = version;
+			this.segments = segments;
+			this.base = base;
+			this.removedEdges = removedEdges;
+			this.addedSegments = addedSegments;
+			this.graph = graph;
+		}
+
+		/**
+		 * Returns the version number, increased by one at each published update.
+		 *
+		 * @return	The version number.
+		 */
+		public long getVersion(){
+			return version;
+		}
+
+		/**
+		 * Returns the source segments, by id.
+		 *
+		 * @return	The (unmodifiable) source segments.
+		 */
+		public Map<String, Polyline> getSegments(){
+			return segments;
+		}
+
+		/**
+		 * Returns the graph of this version.
+		 *
+		 * @return	The graph.
+		 */
+		public Graph getGraph(){
+			return graph;
+		}
+
+		/**
+		 * Returns the frozen graph this version is a delta of, shared with the other versions until the next compaction.
+		 *
+		 * @return	The base graph.
+		 */
+		public CompactGraph getBaseGraph(){
+			return base.graph;
+		}
+
+		/**
+		 * Returns the size of the delta of this version with respect to its base graph.
+		 *
+		 * @return	The number of removed base edges plus the number of added segments.
+		 */
+		public int getOverlaySize(){
+			return graph.overlaySize();
+		}
+
+	}
+
+	/**
+	 * Collects the changes to be applied to a snapshot.
+	 */
+	public static final class Editor{
+
+		private final Map<String, Polyline> segments;
+		private final Set<String> changedIDs = new HashSet<>(0);
+
+
+		private Editor(final Map<String, Polyline> segments){
+			this.segments = new LinkedHashMap<>(segments);
+		}
+
+		/**
+		 * Adds a directed segment, or replaces the one with the same id.
+		 *
+		 * @param id	The id of the segment.
+		 * @param path	The path of the segment.
+		 * @return	This editor.
+		 */
+		public Editor addEdge(final String id, final Polyline path){
+			if(id == null || id.length() == 0)
+				throw new IllegalArgumentException("`id` cannot be null or empty");
+			if(path == null || path.size() < 2)
+				throw new IllegalArgumentException("`path` must have at least two points");
+
+			if(!path.equals(segments.put(id, path)))
+				changedIDs.add(id);
+			return this;
+		}
+
+		/**
+		 * Removes a segment (e.g. a road closure).
+		 *
+		 * @param id	The id of the segment.
+		 * @return	This editor.
+		 */
+		public Editor removeEdge(final String id){
+			if(segments.remove(id) != null)
+				changedIDs.add(id);
+			return this;
+		}
+
+	}
+
+}
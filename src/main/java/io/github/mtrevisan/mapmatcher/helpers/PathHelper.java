@@ -27,9 +27,12 @@ package io.github.mtrevisan.mapmatcher.helpers;
 import io.github.mtrevisan.mapmatcher.graph.Edge;
 import io.github.mtrevisan.mapmatcher.graph.Graph;
 import io.github.mtrevisan.mapmatcher.graph.NearNodeMergeGraph;
+import io.github.mtrevisan.mapmatcher.graph.NearNodeMergeGraphBuilder;
 import io.github.mtrevisan.mapmatcher.graph.Node;
 import io.github.mtrevisan.mapmatcher.helpers.filters.GPSPositionSpeedFilter;
-import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.helpers.index.Corridor;
+import io.github.mtrevisan.mapmatcher.helpers.index.PolylineChunk;
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
 import io.github.mtrevisan.mapmatcher.pathfinding.PathFindingStrategy;
 import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
@@ -37,6 +40,7 @@ import io.github.mtrevisan.mapmatcher.spatial.GeodeticHelper;
 import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
 import io.github.mtrevisan.mapmatcher.spatial.Point;
 import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.intersection.PolylineNoder;
 
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -183,40 +187,78 @@ public class PathHelper{
 	 * @param tree	The set of road links.
 	 * @param observations	The observations.
 	 * @param threshold	The threshold [m].
-	 * @return	The list of road links whose distance is less than the given radius from each observation.
+	 * @return	The list of road links whose envelope is within the given radius from the trajectory of the observations.
+	 * @see Corridor
 	 */
-	public static Collection<Polyline> extractObservedEdges(final HPRtree<Polyline> tree, final Point[] observations,
+	public static Collection<Polyline> extractObservedEdges(final SpatialIndex<Polyline> tree, final Point[] observations,
 			final double threshold){
-		final Set<Polyline> observedEdges = new HashSet<>(0);
-		for(int i = 0; i < observations.length; ){
-			final Point observation = observations[i];
-			if(observation == null){
-				i ++;
-				continue;
-			}
-
-			//construct the envelope
-			final Point northEast = GeodeticHelper.destination(observation, 45., threshold);
-			final Point southWest = GeodeticHelper.destination(observation, 225., threshold);
-			final Envelope envelope = Envelope.of(northEast, southWest);
+		//collect the observed edges, once each, in a single traversal of the tree
+		return tree.query(Corridor.of(observations, threshold));
+	}
 
-			//skip observations inside current envelope
-			do{
-				i ++;
-			}while(i < observations.length && observations[i] != null && envelope.intersects(observations[i]));
+	/**
+	 * Extract a set of candidate road links within a certain distance to all observation, from an index of the chunks of the road links.
+	 *
+	 * @param tree	The chunks of the road links (see {@link PolylineChunk#insert(SpatialIndex, Object, Polyline, int)}).
+	 * @param observations	The observations.
+	 * @param threshold	The threshold [m].
+	 * @return	The list of road links that have a chunk near the trajectory of the observations.
+	 * @see #extractObservedEdges(SpatialIndex, Point[], double)
+	 */
+	public static Collection<Polyline> extractObservedEdgesByChunks(final SpatialIndex<PolylineChunk<Polyline>> tree,
+			final Point[] observations, final double threshold){
+		//many chunks of the same road link can be near the trajectory
+		final Set<Polyline> observedEdges = new HashSet<>(0);
+		tree.query(Corridor.of(observations, threshold), (chunk, chunkEnvelope) -> {
+			observedEdges.add(chunk.getItem());
+			return true;
+		});
+		return observedEdges;
+	}
 
-			//add observed edges to final set
-			observedEdges.addAll(tree.query(envelope));
-		}
+	public static GPSPoint[] extractObservations(final SpatialIndex<Polyline> tree, final GPSPoint[] observations, final double threshold){
+		final GPSPoint[] feasibleObservations = smoothObservations(observations);
+
+		//look up all the observations in a single traversal of the tree
+		final boolean[] edgesNear = new boolean[feasibleObservations.length];
+		tree.query(extractObservationEnvelopes(feasibleObservations, threshold), (edge, edgeEnvelope, searchIndex) -> {
+			if(!edgesNear[searchIndex] && feasibleObservations[searchIndex].distance(edge) <= threshold)
+				edgesNear[searchIndex] = true;
+			return true;
+		});
+		return retainObservations(feasibleObservations, edgesNear);
+	}
 
-		return observedEdges;
+	/**
+	 * Retain the (smoothed) observations that are within a certain distance from a road link, from an index of the chunks of the road
+	 * links.
+	 * <p>
+	 * Only the segments of the chunks near an observation are measured, instead of all the segments of the road links.
+	 * </p>
+	 *
+	 * @param tree	The chunks of the road links (see {@link PolylineChunk#insert(SpatialIndex, Object, Polyline, int)}).
+	 * @param observations	The observations.
+	 * @param threshold	The threshold [m].
+	 * @return	The smoothed observations, <code>null</code> where no road link is within the threshold.
+	 * @see #extractObservations(SpatialIndex, GPSPoint[], double)
+	 */
+	public static GPSPoint[] extractObservationsByChunks(final SpatialIndex<PolylineChunk<Polyline>> tree,
+			final GPSPoint[] observations, final double threshold){
+		final GPSPoint[] feasibleObservations = smoothObservations(observations);
+
+		final boolean[] edgesNear = new boolean[feasibleObservations.length];
+		tree.query(extractObservationEnvelopes(feasibleObservations, threshold), (chunk, chunkEnvelope, searchIndex) -> {
+			if(!edgesNear[searchIndex] && chunk.distance(feasibleObservations[searchIndex]) <= threshold)
+				edgesNear[searchIndex] = true;
+			return true;
+		});
+		return retainObservations(feasibleObservations, edgesNear);
 	}
 
-	public static GPSPoint[] extractObservations(final HPRtree<Polyline> tree, final GPSPoint[] observations, final double threshold){
+	private static GPSPoint[] smoothObservations(final GPSPoint[] observations){
 		final GPSPoint[] feasibleObservations = new GPSPoint[observations.length];
-
 		if(observations.length > 0){
-			//step 1. Use Kalman filter to smooth the coordinates
+			//use Kalman filter to smooth the coordinates
 			final GPSPositionSpeedFilter kalmanFilter = new GPSPositionSpeedFilter(3., 5.);
 			feasibleObservations[0] = observations[0];
 			for(int i = 1; i < observations.length; i ++){
@@ -229,61 +271,106 @@ public class PathHelper{
 				final double[] position = kalmanFilter.getPosition();
 				feasibleObservations[i] = GPSPoint.of(position[1], position[0], observation.getTimestamp());
 			}
+		}
+		return feasibleObservations;
+	}
 
-			//step 2. Retain all observation that are within a certain radius from an edge
-			for(int i = 0; i < feasibleObservations.length; i ++){
-				final GPSPoint observation = feasibleObservations[i];
-				if(observation == null)
-					continue;
-
-				final Point northEast = GeodeticHelper.destination(observation, 45., threshold);
-				final Point southWest = GeodeticHelper.destination(observation, 225., threshold);
-				final Envelope envelope = Envelope.of(northEast, southWest);
+	private static Envelope[] extractObservationEnvelopes(final GPSPoint[] observations, final double threshold){
+		final Envelope[] envelopes = new Envelope[observations.length];
+		for(int i = 0; i < observations.length; i ++){
+			final GPSPoint observation = observations[i];
+			if(observation == null)
+				continue;
 
-				final List<Polyline> edges = tree.query(envelope);
-				double minDistance = Double.POSITIVE_INFINITY;
-				for(final Polyline edge : edges){
-					final double distance = observation.distance(edge);
-					if(distance < minDistance)
-						minDistance = distance;
-				}
-				if(edges.isEmpty() || minDistance > threshold)
-					feasibleObservations[i] = null;
-			}
+			//look for any edge within the threshold, in the envelope that circumscribes the search circle
+			final double minY = GeodeticHelper.destination(observation, 180., threshold).getY();
+			final double minX = GeodeticHelper.destination(observation, 270., threshold).getX();
+			final double maxY = GeodeticHelper.destination(observation, 0., threshold).getY();
+			final double maxX = GeodeticHelper.destination(observation, 90., threshold).getX();
+			envelopes[i] = Envelope.of(minX, maxX, minY, maxY);
 		}
+		return envelopes;
+	}
 
-		return feasibleObservations;
+	private static GPSPoint[] retainObservations(final GPSPoint[] observations, final boolean[] edgesNear){
+		for(int i = 0; i < observations.length; i ++)
+			if(!edgesNear[i])
+				observations[i] = null;
+		return observations;
 	}
 
 
 	//create id as `<segment>(.<leg>)?
 	public static Graph extractDirectGraph(final Collection<Polyline> edges, final double threshold){
-		final NearNodeMergeGraph graph = new NearNodeMergeGraph(threshold)
+		final NearNodeMergeGraphBuilder builder = new NearNodeMergeGraphBuilder(threshold)
 			.withTree();
 		int e = 0;
 		for(final Polyline edge : edges){
 			final String id = String.valueOf(e);
-			graph.addApproximateDirectEdge(id, edge);
+			builder.addApproximateDirectEdge(id, edge);
 
 			e ++;
 		}
-		return graph;
+		return builder.build();
 	}
 
 	//create id as `<segment>(.<leg>)?(-rev)?`
 	public static Graph extractBidirectionalGraph(final Collection<Polyline> edges, final double threshold){
-		final NearNodeMergeGraph graph = new NearNodeMergeGraph(threshold)
+		final NearNodeMergeGraphBuilder builder = new NearNodeMergeGraphBuilder(threshold)
 			.withTree();
 		int e = 0;
 		for(final Polyline edge : edges){
 			final String id = String.valueOf(e);
-			graph.addApproximateDirectEdge(id, edge);
+			builder.addApproximateDirectEdge(id, edge);
 			//add reversed
-			graph.addApproximateDirectEdge(id + REVERSED_EDGE_SUFFIX, edge.reverse());
+			builder.addApproximateDirectEdge(id + REVERSED_EDGE_SUFFIX, edge.reverse());
 
 			e ++;
 		}
-		return graph;
+		return builder.build();
+	}
+
+	/**
+	 * Extracts a graph whose edges are the given polylines, split at their mutual intersections.
+	 *
+	 * @param edges	The polylines.
+	 * @param threshold	The merge threshold of the nodes.
+	 * @return	The graph, with ids as <code>&lt;segment&gt;(.&lt;leg&gt;)?</code>.
+	 * @see PolylineNoder
+	 */
+	public static Graph extractNodedDirectGraph(final Collection<Polyline> edges, final double threshold){
+		return extractNodedGraph(edges, threshold, false);
+	}
+
+	/**
+	 * Extracts a graph whose edges are the given polylines, split at their mutual intersections, in both directions.
+	 *
+	 * @param edges	The polylines.
+	 * @param threshold	The merge threshold of the nodes.
+	 * @return	The graph, with ids as <code>&lt;segment&gt;(.&lt;leg&gt;)?(-rev)?</code>.
+	 * @see PolylineNoder
+	 */
+	public static Graph extractNodedBidirectionalGraph(final Collection<Polyline> edges, final double threshold){
+		return extractNodedGraph(edges, threshold, true);
+	}
+
+	private static Graph extractNodedGraph(final Collection<Polyline> edges, final double threshold, final boolean bidirectional){
+		final List<Polyline[]> legs = new PolylineNoder()
+			.node(new ArrayList<>(edges));
+
+		final NearNodeMergeGraphBuilder builder = new NearNodeMergeGraphBuilder(threshold)
+			.withTree();
+		for(int e = 0; e < legs.size(); e ++){
+			final Polyline[] edgeLegs = legs.get(e);
+			for(int l = 0; l < edgeLegs.length; l ++){
+				final String id = (edgeLegs.length > 1? e + "." + l: String.valueOf(e));
+				builder.addApproximateDirectEdge(id, edgeLegs[l]);
+				if(bidirectional)
+					//add reversed
+					builder.addApproximateDirectEdge(id + REVERSED_EDGE_SUFFIX, edgeLegs[l].reverse());
+			}
+		}
+		return builder.build();
 	}
 
 }
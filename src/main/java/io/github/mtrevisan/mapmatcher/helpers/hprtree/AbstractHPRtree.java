@@ -0,0 +1,610 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+
+import io.github.mtrevisan.mapmatcher.helpers.index.BatchItemVisitor;
+import io.github.mtrevisan.mapmatcher.helpers.index.Corridor;
+import io.github.mtrevisan.mapmatcher.helpers.index.ItemBoundsVisitor;
+import io.github.mtrevisan.mapmatcher.helpers.index.ItemVisitor;
+import io.github.mtrevisan.mapmatcher.helpers.index.SpatialIndex;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleBiFunction;
+
+
+/**
+ * The queries of a packed Hilbert R-tree, over accessors of its layers, node bounds, and items.
+ * <p>
+ * The nodes of a layer are stored as <code>(minX, minY, maxX, maxY)</code> quadruples, the layers one after the other from the leaves
+ * up; the children of a node are the <code>nodeCapacity</code> nodes (or items) of the layer below starting at the node offset times
+ * <code>nodeCapacity</code>.<br/>
+ * Subclasses store these structures (e.g. in arrays, or in buffers) and make sure the index is built before answering the accessors.
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ */
+abstract class AbstractHPRtree<T> implements SpatialIndex<T>{
+
+	static final int ENV_SIZE = 4;
+
+
+	/**
+	 * Returns the maximum number of children of a node.
+	 *
+	 * @return	The node capacity.
+	 */
+	abstract int nodeCapacity();
+
+	/**
+	 * Returns the envelope of all the items, null if there are none.
+	 *
+	 * @return	The total extent.
+	 */
+	abstract Envelope totalExtent();
+
+	/**
+	 * Returns the number of start indices of the layers, <code>0</code> if the items are not covered by any node.
+	 *
+	 * @return	The number of layers plus one.
+	 */
+	abstract int layerCount();
+
+	/**
+	 * Returns the index, in the node bounds, of the first node of the given layer.
+	 *
+	 * @param layerIndex	The layer, <code>0</code> being the one of the leaves.
+	 * @return	The start index of the layer.
+	 */
+	abstract int layerStart(int layerIndex);
+
+	/**
+	 * Returns a node bound.
+	 *
+	 * @param index	The index into the node bounds.
+	 * @return	The bound.
+	 */
+	abstract double nodeBound(int index);
+
+	/**
+	 * Returns an item bound.
+	 *
+	 * @param index	The index into the item bounds.
+	 * @return	The bound.
+	 */
+	abstract double itemBound(int index);
+
+	/**
+	 * Returns an item.
+	 *
+	 * @param itemIndex	The index of the item, in Hilbert order.
+	 * @return	The item.
+	 */
+	abstract T itemValue(int itemIndex);
+
+
+	@Override
+	public List<T> query(final Envelope searchEnvelope){
+		final List<T> items = new ArrayList<>(0);
+		if(searchEnvelope.isNull())
+			build();
+		else
+			query(searchEnvelope.getMinX(), searchEnvelope.getMinY(), searchEnvelope.getMaxX(), searchEnvelope.getMaxY(),
+				(item, minX, minY, maxX, maxY) -> items.add(item));
+		return items;
+	}
+
+	/**
+	 * Visits the items whose envelope intersects the given bounds.
+	 * <p>
+	 * Only the envelope handed to the visitor is allocated, once per query; use
+	 * {@link #query(double, double, double, double, ItemBoundsVisitor)} to allocate nothing.
+	 * </p>
+	 *
+	 * @param minX	The minimum x of the bounds to search.
+	 * @param minY	The minimum y of the bounds to search.
+	 * @param maxX	The maximum x of the bounds to search.
+	 * @param maxY	The maximum y of the bounds to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	@Override
+	public boolean query(final double minX, final double minY, final double maxX, final double maxY, final ItemVisitor<T> visitor){
+		//the envelope handed to the visitor, reused for all the visited items
+		final Envelope itemEnvelope = Envelope.ofEmpty();
+		return query(minX, minY, maxX, maxY, (item, itemMinX, itemMinY, itemMaxX, itemMaxY) -> {
+			itemEnvelope.setToNull();
+			itemEnvelope.expandToInclude(itemMinX, itemMinY);
+			itemEnvelope.expandToInclude(itemMaxX, itemMaxY);
+			return visitor.visitItem(item, itemEnvelope);
+		});
+	}
+
+	/**
+	 * Visits the items whose envelope intersects the given bounds, handing their bounds as primitives.
+	 * <p>
+	 * Nothing is allocated by the traversal, so this is suited to be called on hot paths (e.g. once per observation).
+	 * </p>
+	 *
+	 * @param minX	The minimum x of the bounds to search.
+	 * @param minY	The minimum y of the bounds to search.
+	 * @param maxX	The maximum x of the bounds to search.
+	 * @param maxY	The maximum y of the bounds to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	public boolean query(final double minX, final double minY, final double maxX, final double maxY, final ItemBoundsVisitor<T> visitor){
+		build();
+
+		final Envelope totalExtent = totalExtent();
+		if(totalExtent.isNull() || !intersects(totalExtent, minX, minY, maxX, maxY))
+			return true;
+
+		if(layerCount() == 0)
+			return queryItems(0, minX, minY, maxX, maxY, visitor);
+
+		final int layerIndex = layerCount() - 2;
+		final int layerSize = layerSize(layerIndex);
+		//query each node in the top layer
+		for(int i = 0; i < layerSize; i += ENV_SIZE)
+			if(!queryNode(layerIndex, i, minX, minY, maxX, maxY, visitor))
+				return false;
+		return true;
+	}
+
+	private boolean queryItems(final int blockStart, final double minX, final double minY, final double maxX, final double maxY,
+			final ItemBoundsVisitor<T> visitor){
+		final int blockEnd = Math.min(blockStart + nodeCapacity(), size());
+		for(int itemIndex = blockStart; itemIndex < blockEnd; itemIndex ++){
+			final int boundIndex = itemIndex * ENV_SIZE;
+			final double itemMinX = itemBound(boundIndex);
+			final double itemMinY = itemBound(boundIndex + 1);
+			final double itemMaxX = itemBound(boundIndex + 2);
+			final double itemMaxY = itemBound(boundIndex + 3);
+			//visit the item if its envelope intersects search env
+			if(!(maxX < itemMinX || maxY < itemMinY || minX > itemMaxX || minY > itemMaxY)
+					&& !visitor.visitItem(itemValue(itemIndex), itemMinX, itemMinY, itemMaxX, itemMaxY))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tests whether an envelope intersects the given bounds.
+	 * Avoids the null check in {@link Envelope#intersects(Envelope)}.
+	 */
+	private static boolean intersects(final Envelope envelope, final double minX, final double minY, final double maxX,
+			final double maxY){
+		return !(minX > envelope.getMaxX()
+			|| maxX < envelope.getMinX()
+			|| minY > envelope.getMaxY()
+			|| maxY < envelope.getMinY());
+	}
+
+	int layerSize(final int layerIndex){
+		return layerStart(layerIndex + 1) - layerStart(layerIndex);
+	}
+
+	private boolean queryNode(final int layerIndex, final int nodeOffset, final double minX, final double minY, final double maxX,
+			final double maxY, final ItemBoundsVisitor<T> visitor){
+		final int nodeIndex = layerStart(layerIndex) + nodeOffset;
+		if(!intersects(nodeIndex, minX, minY, maxX, maxY))
+			return true;
+
+		final int nodeCapacity = nodeCapacity();
+		if(layerIndex == 0)
+			return queryItems(nodeOffset / ENV_SIZE * nodeCapacity, minX, minY, maxX, maxY, visitor);
+
+		final int childLayerIndex = layerIndex - 1;
+		final int childLayerStart = layerStart(childLayerIndex);
+		final int childLayerEnd = layerStart(layerIndex);
+		final int blockOffset = nodeOffset * nodeCapacity;
+		for(int i = 0; i < nodeCapacity; i ++){
+			final int childOffset = blockOffset + ENV_SIZE * i;
+			//don't query past layer end
+			if(childLayerStart + childOffset >= childLayerEnd)
+				break;
+
+			if(!queryNode(childLayerIndex, childOffset, minX, minY, maxX, maxY, visitor))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean intersects(final int nodeIndex, final Envelope env){
+		return intersects(nodeIndex, env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
+	}
+
+	private boolean intersects(final int nodeIndex, final double minX, final double minY, final double maxX, final double maxY){
+		final boolean isBeyond = (
+			maxX < nodeBound(nodeIndex)
+			|| maxY < nodeBound(nodeIndex + 1)
+			|| minX > nodeBound(nodeIndex + 2)
+			|| minY > nodeBound(nodeIndex + 3));
+		return !isBeyond;
+	}
+
+
+	/**
+	 * Visits the items whose envelope intersects any of the given envelopes, traversing the tree once.
+	 * <p>
+	 * Each node keeps track of the search envelopes that intersect it, so its children are tested only against those, and the nodes
+	 * shared by many searches (e.g. the observations of a trajectory) are visited once instead of once per search.
+	 * </p>
+	 *
+	 * @param searchEnvelopes	The envelopes to search (<code>null</code> or null envelopes are skipped).
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	@Override
+	public boolean query(final Envelope[] searchEnvelopes, final BatchItemVisitor<T> visitor){
+		return query(searchEnvelopes, null, visitor);
+	}
+
+	/**
+	 * Visits, once each, the items whose envelope intersects the given corridor, traversing the tree once.
+	 * <p>
+	 * The segments of the corridor are searched in a batch, where a node retains only the segments whose capsule (not just its envelope)
+	 * intersects it, and an item is visited for the first capsule it intersects.
+	 * </p>
+	 *
+	 * @param corridor	The corridor to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	@Override
+	public boolean query(final Corridor corridor, final ItemVisitor<T> visitor){
+		return query(corridor.getSegmentEnvelopes(), corridor, (item, envelope, segment) -> visitor.visitItem(item, envelope));
+	}
+
+	private boolean query(final Envelope[] searchEnvelopes, final Corridor corridor, final BatchItemVisitor<T> visitor){
+		build();
+
+		final Envelope totalExtent = totalExtent();
+		if(totalExtent.isNull())
+			return true;
+
+		//the layers of the tree, plus the items
+		final int levels = Math.max(layerCount(), 1);
+		final Batch batch = new Batch(searchEnvelopes.length, levels, corridor, visitor);
+		//retain only the searches that may find something
+		final int[] active = batch.active[levels - 1];
+		int count = 0;
+		for(int i = 0; i < searchEnvelopes.length; i ++){
+			final Envelope searchEnvelope = searchEnvelopes[i];
+			if(searchEnvelope == null || searchEnvelope.isNull()
+					|| !intersects(totalExtent, searchEnvelope.getMinX(), searchEnvelope.getMinY(), searchEnvelope.getMaxX(),
+						searchEnvelope.getMaxY()))
+				continue;
+
+			final int boundIndex = i * ENV_SIZE;
+			batch.searchBounds[boundIndex] = searchEnvelope.getMinX();
+			batch.searchBounds[boundIndex + 1] = searchEnvelope.getMinY();
+			batch.searchBounds[boundIndex + 2] = searchEnvelope.getMaxX();
+			batch.searchBounds[boundIndex + 3] = searchEnvelope.getMaxY();
+			active[count ++] = i;
+			batch.expandActiveBounds(levels - 1, i);
+		}
+		if(count == 0)
+			return true;
+
+		if(layerCount() == 0)
+			return queryItems(0, active, count, batch);
+
+		final int layerIndex = layerCount() - 2;
+		final int layerSize = layerSize(layerIndex);
+		for(int i = 0; i < layerSize; i += ENV_SIZE)
+			if(!queryNode(layerIndex, i, active, count, batch))
+				return false;
+		return true;
+	}
+
+	private boolean queryNode(final int layerIndex, final int nodeOffset, final int[] parentActive, final int parentCount,
+			final Batch batch){
+		final int nodeIndex = layerStart(layerIndex) + nodeOffset;
+		//discard the node at once if it does not intersect the bounds of all the searches of its parent
+		final double[] parentBounds = batch.activeBounds[layerIndex + 1];
+		if(!intersects(nodeIndex, parentBounds[0], parentBounds[1], parentBounds[2], parentBounds[3]))
+			return true;
+
+		//retain the searches that intersect this node
+		final double nodeMinX = nodeBound(nodeIndex);
+		final double nodeMinY = nodeBound(nodeIndex + 1);
+		final double nodeMaxX = nodeBound(nodeIndex + 2);
+		final double nodeMaxY = nodeBound(nodeIndex + 3);
+		final int[] active = batch.active[layerIndex];
+		batch.resetActiveBounds(layerIndex);
+		int count = 0;
+		for(int i = 0; i < parentCount; i ++){
+			final int boundIndex = parentActive[i] * ENV_SIZE;
+			if(intersects(nodeIndex, batch.searchBounds[boundIndex], batch.searchBounds[boundIndex + 1],
+					batch.searchBounds[boundIndex + 2], batch.searchBounds[boundIndex + 3])
+					&& batch.intersectsCorridor(parentActive[i], nodeMinX, nodeMinY, nodeMaxX, nodeMaxY)){
+				active[count ++] = parentActive[i];
+				batch.expandActiveBounds(layerIndex, parentActive[i]);
+			}
+		}
+		if(count == 0)
+			return true;
+
+		final int nodeCapacity = nodeCapacity();
+		if(layerIndex == 0)
+			return queryItems(nodeOffset / ENV_SIZE * nodeCapacity, active, count, batch);
+
+		final int childLayerIndex = layerIndex - 1;
+		final int childLayerStart = layerStart(childLayerIndex);
+		final int childLayerEnd = layerStart(layerIndex);
+		final int blockOffset = nodeOffset * nodeCapacity;
+		for(int i = 0; i < nodeCapacity; i ++){
+			final int childOffset = blockOffset + ENV_SIZE * i;
+			//don't query past layer end
+			if(childLayerStart + childOffset >= childLayerEnd)
+				break;
+
+			if(!queryNode(childLayerIndex, childOffset, active, count, batch))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean queryItems(final int blockStart, final int[] active, final int count, final Batch batch){
+		final int blockEnd = Math.min(blockStart + nodeCapacity(), size());
+		for(int itemIndex = blockStart; itemIndex < blockEnd; itemIndex ++){
+			final int boundIndex = itemIndex * ENV_SIZE;
+			final double itemMinX = itemBound(boundIndex);
+			final double itemMinY = itemBound(boundIndex + 1);
+			final double itemMaxX = itemBound(boundIndex + 2);
+			final double itemMaxY = itemBound(boundIndex + 3);
+			batch.itemEnvelope.setToNull();
+			for(int i = 0; i < count; i ++){
+				final int searchIndex = active[i];
+				final int searchBoundIndex = searchIndex * ENV_SIZE;
+				if(batch.searchBounds[searchBoundIndex + 2] < itemMinX || batch.searchBounds[searchBoundIndex + 3] < itemMinY
+						|| batch.searchBounds[searchBoundIndex] > itemMaxX || batch.searchBounds[searchBoundIndex + 1] > itemMaxY
+						|| !batch.intersectsCorridor(searchIndex, itemMinX, itemMinY, itemMaxX, itemMaxY))
+					continue;
+
+				if(batch.itemEnvelope.isNull()){
+					batch.itemEnvelope.expandToInclude(itemMinX, itemMinY);
+					batch.itemEnvelope.expandToInclude(itemMaxX, itemMaxY);
+				}
+				if(!batch.visitor.visitItem(itemValue(itemIndex), batch.itemEnvelope, searchIndex))
+					return false;
+				if(batch.corridor != null)
+					//the segments of a corridor are a single search: visit the item once
+					break;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Finds the <code>k</code> items nearest to the given point, within a maximum distance.
+	 * <p>
+	 * The tree is searched best-first: the nodes are visited in order of the distance to their bounds, and a node is discarded as soon
+	 * as its bounds are farther than the <code>k</code>-th item found so far, so only the items that can rank are measured.
+	 * </p>
+	 * <p>
+	 * NOTE: the distance to an item must not be less than the distance (in the topology of the point) to the nearest point of its
+	 * envelope, as it is the case for the distance to a polyline.
+	 * </p>
+	 *
+	 * @param point	The point.
+	 * @param k	The maximum number of items to be returned.
+	 * @param maxDistance	The maximum distance of the items to be returned.
+	 * @param distance	The distance between the point and an item (e.g. {@link Point#distance(io.github.mtrevisan.mapmatcher.spatial.Polyline)}).
+	 * @return	The nearest items, sorted by increasing distance.
+	 */
+	@Override
+	public List<T> nearest(final Point point, final int k, final double maxDistance, final ToDoubleBiFunction<Point, T> distance){
+		if(k <= 0)
+			throw new IllegalArgumentException("`k` must be positive");
+
+		build();
+
+		//discard what is surely too far without measuring any distance
+		final Envelope searchEnvelope = (Double.isInfinite(maxDistance)? null: searchEnvelope(point, maxDistance));
+		final Envelope totalExtent = totalExtent();
+		if(totalExtent.isNull() || searchEnvelope != null && !totalExtent.intersects(searchEnvelope))
+			return Collections.emptyList();
+
+		//candidates, nearest first
+		final PriorityQueue<Neighbor> queue = new PriorityQueue<>();
+		final Search search = new Search(point, maxDistance, searchEnvelope, distance, queue);
+		if(layerCount() == 0)
+			enqueueItems(0, search);
+		else{
+			final int layerIndex = layerCount() - 2;
+			final int layerSize = layerSize(layerIndex);
+			for(int i = 0; i < layerSize; i += ENV_SIZE)
+				enqueueNode(layerIndex, i, search);
+		}
+
+		final int nodeCapacity = nodeCapacity();
+		final List<T> neighbors = new ArrayList<>(k);
+		while(!queue.isEmpty() && neighbors.size() < k){
+			final Neighbor neighbor = queue.poll();
+			if(neighbor.layerIndex < 0)
+				//an item, no other candidate can be nearer
+				neighbors.add(itemValue(neighbor.offset));
+			else if(neighbor.layerIndex == 0)
+				enqueueItems(neighbor.offset / ENV_SIZE * nodeCapacity, search);
+			else{
+				final int layerIndex = neighbor.layerIndex - 1;
+				final int layerStart = layerStart(layerIndex);
+				final int layerEnd = layerStart(layerIndex + 1);
+				final int blockOffset = neighbor.offset * nodeCapacity;
+				for(int i = 0; i < nodeCapacity; i ++){
+					final int nodeOffset = blockOffset + ENV_SIZE * i;
+					//don't query past layer end
+					if(layerStart + nodeOffset >= layerEnd)
+						break;
+
+					enqueueNode(layerIndex, nodeOffset, search);
+				}
+			}
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Returns the envelope that circumscribes the circle with the given radius around the given point.
+	 */
+	private static Envelope searchEnvelope(final Point point, final double radius){
+		final Envelope envelope = Envelope.of(point);
+		for(int bearing = 0; bearing < 360; bearing += 90)
+			envelope.expandToInclude(point.destination(bearing, radius));
+		return envelope;
+	}
+
+	private void enqueueItems(final int blockStart, final Search search){
+		final int blockEnd = Math.min(blockStart + nodeCapacity(), size());
+		for(int itemIndex = blockStart; itemIndex < blockEnd; itemIndex ++){
+			final int boundIndex = itemIndex * ENV_SIZE;
+			if(search.envelope != null && (search.envelope.getMaxX() < itemBound(boundIndex)
+					|| search.envelope.getMaxY() < itemBound(boundIndex + 1)
+					|| search.envelope.getMinX() > itemBound(boundIndex + 2)
+					|| search.envelope.getMinY() > itemBound(boundIndex + 3)))
+				continue;
+
+			final double itemDistance = search.distance.applyAsDouble(search.point, itemValue(itemIndex));
+			if(itemDistance <= search.maxDistance)
+				search.queue.add(new Neighbor(itemDistance, -1, itemIndex));
+		}
+	}
+
+	private void enqueueNode(final int layerIndex, final int nodeOffset, final Search search){
+		final int nodeIndex = layerStart(layerIndex) + nodeOffset;
+		if(search.envelope != null && !intersects(nodeIndex, search.envelope))
+			return;
+
+		final double lowerBound = SpatialIndex.distanceToBounds(search.point, nodeBound(nodeIndex), nodeBound(nodeIndex + 1),
+			nodeBound(nodeIndex + 2), nodeBound(nodeIndex + 3));
+		if(lowerBound <= search.maxDistance)
+			search.queue.add(new Neighbor(lowerBound, layerIndex, nodeOffset));
+	}
+
+
+	/** The state of a batch query. */
+	private final class Batch{
+
+		/** Bounds of the searches, as <code>(minX, minY, maxX, maxY)</code> quadruples. */
+		private final double[] searchBounds;
+		/** For each layer (plus the root), the indices of the searches that intersect the node being visited. */
+		private final int[][] active;
+		/** For each layer (plus the root), the bounds of the searches that intersect the node being visited. */
+		private final double[][] activeBounds;
+		/** The corridor whose segments are the searches, if any. */
+		private final Corridor corridor;
+		private final BatchItemVisitor<T> visitor;
+		//the envelope handed to the visitor, reused for all the visited items
+		private final Envelope itemEnvelope = Envelope.ofEmpty();
+
+
+		private Batch(final int searches, final int levels, final Corridor corridor, final BatchItemVisitor<T> visitor){
+			searchBounds = new double[searches * ENV_SIZE];
+			active = new int[levels][searches];
+			activeBounds = new double[levels][ENV_SIZE];
+			for(int level = 0; level < levels; level ++)
+				resetActiveBounds(level);
+			this.corridor = corridor;
+			this.visitor = visitor;
+		}
+
+		/** Tests the given bounds against the capsule of the given search, if the searches are a corridor. */
+		private boolean intersectsCorridor(final int searchIndex, final double minX, final double minY, final double maxX,
+				final double maxY){
+			return (corridor == null || corridor.intersects(searchIndex, minX, minY, maxX, maxY));
+		}
+
+		private void resetActiveBounds(final int level){
+			final double[] bounds = activeBounds[level];
+			bounds[0] = Double.POSITIVE_INFINITY;
+			bounds[1] = Double.POSITIVE_INFINITY;
+			bounds[2] = Double.NEGATIVE_INFINITY;
+			bounds[3] = Double.NEGATIVE_INFINITY;
+		}
+
+		private void expandActiveBounds(final int level, final int searchIndex){
+			final double[] bounds = activeBounds[level];
+			final int boundIndex = searchIndex * ENV_SIZE;
+			bounds[0] = Math.min(bounds[0], searchBounds[boundIndex]);
+			bounds[1] = Math.min(bounds[1], searchBounds[boundIndex + 1]);
+			bounds[2] = Math.max(bounds[2], searchBounds[boundIndex + 2]);
+			bounds[3] = Math.max(bounds[3], searchBounds[boundIndex + 3]);
+		}
+
+	}
+
+	/** The parameters of a nearest-neighbor search. */
+	private final class Search{
+
+		private final Point point;
+		private final double maxDistance;
+		private final Envelope envelope;
+		private final ToDoubleBiFunction<Point, T> distance;
+		private final PriorityQueue<Neighbor> queue;
+
+
+		private Search(final Point point, final double maxDistance, final Envelope envelope, final ToDoubleBiFunction<Point, T> distance,
+				final PriorityQueue<Neighbor> queue){
+			this.point = point;
+			this.maxDistance = maxDistance;
+			this.envelope = envelope;
+			this.distance = distance;
+			this.queue = queue;
+		}
+
+	}
+
+	/** A candidate of a nearest-neighbor search, either a node (of the given layer) or an item (with layer <code>-1</code>). */
+	private static final class Neighbor implements Comparable<Neighbor>{
+
+		private final double distance;
+		private final int layerIndex;
+		private final int offset;
+
+
+		private Neighbor(final double distance, final int layerIndex, final int offset){
+			this.distance = distance;
+			this.layerIndex = layerIndex;
+			this.offset = offset;
+		}
+
+		@Override
+		public int compareTo(final Neighbor other){
+			final int comparison = Double.compare(distance, other.distance);
+			//an item goes before a node at the same distance
+			return (comparison != 0? comparison: Integer.compare(layerIndex, other.layerIndex));
+		}
+
+	}
+
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+
+import io.github.mtrevisan.mapmatcher.helpers.index.ItemVisitor;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * A Hilbert-Packed R-tree that can be updated after it has been queried.
+ * <p>
+ * The index is made of three parts:
+ * <ul>
+ * 	<li>an immutable base, that is a packed {@link HPRtree}</li>
+ * 	<li>a small unsorted buffer of the items inserted after the base was built (the delta)</li>
+ * 	<li>a set of the removed items (the tombstones), that hides them from the base</li>
+ * </ul>
+ * A query visits the base skipping the tombstones, then scans the delta, so its speed stays close to the one of the static tree as
+ * long as the delta is small.<br/>
+ * Once the delta and the tombstones grow past a threshold, a new base is built in background out of the live items, and swapped in
+ * when ready. The updates made during the rebuild are kept.
+ * </p>
+ * <p>
+ * The parts are replaced (never modified) on each update, so queries can run concurrently with updates and rebuilds, each query seeing
+ * a consistent state of the index. Updates are serialized.<br/>
+ * As each update copies the delta and the tombstones, this index is meant for incremental edits, not for bulk loading (use
+ * {@link HPRtree} for that).
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ */
+public class DynamicHPRtree<T>{
+
+	private static final int DEFAULT_NODE_CAPACITY = 16;
+	private static final int DEFAULT_REBUILD_THRESHOLD = 1024;
+
+
+	private final int nodeCapacity;
+	private final int rebuildThreshold;
+	private final Executor executor;
+
+	private volatile State<T> state;
+	private boolean rebuildScheduled;
+	private final Object rebuildLock = new Object();
+
+
+	/**
+	 * Creates an index that rebuilds its base in the common fork-join pool.
+	 */
+	public DynamicHPRtree(){
+		this(DEFAULT_NODE_CAPACITY, DEFAULT_REBUILD_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param nodeCapacity	The node capacity of the base.
+	 * @param rebuildThreshold	The number of pending updates (items in the delta plus tombstones) that triggers a rebuild of the base.
+	 * @param executor	The executor that runs the rebuilds.
+	 */
+	public DynamicHPRtree(final int nodeCapacity, final int rebuildThreshold, final Executor executor){
+		if(rebuildThreshold <= 0)
+			throw new IllegalArgumentException("`rebuildThreshold` must be positive");
+		if(executor == null)
+			throw new IllegalArgumentException("`executor` cannot be null");
+
+		this.nodeCapacity = nodeCapacity;
+		this.rebuildThreshold = rebuildThreshold;
+		this.executor = executor;
+
+		final HPRtree<Item<T>> base = new HPRtree<>(nodeCapacity);
+		base.build();
+		state = new State<>(base, Collections.emptyList(), Collections.emptySet(), 0);
+	}
+
+
+	/**
+	 * Gets the number of (live) items in the index.
+	 *
+	 * @return	The number of items.
+	 */
+	public int size(){
+		return state.size;
+	}
+
+	/**
+	 * Returns the number of items inserted or removed since the base was last built.
+	 *
+	 * @return	The number of pending updates.
+	 */
+	public int pendingUpdates(){
+		final State<T> current = state;
+		return current.delta.size() + current.tombstones.size();
+	}
+
+	public void insert(final Envelope itemEnvelope, final T item){
+		synchronized(this){
+			final State<T> current = state;
+			final List<Item<T>> delta = new ArrayList<>(current.delta.size() + 1);
+			delta.addAll(current.delta);
+			delta.add(new Item<>(itemEnvelope, item));
+			state = new State<>(current.base, delta, current.tombstones, current.size + 1);
+		}
+
+		scheduleRebuildIfNeeded();
+	}
+
+	/**
+	 * Removes all the copies of the given item.
+	 *
+	 * @param itemEnvelope	The envelope of the item (or one containing it).
+	 * @param item	The item to be removed, compared through {@link Object#equals(Object)}.
+	 * @return	Whether an item was removed.
+	 */
+	public boolean remove(final Envelope itemEnvelope, final T item){
+		if(!removeItem(itemEnvelope, item))
+			return false;
+
+		scheduleRebuildIfNeeded();
+		return true;
+	}
+
+	private synchronized boolean removeItem(final Envelope itemEnvelope, final T item){
+		final State<T> current = state;
+		final List<Item<T>> removed = new ArrayList<>(1);
+		current.base.query(itemEnvelope, (entry, envelope) -> {
+			if(!current.tombstones.contains(entry) && entry.getItem().equals(item))
+				removed.add(entry);
+			return true;
+		});
+		final List<Item<T>> delta = new ArrayList<>(current.delta.size());
+		for(final Item<T> entry : current.delta){
+			if(entry.getItem().equals(item))
+				removed.add(entry);
+			else
+				delta.add(entry);
+		}
+		if(removed.isEmpty())
+			return false;
+
+		//NOTE: also the entries of the delta are tombstoned, as a rebuild in progress could be moving them into the base
+		final Set<Item<T>> tombstones = newIdentitySet(current.tombstones.size() + removed.size());
+		tombstones.addAll(current.tombstones);
+		tombstones.addAll(removed);
+		state = new State<>(current.base, delta, tombstones, current.size - removed.size());
+		return true;
+	}
+
+	/**
+	 * Schedules a rebuild, if there are enough pending updates and no rebuild is already scheduled.
+	 * <p>
+	 * If the executor rejects the rebuild (e.g. because it was shut down), the rebuild is done in the calling thread, so the delta never
+	 * grows unbounded.
+	 * </p>
+	 * <p>
+	 * NOTE: this is called without holding the lock of this index, as the executor could run the rebuild in the calling thread.
+	 * </p>
+	 */
+	private void scheduleRebuildIfNeeded(){
+		if(!claimRebuild())
+			return;
+
+		try{
+			executor.execute(this::runClaimedRebuild);
+		}
+		catch(final RejectedExecutionException ree){
+			runClaimedRebuild();
+		}
+	}
+
+	private void runClaimedRebuild(){
+		try{
+			rebuild();
+		}
+		finally{
+			synchronized(this){
+				rebuildScheduled = false;
+			}
+		}
+	}
+
+	private synchronized boolean claimRebuild(){
+		if(rebuildScheduled || pendingUpdates() < rebuildThreshold)
+			return false;
+
+		rebuildScheduled = true;
+		return true;
+	}
+
+	/**
+	 * Merges the delta and the tombstones into a new base.
+	 * <p>
+	 * This is done automatically in background once there are enough pending updates, calling this method forces a rebuild in the
+	 * calling thread.
+	 * </p>
+	 */
+	public void rebuild(){
+		synchronized(rebuildLock){
+			final State<T> snapshot = state;
+			if(snapshot.delta.isEmpty() && snapshot.tombstones.isEmpty())
+				return;
+
+			final HPRtree<Item<T>> base = new HPRtree<>(nodeCapacity);
+			for(final Item<T> entry : snapshot.base.nodes())
+				if(!snapshot.tombstones.contains(entry))
+					base.insert(entry.getEnvelope(), entry);
+			for(final Item<T> entry : snapshot.delta)
+				if(!snapshot.tombstones.contains(entry))
+					base.insert(entry.getEnvelope(), entry);
+			base.build();
+
+			synchronized(this){
+				//keep the updates made in the meantime
+				final State<T> current = state;
+				final Set<Item<T>> mergedDelta = newIdentitySet(snapshot.delta.size());
+				mergedDelta.addAll(snapshot.delta);
+				final List<Item<T>> delta = new ArrayList<>(0);
+				for(final Item<T> entry : current.delta)
+					if(!mergedDelta.contains(entry))
+						delta.add(entry);
+				final Set<Item<T>> tombstones = newIdentitySet(0);
+				for(final Item<T> entry : current.tombstones)
+					if(!snapshot.tombstones.contains(entry))
+						tombstones.add(entry);
+				state = new State<>(base, delta, tombstones, current.size);
+			}
+		}
+	}
+
+	private static <T> Set<Item<T>> newIdentitySet(final int expectedSize){
+		return Collections.newSetFromMap(new IdentityHashMap<>(expectedSize));
+	}
+
+
+	public List<T> query(final Envelope searchEnvelope){
+		final List<T> items = new ArrayList<>();
+		query(searchEnvelope, (item, envelope) -> items.add(item));
+		return items;
+	}
+
+	/**
+	 * Visits the live items whose envelope intersects the given envelope.
+	 *
+	 * @param searchEnvelope	The envelope to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 * @see HPRtree#query(Envelope, ItemVisitor)
+	 */
+	public boolean query(final Envelope searchEnvelope, final ItemVisitor<T> visitor){
+		if(searchEnvelope.isNull())
+			return true;
+
+		return query(searchEnvelope.getMinX(), searchEnvelope.getMinY(), searchEnvelope.getMaxX(), searchEnvelope.getMaxY(), visitor);
+	}
+
+	/**
+	 * Visits the live items whose envelope intersects the given bounds.
+	 *
+	 * @param minX	The minimum x of the bounds to search.
+	 * @param minY	The minimum y of the bounds to search.
+	 * @param maxX	The maximum x of the bounds to search.
+	 * @param maxY	The maximum y of the bounds to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 * @see HPRtree#query(double, double, double, double, ItemVisitor)
+	 */
+	public boolean query(final double minX, final double minY, final double maxX, final double maxY, final ItemVisitor<T> visitor){
+		//read the state once, so the whole query sees the same one
+		final State<T> current = state;
+		//NOTE: the entries carry their own envelope, so the base does not have to create one
+		final boolean completed = current.base.query(minX, minY, maxX, maxY,
+			(entry, entryMinX, entryMinY, entryMaxX, entryMaxY) -> (current.tombstones.contains(entry)
+				|| visitor.visitItem(entry.getItem(), entry.getEnvelope())));
+		if(!completed)
+			return false;
+
+		for(final Item<T> entry : current.delta){
+			final Envelope envelope = entry.getEnvelope();
+			if(!(minX > envelope.getMaxX() || maxX < envelope.getMinX() || minY > envelope.getMaxY() || maxY < envelope.getMinY())
+					&& !visitor.visitItem(entry.getItem(), envelope))
+				return false;
+		}
+		return true;
+	}
+
+
+	private static final class State<T>{
+
+		private final HPRtree<Item<T>> base;
+		private final List<Item<T>> delta;
+		private final Set<Item<T>> tombstones;
+		private final int size;
+
+
+		private State(final HPRtree<Item<T>> base, final List<Item<T>> delta, final Set<Item<T>> tombstones, final int size){
+			this.base = base;
+			this.delta = delta;
+			this.tombstones = tombstones;
+			this.size = size;
+		}
+
+	}
+
+}
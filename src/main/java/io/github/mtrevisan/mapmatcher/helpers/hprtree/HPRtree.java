@@ -27,9 +27,10 @@ package io.github.mtrevisan.mapmatcher.helpers.hprtree;
 import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.stream.IntStream;
 
 
 /**
@@ -52,22 +53,32 @@ import java.util.List;
  * NOTE: Based on performance testing, the HPRtree is somewhat faster than the STRtree.<br/>
  * It should also be more memory-efficient, due to fewer object allocations.<br/>
  * </p>
+ * <p>
+ * The index can be safely shared among threads once built: it is immutable from then on, and it is built (by {@link #build()}, or by
+ * the first query) at most once, even if many threads query it for the first time concurrently.
+ * </p>
  *
  * @see <a href="https://github.com/locationtech/jts/blob/master/modules/core/src/main/java/org/locationtech/jts/index/hprtree/HPRtree.java">HPRtree.java</a>
  * @see <a href="https://www.cs.cmu.edu/~christos/PUBLICATIONS.OLDER/vldb94.pdf">Hilbert R-tree: An improved R-tree using fractals</a>
  */
-public class HPRtree<T>{
+public class HPRtree<T> extends AbstractHPRtree<T>{
 
-	private static final int ENV_SIZE = 4;
 	private static final int HILBERT_LEVEL = 12;
 	private static final int DEFAULT_NODE_CAPACITY = 16;
-
-	private final List<Item<T>> items = new ArrayList<>(0);
-	private final int nodeCapacity;
-	private final Envelope totalExtent = Envelope.ofEmpty();
-	private int[] layerStartIndex;
-	private double[] nodeBounds;
-	private boolean isBuilt;
+	//the number of items (or nodes) under which the build is not worth parallelizing
+	private static final int PARALLEL_THRESHOLD = 8192;
+
+	//the items inserted so far, moved into `itemBounds` and `itemValues` when the tree is built
+	private List<Item<T>> items = new ArrayList<>(0);
+	final int nodeCapacity;
+	final Envelope totalExtent = Envelope.ofEmpty();
+	int[] layerStartIndex;
+	double[] nodeBounds;
+	/** Bounds of the (sorted) items, as <code>(minX, minY, maxX, maxY)</code> quadruples, laid out as the node bounds. */
+	double[] itemBounds;
+	T[] itemValues;
+	//volatile, so that the arrays written while building are visible to any thread that sees the index as built
+	private volatile boolean isBuilt;
 
 
 	/**
@@ -91,11 +102,18 @@ public class HPRtree<T>{
 	 *
 	 * @return the number of items
 	 */
+	@Override
 	public int size(){
-		return items.size();
+		if(isBuilt)
+			return itemValues.length;
+
+		synchronized(this){
+			return (isBuilt? itemValues.length: items.size());
+		}
 	}
 
-	public void insert(final Envelope itemEnvelope, final T item){
+	@Override
+	public synchronized void insert(final Envelope itemEnvelope, final T item){
 		if(isBuilt)
 			throw new IllegalStateException("Cannot insert items after tree is built.");
 
@@ -106,20 +124,38 @@ public class HPRtree<T>{
 
 	/**
 	 * Builds the index, if not already built.
+	 * <p>
+	 * The index is built lazily by the first query, calling this method beforehand makes the index read-only, so it can be shared by
+	 * concurrent readers.<br/>
+	 * Concurrent calls are safe: the index is built only once, and every caller returns only when the index is fully built.
+	 * </p>
 	 */
-	private void build(){
+	@Override
+	public void build(){
 		//skip if already built
 		if(isBuilt)
 			return;
 
-		isBuilt = true;
+		synchronized(this){
+			if(!isBuilt){
+				buildTree();
+
+				//publish the built index
+				isBuilt = true;
+			}
+		}
+	}
+
+	private void buildTree(){
 		//don't need to build an empty or very small tree
-		if(items.size() <= nodeCapacity)
+		if(items.size() <= nodeCapacity){
+			storeItems(null);
 			return;
+		}
 
-		sortItems();
+		storeItems(sortItems());
 
-		layerStartIndex = computeLayerIndices(items.size(), nodeCapacity);
+		layerStartIndex = computeLayerIndices(itemValues.length, nodeCapacity);
 		//allocate storage
 		final int nodeCount = layerStartIndex[layerStartIndex.length - 1] / 4;
 		nodeBounds = createBoundsArray(nodeCount);
@@ -130,9 +166,63 @@ public class HPRtree<T>{
 			computeLayerNodes(i);
 	}
 
-	private void sortItems(){
-		final ItemComparator<T> comp = new ItemComparator<>(new HilbertEncoder(HILBERT_LEVEL, totalExtent));
-		items.sort(comp);
+	/**
+	 * Sorts the items by the Hilbert code of the midpoint of their envelope.
+	 * <p>
+	 * Each code is computed once, and packed together with the index of the item into a <code>long</code>, so a (parallel) primitive
+	 * sort is enough, and items with the same code keep their insertion order.
+	 * </p>
+	 *
+	 * @return	The sorted keys, the index of the item being in the lower 32 bits.
+	 */
+	private long[] sortItems(){
+		final HilbertEncoder encoder = new HilbertEncoder(HILBERT_LEVEL, totalExtent);
+		final List<Item<T>> items = this.items;
+		final long[] keys = new long[items.size()];
+		range(keys.length)
+			.forEach(i -> keys[i] = ((long)encoder.encode(items.get(i).getEnvelope()) << 32) | i);
+		if(keys.length >= PARALLEL_THRESHOLD)
+			Arrays.parallelSort(keys);
+		else
+			Arrays.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * Moves the items into flat arrays, so the leaves are scanned with sequential primitive reads, and an item takes only its bounds and
+	 * the reference to its value.
+	 *
+	 * @param keys	The sorted keys of the items, or <code>null</code> to keep the insertion order.
+	 */
+	@SuppressWarnings("unchecked")
+	private void storeItems(final long[] keys){
+		final List<Item<T>> items = this.items;
+		itemBounds = new double[items.size() * ENV_SIZE];
+		itemValues = (T[])new Object[items.size()];
+		range(items.size())
+			.forEach(i -> {
+				final Item<T> item = items.get(keys != null? (int)keys[i]: i);
+				final Envelope envelope = item.getEnvelope();
+				setItemBounds(i, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY());
+				itemValues[i] = item.getItem();
+			});
+		this.items = null;
+	}
+
+	/**
+	 * Returns the range <code>[0, size)</code>, parallel if large enough to be worth it.
+	 */
+	private static IntStream range(final int size){
+		final IntStream range = IntStream.range(0, size);
+		return (size >= PARALLEL_THRESHOLD? range.parallel(): range);
+	}
+
+	private void setItemBounds(final int itemIndex, final double minX, final double minY, final double maxX, final double maxY){
+		final int boundIndex = itemIndex * ENV_SIZE;
+		itemBounds[boundIndex] = minX;
+		itemBounds[boundIndex + 1] = minY;
+		itemBounds[boundIndex + 2] = maxX;
+		itemBounds[boundIndex + 3] = maxY;
 	}
 
 	private static int[] computeLayerIndices(final int itemSize, final int nodeCapacity){
@@ -180,18 +270,20 @@ public class HPRtree<T>{
 	}
 
 	private void computeLeafNodes(final int layerSize){
-		for(int i = 0; i < layerSize; i += ENV_SIZE)
-			computeLeafNodeBounds(i, nodeCapacity * i / 4);
+		//each node covers its own block of items, so the nodes can be computed in parallel
+		range(layerSize / ENV_SIZE)
+			.forEach(n -> computeLeafNodeBounds(n * ENV_SIZE, nodeCapacity * n));
 	}
 
 	private void computeLeafNodeBounds(final int nodeIndex, final int blockStart){
-		for(int i = 0; i <= nodeCapacity; i ++){
+		for(int i = 0; i < nodeCapacity; i ++){
 			final int itemIndex = blockStart + i;
-			if(itemIndex >= items.size())
+			if(itemIndex >= itemValues.length)
 				break;
 
-			final Envelope env = items.get(itemIndex).getEnvelope();
-			updateNodeBounds(nodeIndex, env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
+			final int boundIndex = itemIndex * ENV_SIZE;
+			updateNodeBounds(nodeIndex, itemBounds[boundIndex], itemBounds[boundIndex + 1], itemBounds[boundIndex + 2],
+				itemBounds[boundIndex + 3]);
 		}
 	}
 
@@ -200,14 +292,16 @@ public class HPRtree<T>{
 		final int childLayerStart = layerStartIndex[layerIndex - 1];
 		final int layerSize = layerSize(layerIndex);
 		final int childLayerEnd = layerStart;
-		for(int i = 0; i < layerSize; i += ENV_SIZE){
-			final int childStart = childLayerStart + nodeCapacity * i;
-			computeNodeBounds(layerStart + i, childStart, childLayerEnd);
-		}
+		range(layerSize / ENV_SIZE)
+			.forEach(n -> {
+				final int i = n * ENV_SIZE;
+				final int childStart = childLayerStart + nodeCapacity * i;
+				computeNodeBounds(layerStart + i, childStart, childLayerEnd);
+			});
 	}
 
 	private void computeNodeBounds(final int nodeIndex, final int blockStart, final int nodeMaxIndex){
-		for(int i = 0; i <= nodeCapacity; i ++){
+		for(int i = 0; i < nodeCapacity; i ++){
 			final int index = blockStart + 4 * i;
 			if(index >= nodeMaxIndex)
 				break;
@@ -229,110 +323,54 @@ public class HPRtree<T>{
 
 
 	public Collection<T> nodes(){
-		final List<T> list = new ArrayList<>(items.size());
-		for(final Item<T> item : items)
-			list.add(item.getItem());
-		return list;
-	}
-
-
-	public List<T> query(final Envelope searchEnvelope){
-		build();
-
-		if(!totalExtent.intersects(searchEnvelope))
-			return Collections.emptyList();
+		if(isBuilt)
+			return new ArrayList<>(Arrays.asList(itemValues));
 
-		final ArrayListVisitor<T> visitor = new ArrayListVisitor<>();
-		query(searchEnvelope, visitor);
-		return visitor.getItems();
-	}
+		synchronized(this){
+			if(isBuilt)
+				return new ArrayList<>(Arrays.asList(itemValues));
 
-	private void query(final Envelope searchEnvelope, final ItemVisitor<T> visitor){
-		if(layerStartIndex == null)
-			queryItems(0, searchEnvelope, visitor);
-		else
-			queryTopLayer(searchEnvelope, visitor);
+			final List<T> list = new ArrayList<>(items.size());
+			for(final Item<T> item : items)
+				list.add(item.getItem());
+			return list;
+		}
 	}
 
-	private void queryItems(final int blockStart, final Envelope searchEnvelope, final ItemVisitor<T> visitor){
-		for(int i = 0; i < nodeCapacity; i ++){
-			final int itemIndex = blockStart + i;
-			//don't query past end of items
-			if(itemIndex >= items.size())
-				break;
 
-			//visit the item if its envelope intersects search env
-			final Item<T> item = items.get(itemIndex);
-			if(intersects(item.getEnvelope(), searchEnvelope))
-				visitor.visitItem(item.getItem());
-		}
+	@Override
+	int nodeCapacity(){
+		return nodeCapacity;
 	}
 
-	/**
-	 * Tests whether two envelopes intersect.
-	 * Avoids the null check in {@link Envelope#intersects(Envelope)}.
-	 *
-	 * @param envelope1 an envelope
-	 * @param envelope2 an envelope
-	 * @return true if the envelopes intersect
-	 */
-	private static boolean intersects(final Envelope envelope1, final Envelope envelope2){
-		return !(envelope2.getMinX() > envelope1.getMaxX()
-			|| envelope2.getMaxX() < envelope1.getMinX()
-			|| envelope2.getMinY() > envelope1.getMaxY()
-			|| envelope2.getMaxY() < envelope1.getMinY());
+	@Override
+	Envelope totalExtent(){
+		return totalExtent;
 	}
 
-	private void queryTopLayer(final Envelope searchEnvelope, final ItemVisitor<T> visitor){
-		final int layerIndex = layerStartIndex.length - 2;
-		final int layerSize = layerSize(layerIndex);
-		//query each node in layer
-		for(int i = 0; i < layerSize; i += ENV_SIZE)
-			queryNode(layerIndex, i, searchEnvelope, visitor);
+	@Override
+	int layerCount(){
+		return (layerStartIndex != null? layerStartIndex.length: 0);
 	}
 
-	private int layerSize(final int layerIndex){
-		final int layerStart = layerStartIndex[layerIndex];
-		final int layerEnd = layerStartIndex[layerIndex + 1];
-		return layerEnd - layerStart;
+	@Override
+	int layerStart(final int layerIndex){
+		return layerStartIndex[layerIndex];
 	}
 
-	private void queryNode(final int layerIndex, final int nodeOffset, final Envelope searchEnvelope, final ItemVisitor<T> visitor){
-		final int layerStart = layerStartIndex[layerIndex];
-		final int nodeIndex = layerStart + nodeOffset;
-		if(!intersects(nodeIndex, searchEnvelope))
-			return;
-
-		if(layerIndex == 0){
-			final int childNodesOffset = nodeOffset / ENV_SIZE * nodeCapacity;
-			queryItems(childNodesOffset, searchEnvelope, visitor);
-		}
-		else{
-			final int childNodesOffset = nodeOffset * nodeCapacity;
-			queryNodeChildren(layerIndex - 1, childNodesOffset, searchEnvelope, visitor);
-		}
+	@Override
+	double nodeBound(final int index){
+		return nodeBounds[index];
 	}
 
-	private boolean intersects(final int nodeIndex, final Envelope env){
-		final boolean isBeyond = (
-			env.getMaxX() < nodeBounds[nodeIndex]
-			|| env.getMaxY() < nodeBounds[nodeIndex + 1]
-			|| env.getMinX() > nodeBounds[nodeIndex + 2]
-			|| env.getMinY() > nodeBounds[nodeIndex + 3]);
-		return !isBeyond;
+	@Override
+	double itemBound(final int index){
+		return itemBounds[index];
 	}
 
-	private void queryNodeChildren(final int layerIndex, final int blockOffset, final Envelope searchEnvelope, final ItemVisitor<T> visitor){
-		final int layerStart = layerStartIndex[layerIndex];
-		final int layerEnd = layerStartIndex[layerIndex + 1];
-		for(int i = 0; i < nodeCapacity; i ++){
-			final int nodeOffset = blockOffset + ENV_SIZE * i;
-			//don't query past layer end
-			if(layerStart + nodeOffset >= layerEnd)
-				break;
-
-			queryNode(layerIndex, nodeOffset, searchEnvelope, visitor);
-		}
+	@Override
+	T itemValue(final int itemIndex){
+		return itemValues[itemIndex];
 	}
 
 
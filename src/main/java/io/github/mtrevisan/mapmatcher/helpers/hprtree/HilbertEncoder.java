@@ -27,7 +27,15 @@ package io.github.mtrevisan.mapmatcher.helpers.hprtree;
 import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 
 
-class HilbertEncoder{
+/**
+ * Maps envelopes (and points) within a given extent to their code along a Hilbert curve of a given level.
+ * <p>
+ * Items sorted by code are laid out so that items near in space tend to be near in the order.
+ * </p>
+ *
+ * @see HilbertCode
+ */
+public class HilbertEncoder{
 
 	private final int level;
 	private final double minX;
@@ -36,7 +44,11 @@ class HilbertEncoder{
 	private final double strideY;
 
 
-	HilbertEncoder(final int level, final Envelope extent){
+	/**
+	 * @param level	The level of the Hilbert curve, in the range <code>[0, 16]</code>.
+	 * @param extent	The extent of the envelopes to be encoded.
+	 */
+	public HilbertEncoder(final int level, final Envelope extent){
 		this.level = level;
 		final int hSide = (int)Math.pow(2, level) - 1;
 
@@ -44,19 +56,34 @@ class HilbertEncoder{
 		final double extentX = extent.getWidth();
 		strideX = extentX / hSide;
 
-		minY = extent.getMinX();
+		minY = extent.getMinY();
 		final double extentY = extent.getHeight();
 		strideY = extentY / hSide;
 	}
 
-	int encode(final Envelope env){
+	/**
+	 * Encodes the midpoint of the given envelope.
+	 *
+	 * @param env	The envelope.
+	 * @return	The Hilbert code.
+	 */
+	public int encode(final Envelope env){
 		final double middleX = env.getWidth() / 2 + env.getMinX();
-		final int x = (int)((middleX - minX) / strideX);
-
 		final double middleY = env.getHeight() / 2 + env.getMinY();
-		final int y = (int)((middleY - minY) / strideY);
+		return encode(middleX, middleY);
+	}
 
-		return HilbertCode.encode(level, x, y);
+	/**
+	 * Encodes the given point.
+	 *
+	 * @param x	The x coordinate of the point.
+	 * @param y	The y coordinate of the point.
+	 * @return	The Hilbert code.
+	 */
+	public int encode(final double x, final double y){
+		final int hx = (strideX > 0.? (int)((x - minX) / strideX): 0);
+		final int hy = (strideY > 0.? (int)((y - minY) / strideY): 0);
+		return HilbertCode.encode(level, hx, hy);
 	}
 
 }
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * A read-only {@link HPRtree} answered directly from buffers, typically backed by a memory-mapped file.
+ * <p>
+ * The layer indices, the node bounds, the item bounds, and the item handles are not copied on heap, they are read through buffers
+ * backed by the file, whose pages are loaded lazily and shared among processes by the OS cache.<br/>
+ * Only the items actually found by a query are converted from their handle (e.g. an index into an external array) into an object.
+ * </p>
+ * <p>
+ * An index can also wrap the arrays of a built {@link HPRtree} (see {@link #of(HPRtree, ToIntFunction, IntFunction)}), so the same
+ * type serves both a freshly built and a mapped structure.<br/>
+ * The queries (by envelope, batch, corridor, nearest, within) are the ones of {@link HPRtree}, only the insertion is rejected.
+ * </p>
+ * <p>
+ * Layout (big-endian):
+ * <ul>
+ * 	<li>header: magic number, version, node capacity, layer count, node bounds count, item count, padded to 8 bytes</li>
+ * 	<li><code>double</code> sections: total extent, node bounds, item bounds (as <code>(minX, minY, maxX, maxY)</code> quadruples)</li>
+ * 	<li><code>int</code> sections: layer start indices, item handles</li>
+ * </ul>
+ * </p>
+ * <p>
+ * NOTE: a file cannot exceed 2 GiB, as it is mapped as a single buffer.
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ */
+public final class MappedHPRtree<T> extends AbstractHPRtree<T>{
+
+	private static final int MAGIC_NUMBER = 0x4D48_5052;
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 32;
+
+
+	private final int nodeCapacity;
+	private final int size;
+	private final Envelope totalExtent;
+	private final IntBuffer layerStartIndex;
+	private final DoubleBuffer nodeBounds;
+	private final DoubleBuffer itemBounds;
+	private final IntBuffer itemHandles;
+	private final IntFunction<T> itemDecoder;
+
+
+	/**
+	 * Wraps the arrays of the given index, without copying its bounds.
+	 * <p>
+	 * The index is built, if not already.
+	 * </p>
+	 *
+	 * @param tree	The index.
+	 * @param itemEncoder	The function that converts an item into its handle.
+	 * @param itemDecoder	The function that converts a handle back into its item.
+	 * @param <T>	The type of the items.
+	 * @return	The read-only index.
+	 */
+	public static <T> MappedHPRtree<T> of(final HPRtree<T> tree, final ToIntFunction<T> itemEncoder, final IntFunction<T> itemDecoder){
+		tree.build();
+
+		final int size = tree.itemValues.length;
+		final int[] itemHandles = new int[size];
+		for(int i = 0; i < size; i ++)
+			itemHandles[i] = itemEncoder.applyAsInt(tree.itemValues[i]);
+		final Envelope totalExtent = (size > 0? Envelope.of(tree.totalExtent.getMinX(), tree.totalExtent.getMaxX(),
+			tree.totalExtent.getMinY(), tree.totalExtent.getMaxY()): Envelope.ofEmpty());
+		return new MappedHPRtree<>(tree.nodeCapacity, size, totalExtent,
+			(tree.layerStartIndex != null? IntBuffer.wrap(tree.layerStartIndex): null),
+			DoubleBuffer.wrap(tree.nodeBounds != null? tree.nodeBounds: new double[0]), DoubleBuffer.wrap(tree.itemBounds, 0, size * ENV_SIZE)
+				.slice(), IntBuffer.wrap(itemHandles), itemDecoder);
+	}
+
+	/**
+	 * Writes the given index into a file that can be memory-mapped by {@link #open(Path, IntFunction)}.
+	 * <p>
+	 * The index is built, if not already.
+	 * </p>
+	 *
+	 * @param tree	The index.
+	 * @param file	The file to write into, replaced if already present.
+	 * @param itemEncoder	The function that converts an item into its handle.
+	 * @param <T>	The type of the items.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	public static <T> void write(final HPRtree<T> tree, final Path file, final ToIntFunction<T> itemEncoder) throws IOException{
+		final MappedHPRtree<T> index = of(tree, itemEncoder, null);
+		try(final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+			index.write(output);
+		}
+	}
+
+	/**
+	 * Writes this index into the given stream, in the layout read by {@link #map(ByteBuffer, IntFunction)}.
+	 * <p>
+	 * The header is padded relative to the position of the stream, so the stream should be at a multiple of 8 bytes for the mapped
+	 * <code>double</code> sections to be aligned.
+	 * </p>
+	 *
+	 * @param output	The stream to write into.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	public void write(final DataOutputStream output) throws IOException{
+		final int layers = (layerStartIndex != null? layerStartIndex.limit(): 0);
+		final int bounds = nodeBounds.limit();
+		final int start = output.size();
+
+		output.writeInt(MAGIC_NUMBER);
+		output.writeInt(VERSION);
+		output.writeInt(nodeCapacity);
+		output.writeInt(layers);
+		output.writeInt(bounds);
+		output.writeInt(size);
+		while(output.size() - start < HEADER_SIZE)
+			output.writeByte(0);
+
+		output.writeDouble(totalExtent.getMinX());
+		output.writeDouble(totalExtent.getMinY());
+		output.writeDouble(totalExtent.getMaxX());
+		output.writeDouble(totalExtent.getMaxY());
+		for(int i = 0; i < bounds; i ++)
+			output.writeDouble(nodeBounds.get(i));
+		for(int i = 0; i < size * ENV_SIZE; i ++)
+			output.writeDouble(itemBounds.get(i));
+
+		for(int i = 0; i < layers; i ++)
+			output.writeInt(layerStartIndex.get(i));
+		for(int i = 0; i < size; i ++)
+			output.writeInt(itemHandles.get(i));
+	}
+
+	/**
+	 * Opens an index file by memory-mapping it.
+	 *
+	 * @param file	The index file.
+	 * @param itemDecoder	The function that converts a handle back into its item.
+	 * @param <T>	The type of the items.
+	 * @return	The index backed by the file.
+	 * @throws IOException	If an I/O error occurs, or if the file is not a valid index.
+	 */
+	public static <T> MappedHPRtree<T> open(final Path file, final IntFunction<T> itemDecoder) throws IOException{
+		final ByteBuffer buffer;
+		try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Index too large to be mapped: " + channel.size() + " bytes");
+			if(channel.size() < HEADER_SIZE)
+				throw new IOException("Not an index file: " + file);
+
+			//NOTE: the mapping remains valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		final MappedHPRtree<T> tree = map(buffer, itemDecoder, file.toString());
+		if(buffer.hasRemaining())
+			throw new IOException("Corrupted index: " + file);
+		return tree;
+	}
+
+	/**
+	 * Maps an index stored in the given buffer, starting at its current position.
+	 * <p>
+	 * The sections of the index are read through slices of the buffer, nothing is copied; the position of the buffer is moved past the
+	 * index.
+	 * </p>
+	 *
+	 * @param buffer	The buffer (e.g. a memory-mapped file).
+	 * @param itemDecoder	The function that converts a handle back into its item.
+	 * @param <T>	The type of the items.
+	 * @return	The index backed by the buffer.
+	 * @throws IOException	If the buffer does not contain a valid index at its position.
+	 */
+	public static <T> MappedHPRtree<T> map(final ByteBuffer buffer, final IntFunction<T> itemDecoder) throws IOException{
+		return map(buffer, itemDecoder, "buffer");
+	}
+
+	private static <T> MappedHPRtree<T> map(final ByteBuffer buffer, final IntFunction<T> itemDecoder, final String source)
+			throws IOException{
+		final int start = buffer.position();
+		if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC_NUMBER)
+			throw new IOException("Not an index: " + source);
+		final int version = buffer.getInt();
+		if(version != VERSION)
+			throw new IOException("Unsupported index version " + version + ", expected " + VERSION);
+		final int nodeCapacity = buffer.getInt();
+		final int layers = buffer.getInt();
+		final int bounds = buffer.getInt();
+		final int size = buffer.getInt();
+		final long expectedSize = HEADER_SIZE + (long)(ENV_SIZE + bounds + size * ENV_SIZE) * Double.BYTES
+			+ (long)(layers + size) * Integer.BYTES;
+		if(nodeCapacity <= 0 || layers < 0 || bounds < 0 || size < 0 || buffer.limit() - start < expectedSize)
+			throw new IOException("Corrupted index: " + source);
+		buffer.position(start + HEADER_SIZE);
+
+		final DoubleBuffer extent = slice(buffer, ENV_SIZE * Double.BYTES).asDoubleBuffer();
+		final DoubleBuffer nodeBounds = slice(buffer, bounds * Double.BYTES).asDoubleBuffer();
+		final DoubleBuffer itemBounds = slice(buffer, size * ENV_SIZE * Double.BYTES).asDoubleBuffer();
+		final IntBuffer layerStartIndex = slice(buffer, layers * Integer.BYTES).asIntBuffer();
+		final IntBuffer itemHandles = slice(buffer, size * Integer.BYTES).asIntBuffer();
+
+		final Envelope totalExtent = (size > 0
+			? Envelope.of(extent.get(0), extent.get(2), extent.get(1), extent.get(3))
+			: Envelope.ofEmpty());
+		return new MappedHPRtree<>(nodeCapacity, size, totalExtent, (layers > 0? layerStartIndex: null), nodeBounds, itemBounds,
+			itemHandles, itemDecoder);
+	}
+
+	private static ByteBuffer slice(final ByteBuffer buffer, final int size){
+		final ByteBuffer slice = buffer.slice(buffer.position(), size);
+		buffer.position(buffer.position() + size);
+		return slice;
+	}
+
+
+	private MappedHPRtree(final int nodeCapacity, final int size, final Envelope totalExtent, final IntBuffer layerStartIndex,
+			final DoubleBuffer nodeBounds, final DoubleBuffer itemBounds, final IntBuffer itemHandles, final IntFunction<T> itemDecoder){
+		this.nodeCapacity = nodeCapacity;
+		this.size = size;
+		this.totalExtent = totalExtent;
+		this.layerStartIndex = layerStartIndex;
+		this.nodeBounds = nodeBounds;
+		this.itemBounds = itemBounds;
+		this.itemHandles = itemHandles;
+		this.itemDecoder = itemDecoder;
+	}
+
+	/**
+	 * Gets the number of items in the index.
+	 *
+	 * @return the number of items
+	 */
+	@Override
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Always throws, as the index is read-only.
+	 *
+	 * @param itemEnvelope	The envelope of the item.
+	 * @param item	The item.
+	 * @throws IllegalStateException	Always.
+	 */
+	@Override
+	public void insert(final Envelope itemEnvelope, final T item){
+		throw new IllegalStateException("Cannot insert items into a read-only index.");
+	}
+
+	/**
+	 * Does nothing, as the index is already built.
+	 */
+	@Override
+	public void build(){}
+
+
+	@Override
+	int nodeCapacity(){
+		return nodeCapacity;
+	}
+
+	@Override
+	Envelope totalExtent(){
+		return totalExtent;
+	}
+
+	@Override
+	int layerCount(){
+		return (layerStartIndex != null? layerStartIndex.limit(): 0);
+	}
+
+	@Override
+	int layerStart(final int layerIndex){
+		return layerStartIndex.get(layerIndex);
+	}
+
+	@Override
+	double nodeBound(final int index){
+		return nodeBounds.get(index);
+	}
+
+	@Override
+	double itemBound(final int index){
+		return itemBounds.get(index);
+	}
+
+	@Override
+	T itemValue(final int itemIndex){
+		return itemDecoder.apply(itemHandles.get(itemIndex));
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+
+
+/**
+ * A visitor of the items found by a batch query of a {@link SpatialIndex}.
+ *
+ * @param <T>	The type of the items.
+ */
+@FunctionalInterface
+public interface BatchItemVisitor<T>{
+
+	/**
+	 * Visits an item in the index that intersects one of the search envelopes.
+	 * <p>
+	 * An item that intersects more search envelopes is visited once for each of them, in a row.
+	 * </p>
+	 *
+	 * @param item	The index item to be visited.
+	 * @param envelope	The envelope of the item (it is reused between the visits of a query, so it must not be modified nor kept).
+	 * @param searchIndex	The index of the search envelope the item intersects.
+	 * @return	Whether to continue the traversal, <code>false</code> to stop it.
+	 */
+	boolean visitItem(T item, Envelope envelope, int searchIndex);
+
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A trajectory buffered by a distance, that is the region within the given distance from any of its segments.
+ * <p>
+ * Each segment is buffered into a capsule: the buffer is converted into coordinate units around the end points of the segment
+ * (through {@link SpatialIndex#circumscribedHalfSize(Point, double)}), so a capsule is the planar region swept by an ellipse
+ * that contains the search circle moving along the segment.<br/>
+ * An envelope is tested against the capsules instead of their envelopes, so an index does not descend into the nodes that lie in the
+ * corners of the envelope of a long diagonal segment.
+ * </p>
+ */
+public final class Corridor{
+
+	private static final int SEGMENT_SIZE = 4;
+
+	/** Maximum distance of a merged point from its segment, as a fraction of the buffer. */
+	private static final double MERGE_TOLERANCE = 0.05;
+	/** Maximum number of points merged into a segment, that bounds the cost of the merge. */
+	private static final int MAX_MERGED_POINTS = 64;
+
+
+	/** End points of the segments, as <code>(startX, startY, endX, endY)</code> quadruples. */
+	private final double[] segments;
+	/** Half extents of the buffer around each segment, as <code>(halfWidth, halfHeight)</code> pairs. */
+	private final double[] halfSizes;
+	/** Bounds of the capsules, as <code>(minX, minY, maxX, maxY)</code> quadruples. */
+	private final double[] bounds;
+	private final Envelope envelope = Envelope.ofEmpty();
+
+
+	/**
+	 * Creates the corridor around the given trajectory.
+	 *
+	 * @param trajectory	The trajectory.
+	 * @param buffer	The buffer distance, in the topology of the points of the trajectory (e.g. meters for a geoid).
+	 * @return	The corridor.
+	 */
+	public static Corridor of(final Polyline trajectory, final double buffer){
+		return of(trajectory.getPoints(), buffer);
+	}
+
+	/**
+	 * Creates the corridor around the given trajectory.
+	 * <p>
+	 * A trajectory with a single point gives a corridor with a single (degenerate) segment, that is the search circle around the point.
+	 * </p>
+	 * <p>
+	 * The runs of points that lie near the segment joining their ends are merged into that segment, and the buffer is enlarged by the
+	 * same tolerance, so the corridor still contains every point of the trajectory while the buffer is converted into coordinate units
+	 * only at the points that are kept.
+	 * </p>
+	 *
+	 * @param trajectory	The points of the trajectory (<code>null</code> points are skipped).
+	 * @param buffer	The buffer distance, in the topology of the points of the trajectory (e.g. meters for a geoid).
+	 * @return	The corridor.
+	 */
+	public static Corridor of(final Point[] trajectory, final double buffer){
+		if(buffer <= 0.)
+			throw new IllegalArgumentException("`buffer` must be positive");
+
+		final List<Point> points = new ArrayList<>(trajectory.length);
+		for(final Point point : trajectory)
+			if(point != null)
+				points.add(point);
+
+		final List<Point> vertices = new ArrayList<>(0);
+		final List<double[]> halfSizes = new ArrayList<>(0);
+		if(!points.isEmpty()){
+			int anchorIndex = 0;
+			double[] anchorHalfSize = SpatialIndex.circumscribedHalfSize(points.get(0), buffer);
+			vertices.add(points.get(0));
+			halfSizes.add(anchorHalfSize);
+			for(int i = 2; i < points.size(); i ++)
+				if(i - anchorIndex > MAX_MERGED_POINTS || !isRunNearChord(points, anchorIndex, i, anchorHalfSize)){
+					//the previous point cannot be merged: it starts a new segment
+					anchorIndex = i - 1;
+					anchorHalfSize = SpatialIndex.circumscribedHalfSize(points.get(anchorIndex), buffer);
+					vertices.add(points.get(anchorIndex));
+					halfSizes.add(anchorHalfSize);
+				}
+			final int lastIndex = points.size() - 1;
+			vertices.add(points.get(lastIndex));
+			halfSizes.add(lastIndex > anchorIndex? SpatialIndex.circumscribedHalfSize(points.get(lastIndex), buffer): anchorHalfSize);
+		}
+		return new Corridor(vertices, halfSizes);
+	}
+
+	/**
+	 * Tests whether the points strictly between the given ones lie within the tolerance from the segment joining them.
+	 */
+	private static boolean isRunNearChord(final List<Point> points, final int startIndex, final int endIndex, final double[] halfSize){
+		final double scaleX = 1. / halfSize[0];
+		final double scaleY = 1. / halfSize[1];
+		final Point start = points.get(startIndex);
+		final Point end = points.get(endIndex);
+		final double startX = start.getX() * scaleX;
+		final double startY = start.getY() * scaleY;
+		final double endX = end.getX() * scaleX;
+		final double endY = end.getY() * scaleY;
+		for(int i = startIndex + 1; i < endIndex; i ++){
+			final Point point = points.get(i);
+			if(segmentDistanceSquared(point.getX() * scaleX, point.getY() * scaleY, startX, startY, endX, endY)
+					> MERGE_TOLERANCE * MERGE_TOLERANCE)
+				return false;
+		}
+		return true;
+	}
+
+
+	private Corridor(final List<Point> vertices, final List<double[]> vertexHalfSizes){
+		final int segmentCount = Math.max(vertices.size() - 1, 0);
+		segments = new double[segmentCount * SEGMENT_SIZE];
+		halfSizes = new double[segmentCount * 2];
+		bounds = new double[segmentCount * SEGMENT_SIZE];
+
+		for(int i = 0; i < segmentCount; i ++){
+			final Point start = vertices.get(i);
+			final Point end = vertices.get(i + 1);
+			final double[] startHalfSize = vertexHalfSizes.get(i);
+			final double[] endHalfSize = vertexHalfSizes.get(i + 1);
+
+			final int segmentIndex = i * SEGMENT_SIZE;
+			segments[segmentIndex] = start.getX();
+			segments[segmentIndex + 1] = start.getY();
+			segments[segmentIndex + 2] = end.getX();
+			segments[segmentIndex + 3] = end.getY();
+			//enlarge the buffer to cover the points merged into the segment
+			final double halfWidth = Math.max(startHalfSize[0], endHalfSize[0]) * (1. + MERGE_TOLERANCE);
+			final double halfHeight = Math.max(startHalfSize[1], endHalfSize[1]) * (1. + MERGE_TOLERANCE);
+			halfSizes[i * 2] = halfWidth;
+			halfSizes[i * 2 + 1] = halfHeight;
+			bounds[segmentIndex] = Math.min(start.getX(), end.getX()) - halfWidth;
+			bounds[segmentIndex + 1] = Math.min(start.getY(), end.getY()) - halfHeight;
+			bounds[segmentIndex + 2] = Math.max(start.getX(), end.getX()) + halfWidth;
+			bounds[segmentIndex + 3] = Math.max(start.getY(), end.getY()) + halfHeight;
+			envelope.expandToInclude(bounds[segmentIndex], bounds[segmentIndex + 1]);
+			envelope.expandToInclude(bounds[segmentIndex + 2], bounds[segmentIndex + 3]);
+		}
+	}
+
+	/**
+	 * The number of segments of the trajectory.
+	 *
+	 * @return	The number of segments.
+	 */
+	public int size(){
+		return bounds.length / SEGMENT_SIZE;
+	}
+
+	/**
+	 * The envelope of the whole corridor.
+	 *
+	 * @return	The envelope (empty if the trajectory has no points).
+	 */
+	public Envelope getEnvelope(){
+		final Envelope copy = Envelope.ofEmpty();
+		copy.expandToInclude(envelope);
+		return copy;
+	}
+
+	/**
+	 * The envelopes of the capsules of the segments.
+	 *
+	 * @return	The envelopes, one per segment.
+	 */
+	public Envelope[] getSegmentEnvelopes(){
+		final Envelope[] envelopes = new Envelope[size()];
+		for(int i = 0; i < envelopes.length; i ++){
+			final int boundIndex = i * SEGMENT_SIZE;
+			envelopes[i] = Envelope.of(bounds[boundIndex], bounds[boundIndex + 2], bounds[boundIndex + 1], bounds[boundIndex + 3]);
+		}
+		return envelopes;
+	}
+
+	/**
+	 * Tests whether the given bounds intersect the corridor.
+	 *
+	 * @param minX	The minimum x of the bounds.
+	 * @param minY	The minimum y of the bounds.
+	 * @param maxX	The maximum x of the bounds.
+	 * @param maxY	The maximum y of the bounds.
+	 * @return	Whether the bounds intersect the capsule of any segment.
+	 */
+	public boolean intersects(final double minX, final double minY, final double maxX, final double maxY){
+		for(int segment = 0; segment < size(); segment ++)
+			if(intersects(segment, minX, minY, maxX, maxY))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Tests whether the given bounds intersect the capsule of the given segment.
+	 *
+	 * @param segment	The index of the segment.
+	 * @param minX	The minimum x of the bounds.
+	 * @param minY	The minimum y of the bounds.
+	 * @param maxX	The maximum x of the bounds.
+	 * @param maxY	The maximum y of the bounds.
+	 * @return	Whether the bounds intersect the capsule.
+	 */
+	public boolean intersects(final int segment, final double minX, final double minY, final double maxX, final double maxY){
+		final int segmentIndex = segment * SEGMENT_SIZE;
+		if(maxX < bounds[segmentIndex] || maxY < bounds[segmentIndex + 1]
+				|| minX > bounds[segmentIndex + 2] || minY > bounds[segmentIndex + 3])
+			return false;
+
+		//scale the coordinates so the buffer becomes a unit circle
+		final double scaleX = 1. / halfSizes[segment * 2];
+		final double scaleY = 1. / halfSizes[segment * 2 + 1];
+		return (distanceSquared(segments[segmentIndex] * scaleX, segments[segmentIndex + 1] * scaleY,
+			segments[segmentIndex + 2] * scaleX, segments[segmentIndex + 3] * scaleY,
+			minX * scaleX, minY * scaleY, maxX * scaleX, maxY * scaleY) <= 1.);
+	}
+
+	/**
+	 * Calculates the square of the planar distance between a segment and a box.
+	 * <p>
+	 * If they do not intersect, the distance is attained at an end point of the segment or at a corner of the box.
+	 * </p>
+	 */
+	private static double distanceSquared(final double startX, final double startY, final double endX, final double endY,
+			final double minX, final double minY, final double maxX, final double maxY){
+		if(intersects(startX, startY, endX, endY, minX, minY, maxX, maxY))
+			return 0.;
+
+		double distance = Math.min(boxDistanceSquared(startX, startY, minX, minY, maxX, maxY),
+			boxDistanceSquared(endX, endY, minX, minY, maxX, maxY));
+		distance = Math.min(distance, segmentDistanceSquared(minX, minY, startX, startY, endX, endY));
+		distance = Math.min(distance, segmentDistanceSquared(minX, maxY, startX, startY, endX, endY));
+		distance = Math.min(distance, segmentDistanceSquared(maxX, minY, startX, startY, endX, endY));
+		return Math.min(distance, segmentDistanceSquared(maxX, maxY, startX, startY, endX, endY));
+	}
+
+	/**
+	 * Tests whether a segment intersects a box, clipping the segment to the box.
+	 *
+	 * @see <a href="https://en.wikipedia.org/wiki/Liang%E2%80%93Barsky_algorithm">Liang–Barsky algorithm</a>
+	 */
+	private static boolean intersects(final double startX, final double startY, final double endX, final double endY,
+			final double minX, final double minY, final double maxX, final double maxY){
+		final double dx = endX - startX;
+		final double dy = endY - startY;
+		double enter = 0.;
+		double exit = 1.;
+		for(int side = 0; side < 4; side ++){
+			final double p = switch(side){
+				case 0 -> -dx;
+				case 1 -> dx;
+				case 2 -> -dy;
+				default -> dy;
+			};
+			final double q = switch(side){
+				case 0 -> startX - minX;
+				case 1 -> maxX - startX;
+				case 2 -> startY - minY;
+				default -> maxY - startY;
+			};
+			if(p == 0.){
+				//parallel to the side, and outside of it
+				if(q < 0.)
+					return false;
+				continue;
+			}
+
+			final double t = q / p;
+			if(p < 0.)
+				enter = Math.max(enter, t);
+			else
+				exit = Math.min(exit, t);
+			if(enter > exit)
+				return false;
+		}
+		return true;
+	}
+
+	private static double boxDistanceSquared(final double x, final double y, final double minX, final double minY, final double maxX,
+			final double maxY){
+		final double dx = Math.max(Math.max(minX - x, x - maxX), 0.);
+		final double dy = Math.max(Math.max(minY - y, y - maxY), 0.);
+		return dx * dx + dy * dy;
+	}
+
+	private static double segmentDistanceSquared(final double x, final double y, final double startX, final double startY,
+			final double endX, final double endY){
+		final double dx = endX - startX;
+		final double dy = endY - startY;
+		final double length2 = dx * dx + dy * dy;
+		//projection of the point onto the segment, clamped to its end points
+		final double t = (length2 > 0.? Math.min(Math.max(((x - startX) * dx + (y - startY) * dy) / length2, 0.), 1.): 0.);
+		final double distanceX = startX + t * dx - x;
+		final double distanceY = startY + t * dy - y;
+		return distanceX * distanceX + distanceY * distanceY;
+	}
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+import java.util.function.ToDoubleBiFunction;
+
+
+/**
+ * A uniform grid over the extent of the items.
+ * <p>
+ * Each item is referenced by every cell its envelope overlaps, so a query inspects only the cells overlapping the searched envelope,
+ * with no tree to descend.<br/>
+ * The grid is sized when built, so that a cell holds about <code>itemsPerCell</code> items on average, but not smaller than the mean
+ * extent of an item (so that an item is referenced by few cells).
+ * </p>
+ * <p>
+ * The grid suits items of similar size that are evenly spread (e.g. the road links of an urban area), with skewed data most of the
+ * items crowd into few cells.
+ * </p>
+ * <p>
+ * The cells are stored in compressed form: the item references of all the cells in a single array, each cell pointing to its range.
+ * <br/>
+ * The index can be safely shared among threads once built.
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ */
+public class GridIndex<T> implements SpatialIndex<T>{
+
+	private static final int ENV_SIZE = 4;
+	private static final int DEFAULT_ITEMS_PER_CELL = 4;
+
+
+	//the items inserted so far, moved into `itemBounds` and `itemValues` when the grid is built
+	private List<Envelope> envelopes = new ArrayList<>(0);
+	private List<T> values = new ArrayList<>(0);
+	private final int itemsPerCell;
+	private final Envelope totalExtent = Envelope.ofEmpty();
+	/** Bounds of the items, as <code>(minX, minY, maxX, maxY)</code> quadruples. */
+	private double[] itemBounds;
+	private T[] itemValues;
+	private int columns;
+	private int rows;
+	private double cellWidth;
+	private double cellHeight;
+	/** For each cell (row-major), the start of its range into <code>cellItems</code>, plus the end of the last range. */
+	private int[] cellStart;
+	private int[] cellItems;
+	//volatile, so that the arrays written while building are visible to any thread that sees the index as built
+	private volatile boolean isBuilt;
+
+
+	/**
+	 * Creates a new index with the default number of items per cell.
+	 */
+	public GridIndex(){
+		this(DEFAULT_ITEMS_PER_CELL);
+	}
+
+	/**
+	 * Creates a new index with the given mean number of items per cell.
+	 *
+	 * @param itemsPerCell	The mean number of items per cell.
+	 */
+	public GridIndex(final int itemsPerCell){
+		if(itemsPerCell <= 0)
+			throw new IllegalArgumentException("`itemsPerCell` must be positive");
+
+		this.itemsPerCell = itemsPerCell;
+	}
+
+	@Override
+	public int size(){
+		if(isBuilt)
+			return itemValues.length;
+
+		synchronized(this){
+			return (isBuilt? itemValues.length: values.size());
+		}
+	}
+
+	@Override
+	public synchronized void insert(final Envelope itemEnvelope, final T item){
+		if(isBuilt)
+			throw new IllegalStateException("Cannot insert items after grid is built.");
+
+		envelopes.add(itemEnvelope);
+		values.add(item);
+		totalExtent.expandToInclude(itemEnvelope);
+	}
+
+
+	@Override
+	public void build(){
+		//skip if already built
+		if(isBuilt)
+			return;
+
+		synchronized(this){
+			if(!isBuilt){
+				buildGrid();
+
+				//publish the built index
+				isBuilt = true;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void buildGrid(){
+		final int size = values.size();
+		final double[] bounds = new double[size * ENV_SIZE];
+		double meanWidth = 0.;
+		double meanHeight = 0.;
+		for(int i = 0; i < size; i ++){
+			final Envelope envelope = envelopes.get(i);
+			final int boundIndex = i * ENV_SIZE;
+			bounds[boundIndex] = envelope.getMinX();
+			bounds[boundIndex + 1] = envelope.getMinY();
+			bounds[boundIndex + 2] = envelope.getMaxX();
+			bounds[boundIndex + 3] = envelope.getMaxY();
+			meanWidth += envelope.getWidth() / size;
+			meanHeight += envelope.getHeight() / size;
+		}
+		sizeGrid(size, meanWidth, meanHeight);
+
+		//lay out the items by the cell of their center, so the items of a cell are near in memory
+		final long[] keys = new long[size];
+		for(int i = 0; i < size; i ++){
+			final int boundIndex = i * ENV_SIZE;
+			final int cell = row((bounds[boundIndex + 1] + bounds[boundIndex + 3]) / 2.) * columns
+				+ column((bounds[boundIndex] + bounds[boundIndex + 2]) / 2.);
+			keys[i] = ((long)cell << 32) | i;
+		}
+		Arrays.sort(keys);
+		itemBounds = new double[size * ENV_SIZE];
+		itemValues = (T[])new Object[size];
+		for(int i = 0; i < size; i ++){
+			final int index = (int)keys[i];
+			System.arraycopy(bounds, index * ENV_SIZE, itemBounds, i * ENV_SIZE, ENV_SIZE);
+			itemValues[i] = values.get(index);
+		}
+		envelopes = null;
+		values = null;
+
+		//count the references of each cell, then fill them
+		cellStart = new int[columns * rows + 1];
+		for(int i = 0; i < size; i ++)
+			forEachCell(i, cell -> cellStart[cell + 1] ++);
+		for(int cell = 0; cell < columns * rows; cell ++)
+			cellStart[cell + 1] += cellStart[cell];
+		cellItems = new int[cellStart[columns * rows]];
+		final int[] cellFill = Arrays.copyOf(cellStart, columns * rows);
+		for(int i = 0; i < size; i ++){
+			final int itemIndex = i;
+			forEachCell(i, cell -> cellItems[cellFill[cell] ++] = itemIndex);
+		}
+	}
+
+	private void sizeGrid(final int size, final double meanWidth, final double meanHeight){
+		final double width = Math.max(totalExtent.getWidth(), Double.MIN_NORMAL);
+		final double height = Math.max(totalExtent.getHeight(), Double.MIN_NORMAL);
+		final double cells = Math.max((double)size / itemsPerCell, 1.);
+		//square cells, as far as the extent allows
+		final double cellSize = Math.sqrt(width * height / cells);
+		columns = (int)Math.max(Math.min(width / Math.max(cellSize, meanWidth), cells), 1.);
+		rows = (int)Math.max(Math.min(height / Math.max(cellSize, meanHeight), cells / columns), 1.);
+		cellWidth = width / columns;
+		cellHeight = height / rows;
+	}
+
+	private int column(final double x){
+		return Math.min(Math.max((int)((x - totalExtent.getMinX()) / cellWidth), 0), columns - 1);
+	}
+
+	private int row(final double y){
+		return Math.min(Math.max((int)((y - totalExtent.getMinY()) / cellHeight), 0), rows - 1);
+	}
+
+	private void forEachCell(final int itemIndex, final IntConsumer action){
+		final int boundIndex = itemIndex * ENV_SIZE;
+		final int minColumn = column(itemBounds[boundIndex]);
+		final int maxColumn = column(itemBounds[boundIndex + 2]);
+		final int maxRow = row(itemBounds[boundIndex + 3]);
+		for(int row = row(itemBounds[boundIndex + 1]); row <= maxRow; row ++)
+			for(int column = minColumn; column <= maxColumn; column ++)
+				action.accept(row * columns + column);
+	}
+
+
+	@Override
+	public boolean query(final double minX, final double minY, final double maxX, final double maxY, final ItemVisitor<T> visitor){
+		build();
+
+		if(totalExtent.isNull() || minX > totalExtent.getMaxX() || maxX < totalExtent.getMinX() || minY > totalExtent.getMaxY()
+				|| maxY < totalExtent.getMinY())
+			return true;
+
+		//the envelope handed to the visitor, reused for all the visited items
+		final Envelope itemEnvelope = Envelope.ofEmpty();
+		final int minColumn = column(minX);
+		final int maxColumn = column(maxX);
+		final int maxRow = row(maxY);
+		for(int row = row(minY); row <= maxRow; row ++)
+			for(int column = minColumn; column <= maxColumn; column ++){
+				final int cell = row * columns + column;
+				for(int i = cellStart[cell]; i < cellStart[cell + 1]; i ++){
+					final int itemIndex = cellItems[i];
+					final int boundIndex = itemIndex * ENV_SIZE;
+					if(maxX < itemBounds[boundIndex] || maxY < itemBounds[boundIndex + 1]
+							|| minX > itemBounds[boundIndex + 2] || minY > itemBounds[boundIndex + 3])
+						continue;
+					//an item spanning more cells is visited only in the cell holding the lower-left corner of its intersection with the
+					//searched bounds
+					if(column(Math.max(itemBounds[boundIndex], minX)) != column
+							|| row(Math.max(itemBounds[boundIndex + 1], minY)) != row)
+						continue;
+
+					itemEnvelope.setToNull();
+					itemEnvelope.expandToInclude(itemBounds[boundIndex], itemBounds[boundIndex + 1]);
+					itemEnvelope.expandToInclude(itemBounds[boundIndex + 2], itemBounds[boundIndex + 3]);
+					if(!visitor.visitItem(itemValues[itemIndex], itemEnvelope))
+						return false;
+				}
+			}
+		return true;
+	}
+
+
+	/**
+	 * Finds the <code>k</code> items nearest to the given point, within a maximum distance.
+	 * <p>
+	 * The grid is searched best-first, starting from the cell nearest to the point and spreading to the neighboring cells in order of
+	 * the distance to their bounds, so only the cells (and the items) that can rank are inspected.
+	 * </p>
+	 */
+	@Override
+	public List<T> nearest(final Point point, final int k, final double maxDistance, final ToDoubleBiFunction<Point, T> distance){
+		if(k <= 0)
+			throw new IllegalArgumentException("`k` must be positive");
+
+		build();
+
+		if(itemValues.length == 0)
+			return Collections.emptyList();
+
+		//candidates, nearest first
+		final PriorityQueue<NearestCandidate> queue = new PriorityQueue<>();
+		final BitSet enqueuedCells = new BitSet(columns * rows);
+		final BitSet measuredItems = new BitSet(itemValues.length);
+		enqueueCell(row(point.getY()), column(point.getX()), point, maxDistance, enqueuedCells, queue);
+
+		final List<T> neighbors = new ArrayList<>(k);
+		while(!queue.isEmpty() && neighbors.size() < k){
+			final NearestCandidate candidate = queue.poll();
+			if(candidate.isItem()){
+				//an item, no other candidate can be nearer
+				neighbors.add(itemValues[candidate.index]);
+				continue;
+			}
+
+			final int cell = candidate.index;
+			for(int i = cellStart[cell]; i < cellStart[cell + 1]; i ++){
+				final int itemIndex = cellItems[i];
+				if(measuredItems.get(itemIndex))
+					continue;
+
+				measuredItems.set(itemIndex);
+				final double itemDistance = distance.applyAsDouble(point, itemValues[itemIndex]);
+				if(itemDistance <= maxDistance)
+					queue.add(new NearestCandidate(itemDistance, NearestCandidate.ITEM, itemIndex));
+			}
+
+			//the cells on the way to any nearer cell are nearer too, so spreading to the neighbors reaches every cell in time
+			final int row = cell / columns;
+			final int column = cell % columns;
+			for(int neighborRow = Math.max(row - 1, 0); neighborRow <= Math.min(row + 1, rows - 1); neighborRow ++)
+				for(int neighborColumn = Math.max(column - 1, 0); neighborColumn <= Math.min(column + 1, columns - 1); neighborColumn ++)
+					enqueueCell(neighborRow, neighborColumn, point, maxDistance, enqueuedCells, queue);
+		}
+		return neighbors;
+	}
+
+	private void enqueueCell(final int row, final int column, final Point point, final double maxDistance, final BitSet enqueuedCells,
+			final PriorityQueue<NearestCandidate> queue){
+		final int cell = row * columns + column;
+		if(enqueuedCells.get(cell))
+			return;
+
+		enqueuedCells.set(cell);
+		final double minX = totalExtent.getMinX() + column * cellWidth;
+		final double minY = totalExtent.getMinY() + row * cellHeight;
+		final double lowerBound = SpatialIndex.distanceToBounds(point, minX, minY, minX + cellWidth, minY + cellHeight);
+		if(lowerBound <= maxDistance)
+			queue.add(new NearestCandidate(lowerBound, 0, cell));
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+
+/**
+ * A visitor of the items found by a query of a {@link SpatialIndex}, given their bounds as primitives.
+ * <p>
+ * Unlike {@link ItemVisitor}, no envelope has to be created to hand the bounds to the visitor.
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ */
+@FunctionalInterface
+public interface ItemBoundsVisitor<T>{
+
+	/**
+	 * Visits an item in the index.
+	 *
+	 * @param item	The index item to be visited.
+	 * @param minX	The minimum x of the envelope of the item.
+	 * @param minY	The minimum y of the envelope of the item.
+	 * @param maxX	The maximum x of the envelope of the item.
+	 * @param maxY	The maximum y of the envelope of the item.
+	 * @return	Whether to continue the traversal, <code>false</code> to stop it.
+	 */
+	boolean visitItem(T item, double minX, double minY, double maxX, double maxY);
+
+}
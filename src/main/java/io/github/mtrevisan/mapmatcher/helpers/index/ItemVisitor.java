@@ -22,16 +22,26 @@
  * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
  * OTHER DEALINGS IN THE SOFTWARE.
  */
-package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+package io.github.mtrevisan.mapmatcher.helpers.index;
 
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 
-interface ItemVisitor<T>{
+
+/**
+ * A visitor of the items found by a query of a {@link SpatialIndex}.
+ *
+ * @param <T>	The type of the items.
+ */
+@FunctionalInterface
+public interface ItemVisitor<T>{
 
 	/**
 	 * Visits an item in the index.
 	 *
-	 * @param item the index item to be visited
+	 * @param item	The index item to be visited.
+	 * @param envelope	The envelope of the item (it is reused between the visits of a query, so it must not be modified nor kept).
+	 * @return	Whether to continue the traversal, <code>false</code> to stop it.
 	 */
-	void visitItem(T item);
+	boolean visitItem(T item, Envelope envelope);
 
 }
@@ -1,5 +1,5 @@
 /**
- * Copyright (c) 2021 Mauro Trevisan
+ * Copyright (c) 2023 Mauro Trevisan
  * <p>
  * Permission is hereby granted, free of charge, to any person
  * obtaining a copy of this software and associated documentation
@@ -22,36 +22,36 @@
  * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
  * OTHER DEALINGS IN THE SOFTWARE.
  */
-package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+package io.github.mtrevisan.mapmatcher.helpers.index;
 
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * An item of an index, together with its distance from the searched point.
+ *
+ * @param <T>	The type of the item.
+ */
+public final class NearItem<T>{
 
-class ArrayListVisitor<T> implements ItemVisitor<T>{
+	private final T item;
+	private final double distance;
 
-	private final List<T> items = new ArrayList<>();
 
+	NearItem(final T item, final double distance){
+		this.item = item;
+		this.distance = distance;
+	}
 
-	ArrayListVisitor(){}
+	public T getItem(){
+		return item;
+	}
 
-	/**
-	 * Visits an item.
-	 *
-	 * @param item	The item to visit.
-	 */
-	@Override
-	public void visitItem(final T item){
-		items.add(item);
+	public double getDistance(){
+		return distance;
 	}
 
-	/**
-	 * Gets the array of visited items.
-	 *
-	 * @return	The list of items.
-	 */
-	List<T> getItems(){
-		return items;
+	@Override
+	public String toString(){
+		return "NearItem: " + item + " at " + distance;
 	}
 
 }
@@ -1,5 +1,5 @@
 /**
- * Copyright (c) 2021 Mauro Trevisan
+ * Copyright (c) 2023 Mauro Trevisan
  * <p>
  * Permission is hereby granted, free of charge, to any person
  * obtaining a copy of this software and associated documentation
@@ -22,25 +22,37 @@
  * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
  * OTHER DEALINGS IN THE SOFTWARE.
  */
-package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+package io.github.mtrevisan.mapmatcher.helpers.index;
 
-import java.util.Comparator;
+/**
+ * A candidate of a best-first nearest-neighbor search, either an item or a region of the index that may contain nearer items.
+ */
+final class NearestCandidate implements Comparable<NearestCandidate>{
 
+	/** The level of the candidates that are items. */
+	static final int ITEM = -1;
 
-class ItemComparator<T> implements Comparator<Item<T>>{
 
-	private final HilbertEncoder encoder;
+	final double distance;
+	final int level;
+	final int index;
 
 
-	ItemComparator(final HilbertEncoder encoder){
-		this.encoder = encoder;
+	NearestCandidate(final double distance, final int level, final int index){
+		this.distance = distance;
+		this.level = level;
+		this.index = index;
+	}
+
+	boolean isItem(){
+		return (level == ITEM);
 	}
 
 	@Override
-	public int compare(final Item item1, final Item item2){
-		final int hCode1 = encoder.encode(item1.getEnvelope());
-		final int hCode2 = encoder.encode(item2.getEnvelope());
-		return Integer.compare(hCode1, hCode2);
+	public int compareTo(final NearestCandidate other){
+		final int cmp = Double.compare(distance, other.distance);
+		//at the same distance an item comes first, as no region can contain a nearer one
+		return (cmp != 0? cmp: Integer.compare(level, other.level));
 	}
 
 }
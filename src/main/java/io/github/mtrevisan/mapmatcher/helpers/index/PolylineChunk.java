@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A run of consecutive segments of a polyline, with a back-reference to the item the polyline belongs to.
+ * <p>
+ * Long polylines have large envelopes, that intersect many searches far away from any of their segments: indexing their chunks
+ * instead makes a search return only the part of the polyline that is actually nearby, and the distance is then measured on those
+ * segments only.
+ * </p>
+ *
+ * @param <T>	The type of the item the polyline belongs to (e.g. the polyline itself, or an edge).
+ */
+public final class PolylineChunk<T>{
+
+	private final T item;
+	private final int segmentOffset;
+	private final Polyline chunk;
+
+
+	/**
+	 * Splits the given polyline into chunks and inserts them into the given index, each under its own envelope.
+	 *
+	 * @param index	The index.
+	 * @param item	The item the polyline belongs to.
+	 * @param polyline	The polyline.
+	 * @param segmentsPerChunk	The maximum number of segments of each chunk (<code>1</code> to index the single segments).
+	 * @param <T>	The type of the item.
+	 * @see #split(Object, Polyline, int)
+	 */
+	public static <T> void insert(final SpatialIndex<PolylineChunk<T>> index, final T item, final Polyline polyline,
+			final int segmentsPerChunk){
+		for(final PolylineChunk<T> chunk : split(item, polyline, segmentsPerChunk))
+			index.insert(chunk.getBoundingBox(), chunk);
+	}
+
+	/**
+	 * Splits the given polyline into chunks of at most the given number of segments.
+	 * <p>
+	 * Consecutive chunks share their boundary point, a polyline with a single point gives a single chunk with no segments.
+	 * </p>
+	 *
+	 * @param item	The item the polyline belongs to.
+	 * @param polyline	The polyline.
+	 * @param segmentsPerChunk	The maximum number of segments of each chunk (<code>1</code> to index the single segments).
+	 * @param <T>	The type of the item.
+	 * @return	The chunks, in the order of the polyline.
+	 */
+	public static <T> List<PolylineChunk<T>> split(final T item, final Polyline polyline, final int segmentsPerChunk){
+		if(segmentsPerChunk < 1)
+			throw new IllegalArgumentException("`segmentsPerChunk` must be positive");
+
+		final Point[] points = polyline.getPoints();
+		final int segments = Math.max(points.length - 1, 0);
+		final List<PolylineChunk<T>> chunks = new ArrayList<>((segments + segmentsPerChunk - 1) / segmentsPerChunk);
+		if(segments == 0 && points.length > 0)
+			chunks.add(new PolylineChunk<>(item, 0, polyline));
+		for(int start = 0; start < segments; start += segmentsPerChunk){
+			final int end = Math.min(start + segmentsPerChunk, segments);
+			final Polyline chunk = (start == 0 && end == segments
+				? polyline
+				: polyline.getFactory().createPolyline(Arrays.copyOfRange(points, start, end + 1)));
+			chunks.add(new PolylineChunk<>(item, start, chunk));
+		}
+		return chunks;
+	}
+
+
+	private PolylineChunk(final T item, final int segmentOffset, final Polyline chunk){
+		this.item = item;
+		this.segmentOffset = segmentOffset;
+		this.chunk = chunk;
+	}
+
+	/**
+	 * The item the polyline belongs to.
+	 *
+	 * @return	The item.
+	 */
+	public T getItem(){
+		return item;
+	}
+
+	/**
+	 * The index, in the whole polyline, of the first segment of this chunk.
+	 *
+	 * @return	The offset of the first segment.
+	 */
+	public int getSegmentOffset(){
+		return segmentOffset;
+	}
+
+	/**
+	 * The number of segments of this chunk.
+	 *
+	 * @return	The number of segments.
+	 */
+	public int getSegmentCount(){
+		return Math.max(chunk.size() - 1, 0);
+	}
+
+	/**
+	 * The part of the polyline covered by this chunk.
+	 *
+	 * @return	The segments of this chunk, as a polyline.
+	 */
+	public Polyline getPolyline(){
+		return chunk;
+	}
+
+	public Envelope getBoundingBox(){
+		return chunk.getBoundingBox();
+	}
+
+	/**
+	 * Calculates the distance between the given point and the segments of this chunk.
+	 *
+	 * @param point	The point.
+	 * @return	The distance, in the topology of the point.
+	 */
+	public double distance(final Point point){
+		return point.distance(chunk);
+	}
+
+	@Override
+	public String toString(){
+		return "PolylineChunk: " + item + " from segment " + segmentOffset + ": " + chunk;
+	}
+
+}
@@ -0,0 +1,386 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleBiFunction;
+
+
+/**
+ * A Sort-Tile-Recursive packed R-tree.
+ * <p>
+ * The items are sorted by the x of the center of their envelope and cut into vertical slices, then each slice is sorted by the y of
+ * the center, and consecutive runs of <code>nodeCapacity</code> items become the leaves.<br/>
+ * The same packing is then applied to the nodes of each level to form the level above, until a single node is left.
+ * </p>
+ * <p>
+ * Unlike the Hilbert ordering, the tiling adapts the slices to the distribution of the items, so skewed data (e.g. a dense city
+ * within a sparse region) is packed into nodes with less overlap.
+ * </p>
+ * <p>
+ * The items and the node bounds are stored in flat arrays: the items are laid out in leaf order, and each level above the leaves
+ * stores the (reordered) indices of its children.<br/>
+ * The index can be safely shared among threads once built.
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ *
+ * @see <a href="https://apps.dtic.mil/sti/pdfs/ADA324493.pdf">STR: A Simple and Efficient Algorithm for R-Tree Packing</a>
+ */
+public class STRtree<T> implements SpatialIndex<T>{
+
+	private static final int ENV_SIZE = 4;
+	private static final int DEFAULT_NODE_CAPACITY = 16;
+
+
+	//the items inserted so far, moved into `itemBounds` and `itemValues` when the tree is built
+	private List<Envelope> envelopes = new ArrayList<>(0);
+	private List<T> values = new ArrayList<>(0);
+	private final int nodeCapacity;
+	private final Envelope totalExtent = Envelope.ofEmpty();
+	/** Bounds of the (sorted) items, as <code>(minX, minY, maxX, maxY)</code> quadruples. */
+	private double[] itemBounds;
+	private T[] itemValues;
+	/** For each level, starting from the leaves, the bounds of its nodes. */
+	private double[][] levelBounds;
+	/**
+	 * For each level above the leaves, the indices of the nodes of the level below, so that the children of node <code>n</code> are
+	 * the ones from <code>n * nodeCapacity</code> (the leaves hold the items in the same way, without indirection).
+	 */
+	private int[][] levelChildren;
+	//volatile, so that the arrays written while building are visible to any thread that sees the index as built
+	private volatile boolean isBuilt;
+
+
+	/**
+	 * Creates a new index with the default node capacity.
+	 */
+	public STRtree(){
+		this(DEFAULT_NODE_CAPACITY);
+	}
+
+	/**
+	 * Creates a new index with the given node capacity.
+	 *
+	 * @param nodeCapacity	The node capacity to use.
+	 */
+	public STRtree(final int nodeCapacity){
+		if(nodeCapacity < 2)
+			throw new IllegalArgumentException("`nodeCapacity` must be at least 2");
+
+		this.nodeCapacity = nodeCapacity;
+	}
+
+	@Override
+	public int size(){
+		if(isBuilt)
+			return itemValues.length;
+
+		synchronized(this){
+			return (isBuilt? itemValues.length: values.size());
+		}
+	}
+
+	@Override
+	public synchronized void insert(final Envelope itemEnvelope, final T item){
+		if(isBuilt)
+			throw new IllegalStateException("Cannot insert items after tree is built.");
+
+		envelopes.add(itemEnvelope);
+		values.add(item);
+		totalExtent.expandToInclude(itemEnvelope);
+	}
+
+
+	@Override
+	public void build(){
+		//skip if already built
+		if(isBuilt)
+			return;
+
+		synchronized(this){
+			if(!isBuilt){
+				buildTree();
+
+				//publish the built index
+				isBuilt = true;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void buildTree(){
+		final int size = values.size();
+		final double[] bounds = new double[size * ENV_SIZE];
+		for(int i = 0; i < size; i ++){
+			final Envelope envelope = envelopes.get(i);
+			setBounds(bounds, i, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY());
+		}
+
+		//lay out the items in leaf order
+		final int[] order = sortTileRecursive(bounds, size);
+		itemBounds = new double[size * ENV_SIZE];
+		itemValues = (T[])new Object[size];
+		for(int i = 0; i < size; i ++){
+			System.arraycopy(bounds, order[i] * ENV_SIZE, itemBounds, i * ENV_SIZE, ENV_SIZE);
+			itemValues[i] = values.get(order[i]);
+		}
+		envelopes = null;
+		values = null;
+
+		//don't need to build an empty or very small tree
+		if(size <= nodeCapacity)
+			return;
+
+		final List<double[]> levelBounds = new ArrayList<>();
+		final List<int[]> levelChildren = new ArrayList<>();
+		double[] childBounds = packNodes(itemBounds, null, size);
+		levelBounds.add(childBounds);
+		levelChildren.add(null);
+		while(childBounds.length > ENV_SIZE){
+			final int childCount = childBounds.length / ENV_SIZE;
+			final int[] children = sortTileRecursive(childBounds, childCount);
+			childBounds = packNodes(childBounds, children, childCount);
+			levelBounds.add(childBounds);
+			levelChildren.add(children);
+		}
+		this.levelBounds = levelBounds.toArray(double[][]::new);
+		this.levelChildren = levelChildren.toArray(int[][]::new);
+	}
+
+	/**
+	 * Sorts the given entries in tiles: vertical slices by the x of their center, each slice by the y of their center.
+	 *
+	 * @return	The indices of the entries, in tile order.
+	 */
+	private int[] sortTileRecursive(final double[] bounds, final int count){
+		final long[] keys = new long[count];
+		for(int i = 0; i < count; i ++)
+			keys[i] = sortKey(bounds[i * ENV_SIZE] + bounds[i * ENV_SIZE + 2], i);
+		Arrays.sort(keys);
+
+		final int nodeCount = ceilDiv(count, nodeCapacity);
+		final int sliceCount = Math.max((int)Math.ceil(Math.sqrt(nodeCount)), 1);
+		//a multiple of the node capacity, so no node spans two slices
+		final int sliceSize = nodeCapacity * ceilDiv(nodeCount, sliceCount);
+		for(int sliceStart = 0; sliceStart < count; sliceStart += sliceSize){
+			final int sliceEnd = Math.min(sliceStart + sliceSize, count);
+			for(int i = sliceStart; i < sliceEnd; i ++){
+				final int index = (int)keys[i];
+				keys[i] = sortKey(bounds[index * ENV_SIZE + 1] + bounds[index * ENV_SIZE + 3], index);
+			}
+			Arrays.sort(keys, sliceStart, sliceEnd);
+		}
+
+		final int[] sorted = new int[count];
+		for(int i = 0; i < count; i ++)
+			sorted[i] = (int)keys[i];
+		return sorted;
+	}
+
+	/**
+	 * Packs a coordinate (reduced to a <code>float</code>, that is enough to order the entries) and an index into a <code>long</code>
+	 * that sorts as the coordinate, so a primitive sort is enough.
+	 */
+	private static long sortKey(final double coordinate, final int index){
+		final int bits = Float.floatToIntBits((float)coordinate);
+		//flip the negative values, so the bits sort as the (signed) float
+		final int sortableBits = (bits < 0? bits ^ Integer.MAX_VALUE: bits);
+		return ((long)sortableBits << 32) | (index & 0xFFFF_FFFFL);
+	}
+
+	/**
+	 * Calculates the bounds of the nodes that group consecutive runs of <code>nodeCapacity</code> children.
+	 *
+	 * @param childBounds	The bounds of the children.
+	 * @param children	The children in packing order, or <code>null</code> if the children are already in packing order.
+	 * @param childCount	The number of children.
+	 * @return	The bounds of the nodes.
+	 */
+	private double[] packNodes(final double[] childBounds, final int[] children, final int childCount){
+		final int nodeCount = ceilDiv(childCount, nodeCapacity);
+		final double[] bounds = new double[nodeCount * ENV_SIZE];
+		for(int node = 0; node < nodeCount; node ++){
+			setBounds(bounds, node, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.NEGATIVE_INFINITY);
+			final int end = Math.min((node + 1) * nodeCapacity, childCount);
+			for(int i = node * nodeCapacity; i < end; i ++){
+				final int child = (children != null? children[i]: i) * ENV_SIZE;
+				final int nodeIndex = node * ENV_SIZE;
+				bounds[nodeIndex] = Math.min(bounds[nodeIndex], childBounds[child]);
+				bounds[nodeIndex + 1] = Math.min(bounds[nodeIndex + 1], childBounds[child + 1]);
+				bounds[nodeIndex + 2] = Math.max(bounds[nodeIndex + 2], childBounds[child + 2]);
+				bounds[nodeIndex + 3] = Math.max(bounds[nodeIndex + 3], childBounds[child + 3]);
+			}
+		}
+		return bounds;
+	}
+
+	private static void setBounds(final double[] bounds, final int index, final double minX, final double minY, final double maxX,
+			final double maxY){
+		final int boundIndex = index * ENV_SIZE;
+		bounds[boundIndex] = minX;
+		bounds[boundIndex + 1] = minY;
+		bounds[boundIndex + 2] = maxX;
+		bounds[boundIndex + 3] = maxY;
+	}
+
+	private static int ceilDiv(final int dividend, final int divisor){
+		return (dividend + divisor - 1) / divisor;
+	}
+
+
+	@Override
+	public boolean query(final double minX, final double minY, final double maxX, final double maxY, final ItemVisitor<T> visitor){
+		build();
+
+		if(totalExtent.isNull() || minX > totalExtent.getMaxX() || maxX < totalExtent.getMinX() || minY > totalExtent.getMaxY()
+				|| maxY < totalExtent.getMinY())
+			return true;
+
+		//the envelope handed to the visitor, reused for all the visited items
+		final Envelope itemEnvelope = Envelope.ofEmpty();
+		if(levelBounds == null)
+			return queryItems(0, minX, minY, maxX, maxY, itemEnvelope, visitor);
+
+		final int topLevel = levelBounds.length - 1;
+		final int topCount = levelBounds[topLevel].length / ENV_SIZE;
+		for(int node = 0; node < topCount; node ++)
+			if(!queryNode(topLevel, node, minX, minY, maxX, maxY, itemEnvelope, visitor))
+				return false;
+		return true;
+	}
+
+	private boolean queryNode(final int level, final int node, final double minX, final double minY, final double maxX,
+			final double maxY, final Envelope itemEnvelope, final ItemVisitor<T> visitor){
+		final double[] bounds = levelBounds[level];
+		final int boundIndex = node * ENV_SIZE;
+		if(maxX < bounds[boundIndex] || maxY < bounds[boundIndex + 1] || minX > bounds[boundIndex + 2] || minY > bounds[boundIndex + 3])
+			return true;
+
+		if(level == 0)
+			return queryItems(node * nodeCapacity, minX, minY, maxX, maxY, itemEnvelope, visitor);
+
+		final int[] children = levelChildren[level];
+		final int end = Math.min((node + 1) * nodeCapacity, children.length);
+		for(int i = node * nodeCapacity; i < end; i ++)
+			if(!queryNode(level - 1, children[i], minX, minY, maxX, maxY, itemEnvelope, visitor))
+				return false;
+		return true;
+	}
+
+	private boolean queryItems(final int blockStart, final double minX, final double minY, final double maxX, final double maxY,
+			final Envelope itemEnvelope, final ItemVisitor<T> visitor){
+		final int blockEnd = Math.min(blockStart + nodeCapacity, itemValues.length);
+		for(int itemIndex = blockStart; itemIndex < blockEnd; itemIndex ++){
+			//visit the item if its envelope intersects search env
+			final int boundIndex = itemIndex * ENV_SIZE;
+			if(!(maxX < itemBounds[boundIndex] || maxY < itemBounds[boundIndex + 1]
+					|| minX > itemBounds[boundIndex + 2] || minY > itemBounds[boundIndex + 3])){
+				itemEnvelope.setToNull();
+				itemEnvelope.expandToInclude(itemBounds[boundIndex], itemBounds[boundIndex + 1]);
+				itemEnvelope.expandToInclude(itemBounds[boundIndex + 2], itemBounds[boundIndex + 3]);
+				if(!visitor.visitItem(itemValues[itemIndex], itemEnvelope))
+					return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Finds the <code>k</code> items nearest to the given point, within a maximum distance.
+	 * <p>
+	 * The tree is searched best-first: the nodes are visited in order of the distance to their bounds, and a node is discarded as soon
+	 * as its bounds are farther than the <code>k</code>-th item found so far, so only the items that can rank are measured.
+	 * </p>
+	 */
+	@Override
+	public List<T> nearest(final Point point, final int k, final double maxDistance, final ToDoubleBiFunction<Point, T> distance){
+		if(k <= 0)
+			throw new IllegalArgumentException("`k` must be positive");
+
+		build();
+
+		if(itemValues.length == 0)
+			return Collections.emptyList();
+
+		//candidates, nearest first
+		final PriorityQueue<NearestCandidate> queue = new PriorityQueue<>();
+		if(levelBounds == null)
+			enqueueItems(0, point, maxDistance, distance, queue);
+		else{
+			final int topLevel = levelBounds.length - 1;
+			final int topCount = levelBounds[topLevel].length / ENV_SIZE;
+			for(int node = 0; node < topCount; node ++)
+				enqueueNode(topLevel, node, point, maxDistance, queue);
+		}
+
+		final List<T> neighbors = new ArrayList<>(k);
+		while(!queue.isEmpty() && neighbors.size() < k){
+			final NearestCandidate candidate = queue.poll();
+			if(candidate.isItem())
+				//an item, no other candidate can be nearer
+				neighbors.add(itemValues[candidate.index]);
+			else if(candidate.level == 0)
+				enqueueItems(candidate.index * nodeCapacity, point, maxDistance, distance, queue);
+			else{
+				final int[] children = levelChildren[candidate.level];
+				final int end = Math.min((candidate.index + 1) * nodeCapacity, children.length);
+				for(int i = candidate.index * nodeCapacity; i < end; i ++)
+					enqueueNode(candidate.level - 1, children[i], point, maxDistance, queue);
+			}
+		}
+		return neighbors;
+	}
+
+	private void enqueueItems(final int blockStart, final Point point, final double maxDistance,
+			final ToDoubleBiFunction<Point, T> distance, final PriorityQueue<NearestCandidate> queue){
+		final int blockEnd = Math.min(blockStart + nodeCapacity, itemValues.length);
+		for(int itemIndex = blockStart; itemIndex < blockEnd; itemIndex ++){
+			final double itemDistance = distance.applyAsDouble(point, itemValues[itemIndex]);
+			if(itemDistance <= maxDistance)
+				queue.add(new NearestCandidate(itemDistance, NearestCandidate.ITEM, itemIndex));
+		}
+	}
+
+	private void enqueueNode(final int level, final int node, final Point point, final double maxDistance,
+			final PriorityQueue<NearestCandidate> queue){
+		final double[] bounds = levelBounds[level];
+		final int boundIndex = node * ENV_SIZE;
+		final double lowerBound = SpatialIndex.distanceToBounds(point, bounds[boundIndex], bounds[boundIndex + 1],
+			bounds[boundIndex + 2], bounds[boundIndex + 3]);
+		if(lowerBound <= maxDistance)
+			queue.add(new NearestCandidate(lowerBound, level, node));
+	}
+
+}
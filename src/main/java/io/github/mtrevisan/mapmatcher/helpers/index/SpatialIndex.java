@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToDoubleBiFunction;
+
+
+/**
+ * A spatial index of items stored under their envelope.
+ * <p>
+ * The items are inserted first, then the index is built (explicitly, or by the first query), after which no more items can be
+ * inserted.<br/>
+ * Once built, an index can be safely shared among threads.
+ * </p>
+ *
+ * @param <T>	The type of the items.
+ */
+public interface SpatialIndex<T>{
+
+	/**
+	 * Gets the number of items in the index.
+	 *
+	 * @return the number of items
+	 */
+	int size();
+
+	/**
+	 * Inserts an item.
+	 *
+	 * @param itemEnvelope	The envelope of the item.
+	 * @param item	The item.
+	 * @throws IllegalStateException	If the index is already built.
+	 */
+	void insert(Envelope itemEnvelope, T item);
+
+	/**
+	 * Builds the index, if not already built.
+	 */
+	void build();
+
+
+	default List<T> query(final Envelope searchEnvelope){
+		final List<T> items = new ArrayList<>(0);
+		query(searchEnvelope, (item, envelope) -> items.add(item));
+		return items;
+	}
+
+	/**
+	 * Visits the items whose envelope intersects the given envelope.
+	 *
+	 * @param searchEnvelope	The envelope to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	default boolean query(final Envelope searchEnvelope, final ItemVisitor<T> visitor){
+		if(searchEnvelope.isNull()){
+			build();
+			return true;
+		}
+
+		return query(searchEnvelope.getMinX(), searchEnvelope.getMinY(), searchEnvelope.getMaxX(), searchEnvelope.getMaxY(), visitor);
+	}
+
+	/**
+	 * Visits the items whose envelope intersects the given bounds.
+	 *
+	 * @param minX	The minimum x of the bounds to search.
+	 * @param minY	The minimum y of the bounds to search.
+	 * @param maxX	The maximum x of the bounds to search.
+	 * @param maxY	The maximum y of the bounds to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	boolean query(double minX, double minY, double maxX, double maxY, ItemVisitor<T> visitor);
+
+	/**
+	 * Visits the items whose envelope intersects any of the given envelopes.
+	 * <p>
+	 * The default implementation queries each envelope in turn.
+	 * </p>
+	 *
+	 * @param searchEnvelopes	The envelopes to search (<code>null</code> or null envelopes are skipped).
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	default boolean query(final Envelope[] searchEnvelopes, final BatchItemVisitor<T> visitor){
+		for(int i = 0; i < searchEnvelopes.length; i ++){
+			final Envelope searchEnvelope = searchEnvelopes[i];
+			if(searchEnvelope == null)
+				continue;
+
+			final int searchIndex = i;
+			if(!query(searchEnvelope, (item, envelope) -> visitor.visitItem(item, envelope, searchIndex)))
+				return false;
+		}
+		return true;
+	}
+
+
+	default List<T> query(final Corridor corridor){
+		final List<T> items = new ArrayList<>(0);
+		query(corridor, (item, envelope) -> items.add(item));
+		return items;
+	}
+
+	/**
+	 * Visits, once each, the items whose envelope intersects the given corridor.
+	 * <p>
+	 * The default implementation queries the envelopes of the segments of the corridor in a batch, and retains the items that intersect
+	 * a capsule and are not yet visited.
+	 * </p>
+	 *
+	 * @param corridor	The corridor to search.
+	 * @param visitor	The visitor of the items, that can stop the traversal.
+	 * @return	Whether all the items were visited, that is the visitor did not stop the traversal.
+	 */
+	default boolean query(final Corridor corridor, final ItemVisitor<T> visitor){
+		final Set<T> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		return query(corridor.getSegmentEnvelopes(), (item, envelope, segment) -> {
+			if(!corridor.intersects(segment, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY())
+					|| !visited.add(item))
+				return true;
+
+			return visitor.visitItem(item, envelope);
+		});
+	}
+
+
+	/**
+	 * Finds the <code>k</code> items nearest to the given point.
+	 *
+	 * @param point	The point.
+	 * @param k	The maximum number of items to be returned.
+	 * @param distance	The distance between the point and an item.
+	 * @return	The nearest items, sorted by increasing distance.
+	 * @see #nearest(Point, int, double, ToDoubleBiFunction)
+	 */
+	default List<T> nearest(final Point point, final int k, final ToDoubleBiFunction<Point, T> distance){
+		return nearest(point, k, Double.POSITIVE_INFINITY, distance);
+	}
+
+	/**
+	 * Finds the <code>k</code> items nearest to the given point, within a maximum distance.
+	 * <p>
+	 * NOTE: the distance to an item must not be less than the distance (in the topology of the point) to the nearest point of its
+	 * envelope, as it is the case for the distance to a polyline.<br/>
+	 * The regions of the index are pruned through {@link #distanceToBounds(Point, double, double, double, double)}.
+	 * </p>
+	 *
+	 * @param point	The point.
+	 * @param k	The maximum number of items to be returned.
+	 * @param maxDistance	The maximum distance of the items to be returned.
+	 * @param distance	The distance between the point and an item (e.g. {@link Point#distance(io.github.mtrevisan.mapmatcher.spatial.Polyline)}).
+	 * @return	The nearest items, sorted by increasing distance.
+	 */
+	List<T> nearest(Point point, int k, double maxDistance, ToDoubleBiFunction<Point, T> distance);
+
+	/**
+	 * Finds the items within the given distance from the given point.
+	 * <p>
+	 * The items are filtered in three steps, from the cheapest to the most expensive: the index is searched with the box that
+	 * circumscribes the search circle, then the items whose envelope lies outside the ellipse inscribed in that box are discarded
+	 * through a planar check, and only the remaining ones are measured with the given distance.
+	 * </p>
+	 * <p>
+	 * NOTE: the distance to an item must not be less than the distance (in the topology of the point) to the nearest point of its
+	 * envelope, as it is the case for the distance to a polyline.
+	 * </p>
+	 *
+	 * @param point	The point.
+	 * @param radius	The maximum distance of the items to be returned.
+	 * @param distance	The distance between the point and an item (e.g. {@link Point#distance(io.github.mtrevisan.mapmatcher.spatial.Polyline)}).
+	 * @return	The items within the given distance, along with their distance, sorted by increasing distance.
+	 */
+	default List<NearItem<T>> within(final Point point, final double radius, final ToDoubleBiFunction<Point, T> distance){
+		if(radius < 0.)
+			throw new IllegalArgumentException("`radius` cannot be negative");
+
+		final double[] halfSize = circumscribedHalfSize(point, radius);
+		final double x = point.getX();
+		final double y = point.getY();
+		final double halfWidth2 = halfSize[0] * halfSize[0];
+		final double halfHeight2 = halfSize[1] * halfSize[1];
+		final List<NearItem<T>> items = new ArrayList<>(0);
+		query(x - halfSize[0], y - halfSize[1], x + halfSize[0], y + halfSize[1], (item, envelope) -> {
+			//planar lower bound: the nearest point of the envelope must lie within the ellipse inscribed in the search box
+			final double dx = Math.max(Math.max(envelope.getMinX() - x, x - envelope.getMaxX()), 0.);
+			final double dy = Math.max(Math.max(envelope.getMinY() - y, y - envelope.getMaxY()), 0.);
+			if(dx * dx * halfHeight2 + dy * dy * halfWidth2 > halfWidth2 * halfHeight2)
+				return true;
+
+			final double itemDistance = distance.applyAsDouble(point, item);
+			if(itemDistance <= radius)
+				items.add(new NearItem<>(item, itemDistance));
+			return true;
+		});
+		items.sort(Comparator.comparingDouble(NearItem::getDistance));
+		return items;
+	}
+
+	/**
+	 * Calculates the half extents, in coordinate units, of the box that circumscribes a circle with the given radius.
+	 * <p>
+	 * The extents are measured also from the points of the circle farthest along the y axis, so that the box contains the circle even
+	 * where a unit of distance spans more units of x (as it happens with the longitude on a geoid).
+	 * </p>
+	 *
+	 * @param point	The center of the circle.
+	 * @param radius	The radius of the circle.
+	 * @return	The half width and the half height of the box.
+	 */
+	static double[] circumscribedHalfSize(final Point point, final double radius){
+		final double[] halfSize = new double[2];
+		Point minYPoint = point;
+		Point maxYPoint = point;
+		for(int bearing = 0; bearing < 360; bearing += 90){
+			final Point destination = point.destination(bearing, radius);
+			halfSize[0] = Math.max(halfSize[0], Math.abs(destination.getX() - point.getX()));
+			halfSize[1] = Math.max(halfSize[1], Math.abs(destination.getY() - point.getY()));
+			if(destination.getY() < minYPoint.getY())
+				minYPoint = destination;
+			if(destination.getY() > maxYPoint.getY())
+				maxYPoint = destination;
+		}
+		for(int bearing = 0; bearing < 360; bearing += 90){
+			halfSize[0] = Math.max(halfSize[0], Math.abs(minYPoint.destination(bearing, radius).getX() - minYPoint.getX()));
+			halfSize[0] = Math.max(halfSize[0], Math.abs(maxYPoint.destination(bearing, radius).getX() - maxYPoint.getX()));
+		}
+		//absorb the rounding of the coordinates, so an item exactly at the given radius is not left out
+		final double tolerance = 1.e-12;
+		halfSize[0] += tolerance * (Math.abs(point.getX()) + halfSize[0]);
+		halfSize[1] += tolerance * (Math.abs(point.getY()) + halfSize[1]);
+		return halfSize;
+	}
+
+	/**
+	 * Calculates the box that circumscribes a circle with the given radius.
+	 *
+	 * @param point	The center of the circle.
+	 * @param radius	The radius of the circle.
+	 * @return	The box.
+	 * @see #circumscribedHalfSize(Point, double)
+	 */
+	static Envelope circumscribedEnvelope(final Point point, final double radius){
+		final double[] halfSize = circumscribedHalfSize(point, radius);
+		return Envelope.of(point.getX() - halfSize[0], point.getX() + halfSize[0], point.getY() - halfSize[1],
+			point.getY() + halfSize[1]);
+	}
+
+
+	/**
+	 * Calculates the distance between the given point and the nearest point of the given bounds, used as a lower bound of the
+	 * distance to the items inside them.
+	 * <p>
+	 * On a geoid the point of the bounds nearest to the given one is not the one with the clamped coordinates: the meridians
+	 * converge toward the pole, so the nearest point of a meridian edge lies poleward of the given latitude. The distance to such a
+	 * point is then considered too; it is exact on a sphere, and off by a second order term on the ellipsoid.<br/>
+	 * On a plane the clamped point is the nearest one, and the additional point is farther.
+	 * </p>
+	 *
+	 * @param point	The point.
+	 * @param minX	The minimum x of the bounds.
+	 * @param minY	The minimum y of the bounds.
+	 * @param maxX	The maximum x of the bounds.
+	 * @param maxY	The maximum y of the bounds.
+	 * @return	The distance to the bounds, <code>0</code> if the point lies inside them.
+	 */
+	static double distanceToBounds(final Point point, final double minX, final double minY, final double maxX, final double maxY){
+		final double x = Math.min(Math.max(point.getX(), minX), maxX);
+		final double y = Math.min(Math.max(point.getY(), minY), maxY);
+		if(x == point.getX() && y == point.getY())
+			return 0.;
+
+		final GeometryFactory factory = point.getFactory();
+		double distance = point.distance(factory.createPoint(x, y));
+		if(x != point.getX()){
+			//latitude of the point of the meridian nearest to the given point (the pole if the meridian is more than 90° away)
+			final double latitude = Math.toRadians(point.getY());
+			final double deltaLongitude = Math.toRadians(point.getX() - x);
+			final double nearestY = Math.min(Math.max(Math.toDegrees(Math.atan2(Math.sin(latitude),
+				Math.cos(latitude) * Math.max(Math.cos(deltaLongitude), 0.))), minY), maxY);
+			if(nearestY != y)
+				distance = Math.min(distance, point.distance(factory.createPoint(x, nearestY)));
+		}
+		return distance;
+	}
+
+}
@@ -32,6 +32,7 @@ import io.github.mtrevisan.mapmatcher.mapmatching.calculators.initial.InitialPro
 import io.github.mtrevisan.mapmatcher.mapmatching.calculators.transition.TransitionProbabilityCalculator;
 import io.github.mtrevisan.mapmatcher.pathfinding.AStarPathFinder;
 import io.github.mtrevisan.mapmatcher.pathfinding.PathFindingStrategy;
+import io.github.mtrevisan.mapmatcher.pathfinding.ResumableDijkstraPathFinder;
 import io.github.mtrevisan.mapmatcher.pathfinding.calculators.EdgeWeightCalculator;
 import io.github.mtrevisan.mapmatcher.spatial.Point;
 import io.github.mtrevisan.mapmatcher.spatial.Polyline;
@@ -63,11 +64,33 @@ public class ViterbiMapMatching implements MapMatchingStrategy{
 			final TransitionProbabilityCalculator transitionProbabilityCalculator,
 			final EmissionProbabilityCalculator emissionProbabilityCalculator,
 			final EdgeWeightCalculator edgeWeightCalculator){
+		this(initialProbabilityCalculator, transitionProbabilityCalculator, emissionProbabilityCalculator,
+			new AStarPathFinder(edgeWeightCalculator));
+	}
+
+	/**
+	 * Creates a matcher that routes the transitions with the given strategy.
+	 * <p>
+	 * Consecutive transitions share most of their routing neighbourhood, so a {@link ResumableDijkstraPathFinder} can save most of the
+	 * routing work; its search spaces are kept for the duration of a single match, and cleared at its end.<br/>
+	 * <strong>Note that a stateful strategy (as the resumable one) makes this matcher not thread-safe</strong>: use one matcher per
+	 * thread.
+	 * </p>
+	 *
+	 * @param initialProbabilityCalculator	The calculator of the initial probability.
+	 * @param transitionProbabilityCalculator	The calculator of the transition probability.
+	 * @param emissionProbabilityCalculator	The calculator of the emission probability.
+	 * @param pathFinder	The strategy that routes the transitions.
+	 */
+	public ViterbiMapMatching(final InitialProbabilityCalculator initialProbabilityCalculator,
+			final TransitionProbabilityCalculator transitionProbabilityCalculator,
+			final EmissionProbabilityCalculator emissionProbabilityCalculator,
+			final PathFindingStrategy pathFinder){
 		this.initialProbabilityCalculator = initialProbabilityCalculator;
 		this.transitionProbabilityCalculator = transitionProbabilityCalculator;
 		this.emissionProbabilityCalculator = emissionProbabilityCalculator;
 
-		pathFinder = new AStarPathFinder(edgeWeightCalculator);
+		this.pathFinder = pathFinder;
 	}
 
 	/*static class Label{
@@ -174,6 +197,16 @@ public class ViterbiMapMatching implements MapMatchingStrategy{
 
 	@Override
 	public Edge[] findPath(final Graph graph, final Point[] observations, final double edgesNearObservationThreshold){
+		try{
+			return findBestPath(graph, observations, edgesNearObservationThreshold);
+		}
+		finally{
+			//the state of the path finder (if any) is scoped to a single match
+			pathFinder.clear();
+		}
+	}
+
+	private Edge[] findBestPath(final Graph graph, final Point[] observations, final double edgesNearObservationThreshold){
 		if(graph.isEmpty())
 			//no graph: cannot calculate path
 			return null;
@@ -232,7 +265,8 @@ public class ViterbiMapMatching implements MapMatchingStrategy{
 						//calculate the state transition probability matrix
 						+ transitionProbabilityCalculator.transitionProbability(fromEdge, toEdge, previousObservation, currentObservation,
 						pathAsPolyline);
-					if(probability <= minProbability){
+					//NOTE: on a tie keep the first candidate, in the order the graph returns them
+					if(probability < minProbability || !newPath.containsKey(toEdge)){
 						//record minimum probability
 						minProbability = probability;
 						score.computeIfAbsent(toEdge, k -> new double[m])[currentObservationIndex] = probability
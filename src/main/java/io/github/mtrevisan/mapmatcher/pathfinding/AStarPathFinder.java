@@ -33,6 +33,7 @@ import io.github.mtrevisan.mapmatcher.pathfinding.path.PathSummaryCreator;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -43,17 +44,31 @@ public class AStarPathFinder implements PathFindingStrategy{
 	private static final PathSummaryCreator PATH_SUMMARY_CREATOR = new PathSummaryCreator();
 
 	private final EdgeWeightCalculator calculator;
+	//NOTE: updated once per search, so it costs nothing on the relaxations
+	private final AtomicLong settledNodes = new AtomicLong();
 
 
 	public AStarPathFinder(final EdgeWeightCalculator calculator){
 		this.calculator = calculator;
 	}
 
+	/**
+	 * Returns the number of nodes settled (i.e. whose cheapest path from the start became final) by all the searches done so far.
+	 *
+	 * @return	The number of settled nodes.
+	 */
+	public long getSettledNodes(){
+		return settledNodes.get();
+	}
+
 	@Override
 	public Edge[] findPath(final Node start, final Node end, final Graph graph){
 		if(start.equals(end))
 			//early exit
 			return new Edge[0];
+		if(!graph.mayReach(start, end))
+			//early exit: the search is bound to fail
+			return new Edge[0];
 
 		//the node immediately preceding a given node on the cheapest path from start to the given node currently known
 		final var predecessorTree = new HashMap<Node, Edge>();
@@ -65,38 +80,41 @@ public class AStarPathFinder implements PathFindingStrategy{
 
 		//set of discovered nodes that may need to be (re-)expanded
 		final var frontier = new FibonacciHeap<Node>();
-		final var seenNodes = new HashSet<Node>(graph.nodes().size());
+		final var frontierEntries = new HashMap<Node, FibonacciHeap.Node<Node>>();
+		//set of nodes whose cheapest path from start is final
+		final var expandedNodes = new HashSet<Node>(graph.nodes().size());
 		//NOTE: the score here is `gScore[n] + h(n)`; it represents the current best guess as to how cheap a path could be from start to
 		// finish if it goes through the given node
-		var fScore = heuristic(start, end);
-		frontier.add(start, fScore);
-		seenNodes.add(start);
+		frontierEntries.put(start, frontier.add(start, heuristic(start, end)));
 
 		while(!frontier.isEmpty()){
 			final var fromNode = frontier.poll();
+			frontierEntries.remove(fromNode);
 			if(fromNode.equals(end))
 				break;
 
+			expandedNodes.add(fromNode);
 			for(final var edge : fromNode.getOutEdges()){
 				final var toNode = edge.getTo();
-				if(seenNodes.contains(toNode))
+				if(expandedNodes.contains(toNode))
 					continue;
 
-				final var newScore = gScores.get(fromNode) + heuristic(edge.getFrom(), edge.getTo());
+				final var newScore = gScores.get(fromNode) + graph.getEdgeWeight(edge, calculator);
 				if(newScore < gScores.getOrDefault(toNode, Double.POSITIVE_INFINITY)){
 					gScores.put(toNode, newScore);
 					predecessorTree.put(toNode, edge);
 
-					fScore = newScore + heuristic(toNode, end);
-					if(!seenNodes.contains(toNode)){
-						frontier.add(toNode, fScore);
-						seenNodes.add(toNode);
-					}
+					//a cheaper path to a node already in the frontier lowers its score
+					final var fScore = newScore + heuristic(toNode, end);
+					final var entry = frontierEntries.get(toNode);
+					if(entry != null)
+						frontier.decreaseKey(entry, fScore);
+					else
+						frontierEntries.put(toNode, frontier.add(toNode, fScore));
 				}
 			}
-
-			seenNodes.add(fromNode);
 		}
+		settledNodes.addAndGet(expandedNodes.size());
 
 		return PATH_SUMMARY_CREATOR.createUnidirectionalPath(start, end, predecessorTree);
 	}
@@ -33,4 +33,12 @@ public interface PathFindingStrategy{
 
 	Edge[] findPath(Node start, Node target, Graph graph);
 
+	/**
+	 * Discards any state kept between searches (e.g. reusable search spaces).
+	 * <p>
+	 * The default implementation does nothing, as a stateless strategy keeps nothing.
+	 * </p>
+	 */
+	default void clear(){}
+
 }
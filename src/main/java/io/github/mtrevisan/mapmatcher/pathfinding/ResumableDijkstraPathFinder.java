@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.pathfinding;
+
+import io.github.mtrevisan.mapmatcher.graph.Edge;
+import io.github.mtrevisan.mapmatcher.graph.Graph;
+import io.github.mtrevisan.mapmatcher.graph.Node;
+import io.github.mtrevisan.mapmatcher.helpers.FibonacciHeap;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.EdgeWeightCalculator;
+import io.github.mtrevisan.mapmatcher.pathfinding.path.PathSummaryCreator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A Dijkstra search that keeps its search space between calls.
+ * <p>
+ * The settled set, the predecessor tree and the frontier are kept per source node, so a later query from the same source that needs
+ * a farther target resumes expanding the existing frontier instead of restarting from scratch.<br/>
+ * Consecutive observations of a trajectory share most of their routing neighbourhood, so this amortizes the routing work along the
+ * whole trajectory.
+ * </p>
+ * <p>
+ * The search spaces are valid only for the graph they were built on, they are discarded as soon as a different graph is given, or its
+ * {@link Graph#getModificationCount() modification count} changes.<br/>
+ * At most <code>maxSearchSpaces</code> are kept, the least recently used being evicted first, and they hold a reference to the graph:
+ * call {@link #clear()} as soon as the searches that share them are done (e.g. at the end of a match).
+ * </p>
+ * <p><strong>Note that this implementation is not synchronized</strong>, an instance must not be shared among threads.</p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Dijkstra%27s_algorithm">Dijkstra's algorithm</a>
+ */
+public class ResumableDijkstraPathFinder implements PathFindingStrategy{
+
+	private static final PathSummaryCreator PATH_SUMMARY_CREATOR = new PathSummaryCreator();
+
+	private static final int DEFAULT_MAX_SEARCH_SPACES = 256;
+
+
+	private final EdgeWeightCalculator calculator;
+
+	private final Map<Node, SearchSpace> searchSpaces;
+	private Graph graph;
+	private int graphModificationCount;
+
+
+	public ResumableDijkstraPathFinder(final EdgeWeightCalculator calculator){
+		this(calculator, DEFAULT_MAX_SEARCH_SPACES);
+	}
+
+	public ResumableDijkstraPathFinder(final EdgeWeightCalculator calculator, final int maxSearchSpaces){
+		if(maxSearchSpaces <= 0)
+			throw new IllegalArgumentException("`maxSearchSpaces` must be positive");
+
+		this.calculator = calculator;
+
+		searchSpaces = new LinkedHashMap<>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Node, SearchSpace> eldest){
+				return (size() > maxSearchSpaces);
+			}
+		};
+	}
+
+	@Override
+	public Edge[] findPath(final Node start, final Node end, final Graph graph){
+		if(start.equals(end))
+			//early exit
+			return new Edge[0];
+		if(!graph.mayReach(start, end))
+			//early exit: the search is bound to fail
+			return new Edge[0];
+
+		final int modificationCount = graph.getModificationCount();
+		if(this.graph != graph || graphModificationCount != modificationCount){
+			//search spaces cannot be shared between graphs, nor survive a change of the graph
+			clear();
+			this.graph = graph;
+			graphModificationCount = modificationCount;
+		}
+
+		SearchSpace searchSpace = searchSpaces.get(start);
+		if(searchSpace == null){
+			searchSpace = new SearchSpace(start);
+			searchSpaces.put(start, searchSpace);
+		}
+		searchSpace.expandUntilSettled(end);
+
+		return PATH_SUMMARY_CREATOR.createUnidirectionalPath(start, end, searchSpace.predecessorTree);
+	}
+
+	/**
+	 * Discards all the search spaces, and the reference to the graph they were built on.
+	 */
+	@Override
+	public void clear(){
+		searchSpaces.clear();
+		graph = null;
+	}
+
+	/**
+	 * Returns the number of nodes settled so far from the given source.
+	 *
+	 * @param start	The source node.
+	 * @return	The number of settled nodes, <code>0</code> if no search has been started from the given node.
+	 */
+	public int settledNodes(final Node start){
+		final SearchSpace searchSpace = searchSpaces.get(start);
+		return (searchSpace != null? searchSpace.settled.size(): 0);
+	}
+
+	private double weight(final Edge edge){
+		return graph.getEdgeWeight(edge, calculator);
+	}
+
+
+	private final class SearchSpace{
+		//the edge immediately preceding a given node on the cheapest path from start to the given node currently known
+		private final Map<Node, Edge> predecessorTree = new HashMap<>();
+		//the cost of the cheapest path from start to given node currently known
+		private final Map<Node, Double> gScores = new HashMap<>();
+		//set of nodes whose cheapest path from start is final
+		private final Set<Node> settled = new HashSet<>();
+		//set of discovered nodes that are not settled yet
+		private final FibonacciHeap<Node> frontier = new FibonacciHeap<>();
+		private final Map<Node, FibonacciHeap.Node<Node>> frontierEntries = new HashMap<>();
+
+
+		private SearchSpace(final Node start){
+			predecessorTree.put(start, null);
+			gScores.put(start, 0.);
+			frontierEntries.put(start, frontier.add(start, 0.));
+		}
+
+		/**
+		 * Expands the frontier until the given node is settled, or until there are no more reachable nodes.
+		 *
+		 * @param end	The node to be settled.
+		 */
+		private void expandUntilSettled(final Node end){
+			while(!settled.contains(end) && !frontier.isEmpty()){
+				final Node fromNode = frontier.poll();
+				frontierEntries.remove(fromNode);
+				settled.add(fromNode);
+
+				final double fromScore = gScores.get(fromNode);
+				for(final Edge edge : fromNode.getOutEdges()){
+					final Node toNode = edge.getTo();
+					if(settled.contains(toNode))
+						continue;
+
+					final double newScore = fromScore + weight(edge);
+					if(newScore < gScores.getOrDefault(toNode, Double.POSITIVE_INFINITY)){
+						gScores.put(toNode, newScore);
+						predecessorTree.put(toNode, edge);
+
+						final FibonacciHeap.Node<Node> entry = frontierEntries.get(toNode);
+						if(entry != null)
+							frontier.decreaseKey(entry, newScore);
+						else
+							frontierEntries.put(toNode, frontier.add(toNode, newScore));
+					}
+				}
+			}
+		}
+	}
+
+}
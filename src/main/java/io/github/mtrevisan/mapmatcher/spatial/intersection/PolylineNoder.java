@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.spatial.intersection;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+/**
+ * Splits a set of polylines at their mutual intersections (noding).
+ * <p>
+ * Each polyline is split wherever one of its segments crosses or touches a segment of another polyline (or a non-adjacent segment of
+ * itself), so every crossing becomes a shared endpoint of the resulting pieces, that is, a node of the graph built from them.<br/>
+ * Collinear overlapping segments have no single crossing point, and are not split.
+ * </p>
+ * <p>
+ * All the segments are put into a {@link HPRtree}, whose Hilbert ordering places segments that are near in space next to each
+ * other.<br/>
+ * The segments are then partitioned into contiguous runs of this ordering, and each partition is processed in parallel, querying the
+ * tree for the candidate segments of each of its segments. Each pair of segments is tested once, by the partition of the segment that
+ * comes first.
+ * </p>
+ * <p>
+ * NOTE: the crossing point is computed in coordinate space, this is accurate for the segment lengths of a road network also on a
+ * geoid.
+ * </p>
+ */
+public class PolylineNoder{
+
+	private static final int DEFAULT_PARTITION_SIZE = 1024;
+
+	//tolerance on the segment parameter under which a crossing is considered to be on a vertex
+	private static final double EPSILON = 1.e-9;
+
+
+	private final int partitionSize;
+
+
+	public PolylineNoder(){
+		this(DEFAULT_PARTITION_SIZE);
+	}
+
+	public PolylineNoder(final int partitionSize){
+		if(partitionSize <= 0)
+			throw new IllegalArgumentException("`partitionSize` must be positive");
+
+		this.partitionSize = partitionSize;
+	}
+
+
+	/**
+	 * Splits the given polylines at their intersections.
+	 *
+	 * @param polylines	The polylines to be split.
+	 * @return	The pieces of each polyline, in path order, parallel to the given list (a polyline that is not crossed has itself as the only
+	 * 	piece).
+	 */
+	public List<Polyline[]> node(final List<Polyline> polylines){
+		//flatten the segments
+		int segmentCount = 0;
+		for(final Polyline polyline : polylines)
+			segmentCount += Math.max(polyline.size() - 1, 0);
+		final int[] segmentPolylines = new int[segmentCount];
+		final int[] segmentIndexes = new int[segmentCount];
+		final HPRtree<Integer> tree = new HPRtree<>();
+		for(int p = 0, s = 0; p < polylines.size(); p ++){
+			final Point[] points = polylines.get(p).getPoints();
+			for(int i = 1; i < points.length; i ++, s ++){
+				segmentPolylines[s] = p;
+				segmentIndexes[s] = i - 1;
+				tree.insert(Envelope.of(points[i - 1], points[i]), s);
+			}
+		}
+		tree.build();
+
+		//the segments in Hilbert order
+		final List<Integer> orderedSegments = new ArrayList<>(tree.nodes());
+		final int partitionCount = (orderedSegments.isEmpty()? 0: (orderedSegments.size() - 1) / partitionSize + 1);
+		final List<Cut> cuts = IntStream.range(0, partitionCount)
+			.parallel()
+			.mapToObj(k -> {
+				final int from = k * partitionSize;
+				final int to = (int)Math.min((long)from + partitionSize, orderedSegments.size());
+				return findCuts(orderedSegments.subList(from, to), tree, polylines, segmentPolylines, segmentIndexes);
+			})
+			.flatMap(List::stream)
+			.collect(Collectors.toList());
+
+		//group the cuts by polyline
+		final List<List<Cut>> polylineCuts = new ArrayList<>(polylines.size());
+		for(int p = 0; p < polylines.size(); p ++)
+			polylineCuts.add(new ArrayList<>(0));
+		for(final Cut cut : cuts)
+			polylineCuts.get(cut.polyline)
+				.add(cut);
+
+		final List<Polyline[]> pieces = new ArrayList<>(polylines.size());
+		for(int p = 0; p < polylines.size(); p ++)
+			pieces.add(split(polylines.get(p), polylineCuts.get(p)));
+		return pieces;
+	}
+
+	private static List<Cut> findCuts(final List<Integer> partition, final HPRtree<Integer> tree, final List<Polyline> polylines,
+			final int[] segmentPolylines, final int[] segmentIndexes){
+		final List<Cut> cuts = new ArrayList<>(0);
+		for(final int segment : partition){
+			final int polyline = segmentPolylines[segment];
+			final int index = segmentIndexes[segment];
+			final Point[] points = polylines.get(polyline).getPoints();
+			final Point start = points[index];
+			final Point end = points[index + 1];
+			for(final int otherSegment : tree.query(Envelope.of(start, end))){
+				final int otherPolyline = segmentPolylines[otherSegment];
+				final int otherIndex = segmentIndexes[otherSegment];
+				//test each pair once, and skip consecutive segments of the same polyline, that share a vertex
+				if(otherSegment <= segment || otherPolyline == polyline && Math.abs(otherIndex - index) == 1)
+					continue;
+
+				final Point[] otherPoints = polylines.get(otherPolyline).getPoints();
+				addCuts(polyline, index, start, end, otherPolyline, otherIndex, otherPoints[otherIndex], otherPoints[otherIndex + 1], cuts);
+			}
+		}
+		return cuts;
+	}
+
+	private static void addCuts(final int polyline1, final int index1, final Point start1, final Point end1,
+			final int polyline2, final int index2, final Point start2, final Point end2, final List<Cut> cuts){
+		final double dx1 = end1.getX() - start1.getX();
+		final double dy1 = end1.getY() - start1.getY();
+		final double dx2 = end2.getX() - start2.getX();
+		final double dy2 = end2.getY() - start2.getY();
+		final double denominator = dx1 * dy2 - dy1 * dx2;
+		if(denominator == 0.)
+			//parallel or collinear
+			return;
+
+		final double dx = start2.getX() - start1.getX();
+		final double dy = start2.getY() - start1.getY();
+		double t1 = (dx * dy2 - dy * dx2) / denominator;
+		double t2 = (dx * dy1 - dy * dx1) / denominator;
+		if(t1 < -EPSILON || t1 > 1. + EPSILON || t2 < -EPSILON || t2 > 1. + EPSILON)
+			return;
+
+		t1 = snap(t1);
+		t2 = snap(t2);
+		//both polylines must be cut at the very same point, prefer an existing vertex
+		final Point point;
+		if(t1 == 0. || t1 == 1.)
+			point = (t1 == 0.? start1: end1);
+		else if(t2 == 0. || t2 == 1.)
+			point = (t2 == 0.? start2: end2);
+		else
+			point = start1.getFactory()
+				.createPoint(start1.getX() + t1 * dx1, start1.getY() + t1 * dy1);
+		cuts.add(Cut.of(polyline1, index1, t1, point));
+		cuts.add(Cut.of(polyline2, index2, t2, point));
+	}
+
+	private static double snap(final double t){
+		if(t < EPSILON)
+			return 0.;
+		if(t > 1. - EPSILON)
+			return 1.;
+		return t;
+	}
+
+	private static Polyline[] split(final Polyline polyline, final List<Cut> cuts){
+		final Point[] points = polyline.getPoints();
+		final int lastIndex = points.length - 1;
+		//a cut on an endpoint of the polyline is already a node
+		cuts.removeIf(cut -> cut.index == 0 && cut.t == 0. || cut.index == lastIndex);
+		if(cuts.isEmpty())
+			return new Polyline[]{polyline};
+
+		cuts.sort(Comparator.<Cut>comparingInt(cut -> cut.index)
+			.thenComparingDouble(cut -> cut.t));
+		final GeometryFactory factory = polyline.getFactory();
+		final List<Polyline> pieces = new ArrayList<>(cuts.size() + 1);
+		final List<Point> piece = new ArrayList<>(2);
+		piece.add(points[0]);
+		int c = 0;
+		for(int i = 0; i < lastIndex; i ++){
+			//cuts strictly inside the segment, or on its start vertex (the first vertex is excluded above)
+			while(c < cuts.size() && cuts.get(c).index == i){
+				final Point cutPoint = cuts.get(c).point;
+				final boolean onLastPoint = piece.get(piece.size() - 1).equals(cutPoint);
+				//skip a cut on the point the piece starts from (e.g. a vertex crossed by more polylines)
+				if(!onLastPoint || piece.size() > 1){
+					if(!onLastPoint)
+						piece.add(cutPoint);
+					pieces.add(factory.createPolyline(piece.toArray(Point[]::new)));
+					piece.clear();
+					piece.add(cutPoint);
+				}
+				c ++;
+			}
+			piece.add(points[i + 1]);
+		}
+		pieces.add(factory.createPolyline(piece.toArray(Point[]::new)));
+		return pieces.toArray(Polyline[]::new);
+	}
+
+
+	private static final class Cut{
+
+		//the index of the polyline
+		private final int polyline;
+		//the index of the segment whose start vertex is at or before the cut
+		private final int index;
+		//the position of the cut along the segment, in <code>[0, 1)</code>
+		private final double t;
+		private final Point point;
+
+
+		private static Cut of(final int polyline, final int segmentIndex, final double t, final Point point){
+			//a cut at the end of a segment is a cut at the start of the next one
+			return (t == 1.? new Cut(polyline, segmentIndex + 1, 0., point): new Cut(polyline, segmentIndex, t, point));
+		}
+
+		private Cut(final int polyline, final int index, final double t, final Point point){
+			this.polyline = polyline;
+			this.index = index;
+			this.t = t;
+			this.point = point;
+		}
+
+	}
+
+}
@@ -43,7 +43,6 @@ import io.github.mtrevisan.mapmatcher.pathfinding.calculators.DistanceCalculator
 import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
 import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
-import io.github.mtrevisan.mapmatcher.spatial.Point;
 import io.github.mtrevisan.mapmatcher.spatial.Polyline;
 import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
 
@@ -158,40 +157,10 @@ System.out.println("average positioning error: " + averagePositioningError);
 
 
 	private static List<Polyline> extractPolylines(final String roadFile) throws IOException{
-		final List<Polyline> polylines = new ArrayList<>();
-
 		final InputStream is = RealTest.class.getClassLoader().getResourceAsStream(roadFile);
 		try(final BufferedReader br = new BufferedReader(new InputStreamReader(is))){
-			String readLine;
-			while((readLine = br.readLine()) != null)
-				if(!readLine.isEmpty())
-					polylines.add(parsePolyline(readLine));
+			return TestPathHelper.readPolylines(br, FACTORY);
 		}
-		return polylines;
-	}
-
-	private static Polyline parsePolyline(final String line){
-		if(!(line.startsWith("LINESTRING (") || line.startsWith("LINESTRING(")) && !line.endsWith(")"))
-			throw new IllegalArgumentException("Unrecognized element, cannot parse line: " + line);
-
-		List<Point> points = new ArrayList<>(0);
-		int startIndex = line.indexOf('(') + 1;
-		while(true){
-			int separatorIndex = line.indexOf(" ", startIndex + 1);
-			if(separatorIndex < 0)
-				break;
-
-			int endIndex = line.indexOf(", ", separatorIndex + 1);
-			if(endIndex < 0)
-				endIndex = line.indexOf(')', separatorIndex + 1);
-			points.add(FACTORY.createPoint(
-				Double.parseDouble(line.substring(startIndex, separatorIndex)),
-				Double.parseDouble(line.substring(separatorIndex + 1, endIndex))
-			));
-			startIndex = endIndex + 2;
-		}
-
-		return FACTORY.createPolyline(points.toArray(Point[]::new));
 	}
 
 	private static GPSPoint[] extract(String licensePlateNumber, String separator) throws IOException{
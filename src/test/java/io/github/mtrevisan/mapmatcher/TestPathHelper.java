@@ -26,14 +26,20 @@ package io.github.mtrevisan.mapmatcher;
 
 import io.github.mtrevisan.mapmatcher.helpers.filters.GPSPositionSpeedFilter;
 import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
 import io.github.mtrevisan.mapmatcher.spatial.Point;
 import io.github.mtrevisan.mapmatcher.spatial.Polyline;
 import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 
@@ -107,4 +113,50 @@ public class TestPathHelper{
 		return observationsEdges;
 	}
 
+
+	/**
+	 * Reads the polylines of a WKT file, one <code>LINESTRING</code> per line.
+	 *
+	 * @param filename	The name of the file.
+	 * @param factory	The factory used to create the polylines.
+	 * @return	The polylines.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	public static List<Polyline> readPolylines(final String filename, final GeometryFactory factory) throws IOException{
+		try(final BufferedReader br = new BufferedReader(new FileReader(filename))){
+			return readPolylines(br, factory);
+		}
+	}
+
+	/**
+	 * Reads the polylines of a WKT source, one <code>LINESTRING</code> per line.
+	 *
+	 * @param reader	The reader of the source (not closed).
+	 * @param factory	The factory used to create the polylines.
+	 * @return	The polylines.
+	 * @throws IOException	If an I/O error occurs.
+	 */
+	public static List<Polyline> readPolylines(final BufferedReader reader, final GeometryFactory factory) throws IOException{
+		final List<Polyline> polylines = new ArrayList<>();
+		String readLine;
+		while((readLine = reader.readLine()) != null)
+			if(!readLine.isEmpty())
+				polylines.add(parsePolyline(readLine, factory));
+		return polylines;
+	}
+
+	public static Polyline parsePolyline(final String line, final GeometryFactory factory){
+		if(!line.startsWith("LINESTRING") || !line.endsWith(")"))
+			throw new IllegalArgumentException("Unrecognized element, cannot parse line: " + line);
+
+		final String[] coordinates = line.substring(line.indexOf('(') + 1, line.lastIndexOf(')'))
+			.split(",");
+		final Point[] points = new Point[coordinates.length];
+		for(int i = 0; i < coordinates.length; i ++){
+			final String[] xy = coordinates[i].trim().split(" ");
+			points[i] = factory.createPoint(Double.parseDouble(xy[0]), Double.parseDouble(xy[1]));
+		}
+		return factory.createPolyline(points);
+	}
+
 }
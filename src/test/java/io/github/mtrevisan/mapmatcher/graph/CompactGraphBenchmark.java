@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.TestPathHelper;
+import io.github.mtrevisan.mapmatcher.helpers.PathHelper;
+import io.github.mtrevisan.mapmatcher.pathfinding.AStarPathFinder;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.EdgeWeightCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Compares the search throughput on a graph frozen in the iteration order of its source against the same graph frozen in Hilbert
+ * order (see {@link CompactGraph#freezeInHilbertOrder(Graph)}).
+ * <p>
+ * The graph is the bidirectional graph of the Italian highways, with a merge threshold of 50 m; the same random pairs of nodes are
+ * searched with A* on both graphs.<br/>
+ * The weight is planar and cheap, so memory access dominates; the throughput is reported as nodes settled by A* per second, and the
+ * last round is reported, the previous ones warm up the JIT.
+ * </p>
+ */
+class CompactGraphBenchmark{
+
+	private static final String FILENAME_ROADS_SIMPLIFIED = "src/test/resources/it.highways.simplified.5.wkt";
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new GeoidalCalculator());
+
+	private static final double MERGE_THRESHOLD = 50.;
+	private static final int QUERIES = 400;
+	private static final int ROUNDS = 5;
+
+
+	public static void main(final String[] args) throws IOException{
+		final Graph graph = PathHelper.extractBidirectionalGraph(
+			TestPathHelper.readPolylines(FILENAME_ROADS_SIMPLIFIED, FACTORY), MERGE_THRESHOLD);
+		final CompactGraph plainGraph = CompactGraph.freeze(graph);
+		final CompactGraph hilbertGraph = CompactGraph.freezeInHilbertOrder(graph);
+
+		//the same queries on both graphs
+		final Map<Point, Integer> hilbertIndexes = new HashMap<>(hilbertGraph.nodeCount());
+		for(int n = 0; n < hilbertGraph.nodeCount(); n ++)
+			hilbertIndexes.put(hilbertGraph.getNode(n).getPoint(), n);
+		final Random random = new Random(1);
+		final int[][] plainQueries = new int[QUERIES][];
+		final int[][] hilbertQueries = new int[QUERIES][];
+		for(int q = 0; q < QUERIES; q ++){
+			final int start = random.nextInt(plainGraph.nodeCount());
+			final int end = random.nextInt(plainGraph.nodeCount());
+			plainQueries[q] = new int[]{start, end};
+			hilbertQueries[q] = new int[]{hilbertIndexes.get(plainGraph.getNode(start).getPoint()),
+				hilbertIndexes.get(plainGraph.getNode(end).getPoint())};
+		}
+
+		final EdgeWeightCalculator calculator = points -> Math.hypot(points[0].getX() - points[1].getX(),
+			points[0].getY() - points[1].getY());
+		final AStarPathFinder pathFinder = new AStarPathFinder(calculator);
+		double[] plainThroughput = null;
+		double[] hilbertThroughput = null;
+		for(int round = 0; round < ROUNDS; round ++){
+			plainThroughput = measure(plainGraph, plainQueries, pathFinder);
+			hilbertThroughput = measure(hilbertGraph, hilbertQueries, pathFinder);
+		}
+
+		System.out.printf("%-22s %12s %14s%n", "graph", "time [ms]", "settled [M/s]");
+		System.out.printf("%-22s %12.1f %14.2f%n", "freeze", plainThroughput[0], plainThroughput[1]);
+		System.out.printf("%-22s %12.1f %14.2f%n", "freezeInHilbertOrder", hilbertThroughput[0], hilbertThroughput[1]);
+	}
+
+	private static double[] measure(final CompactGraph graph, final int[][] queries, final AStarPathFinder pathFinder){
+		final long settledBefore = pathFinder.getSettledNodes();
+		final long start = System.nanoTime();
+		for(final int[] query : queries)
+			pathFinder.findPath(graph.getNode(query[0]), graph.getNode(query[1]), graph);
+		final double seconds = (System.nanoTime() - start) / 1.e9;
+		final long settledNodes = pathFinder.getSettledNodes() - settledBefore;
+		return new double[]{seconds * 1.e3, settledNodes / seconds / 1.e6};
+	}
+
+}
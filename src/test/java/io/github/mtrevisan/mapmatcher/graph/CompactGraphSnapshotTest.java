@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+
+class CompactGraphSnapshotTest{
+
+	@Test
+	void should_read_back_the_written_graph(@TempDir final Path directory) throws IOException{
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final NearNodeMergeGraph graph = CompactGraphTest.createGraph(factory)
+			.withTree();
+		graph.addApproximateDirectEdge("far", factory.createPoint(10., 10.), factory.createPoint(11., 10.));
+		final CompactGraph compactGraph = CompactGraph.freeze(graph);
+		final Path file = directory.resolve("graph.snapshot");
+
+		CompactGraphSnapshot.write(compactGraph, file);
+		final CompactGraph mappedGraph = CompactGraphSnapshot.open(file, factory);
+
+		Assertions.assertEquals(compactGraph.nodeCount(), mappedGraph.nodeCount());
+		Assertions.assertEquals(compactGraph.edgeCount(), mappedGraph.edgeCount());
+		for(int n = 0; n < compactGraph.nodeCount(); n ++){
+			Assertions.assertEquals(compactGraph.getNode(n).getPoint(), mappedGraph.getNode(n).getPoint());
+			Assertions.assertEquals(compactGraph.getNode(n).getID(), mappedGraph.getNode(n).getID());
+			Assertions.assertEquals(compactGraph.getOutEdgesStart(n), mappedGraph.getOutEdgesStart(n));
+			Assertions.assertEquals(compactGraph.getOutEdgesEnd(n), mappedGraph.getOutEdgesEnd(n));
+		}
+		for(int n = 0; n < compactGraph.nodeCount(); n ++){
+			Assertions.assertEquals(compactGraph.getStrongComponent(n), mappedGraph.getStrongComponent(n));
+			Assertions.assertEquals(compactGraph.getWeakComponent(n), mappedGraph.getWeakComponent(n));
+		}
+		Assertions.assertEquals(compactGraph.strongComponentCount(), mappedGraph.strongComponentCount());
+		Assertions.assertEquals(compactGraph.weakComponentCount(), mappedGraph.weakComponentCount());
+		for(int e = 0; e < compactGraph.edgeCount(); e ++){
+			Assertions.assertEquals(compactGraph.getEdge(e).getID(), mappedGraph.getEdge(e).getID());
+			Assertions.assertEquals(compactGraph.getEdge(e).getPath(), mappedGraph.getEdge(e).getPath());
+			Assertions.assertEquals(compactGraph.getEdgeTarget(e), mappedGraph.getEdgeTarget(e));
+			Assertions.assertEquals(compactGraph.getEdgeWeight(e), mappedGraph.getEdgeWeight(e));
+		}
+
+		final Set<String> ids = new HashSet<>();
+		for(final Edge edge : mappedGraph.getEdgesNear(factory.createPoint(10.5, 10.), 0.1))
+			ids.add(edge.getID());
+		Assertions.assertEquals(Set.of("far"), ids);
+	}
+
+	@Test
+	void should_reject_a_file_that_is_not_a_snapshot(@TempDir final Path directory) throws IOException{
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final Path file = directory.resolve("graph.snapshot");
+		Files.writeString(file, "GEOMETRYCOLLECTION (LINESTRING (0 0, 1 1))");
+
+		Assertions.assertThrows(IOException.class, () -> CompactGraphSnapshot.open(file, factory));
+	}
+
+	@Test
+	void should_reject_a_truncated_or_corrupted_snapshot(@TempDir final Path directory) throws IOException{
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final CompactGraph compactGraph = CompactGraph.freeze(CompactGraphTest.createGraph(factory)
+			.withTree());
+		final Path file = directory.resolve("graph.snapshot");
+		CompactGraphSnapshot.write(compactGraph, file);
+		final byte[] snapshot = Files.readAllBytes(file);
+
+		//truncated in the header, in the arrays, in the ids, and in the spatial index
+		for(final int size : new int[]{40, snapshot.length / 4, snapshot.length / 2, snapshot.length - 1}){
+			Files.write(file, Arrays.copyOf(snapshot, size));
+
+			Assertions.assertThrows(IOException.class, () -> CompactGraphSnapshot.open(file, factory), "size " + size);
+		}
+		//negative node count
+		final byte[] corrupted = snapshot.clone();
+		ByteBuffer.wrap(corrupted)
+			.putInt(2 * Integer.BYTES, -1);
+		Files.write(file, corrupted);
+
+		Assertions.assertThrows(IOException.class, () -> CompactGraphSnapshot.open(file, factory));
+	}
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.pathfinding.AStarPathFinder;
+import io.github.mtrevisan.mapmatcher.pathfinding.PathFindingStrategy;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.DistanceCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.TopologyCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+class CompactGraphTest{
+
+	@Test
+	void should_preserve_nodes_and_edges(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final NearNodeMergeGraph graph = createGraph(factory);
+
+		final CompactGraph compactGraph = CompactGraph.freeze(graph);
+
+		Assertions.assertEquals(graph.nodes().size(), compactGraph.nodeCount());
+		Assertions.assertEquals(graph.edges().size(), compactGraph.edgeCount());
+		Assertions.assertEquals(extractPoints(graph.nodes()), extractPoints(compactGraph.nodes()));
+		Assertions.assertEquals(new HashSet<>(extractIDs(graph.edges())), new HashSet<>(extractIDs(compactGraph.edges())));
+		for(final Node node : compactGraph.nodes()){
+			final int index = compactGraph.indexOf(node);
+			Assertions.assertSame(node, compactGraph.getNode(index));
+			for(int e = compactGraph.getOutEdgesStart(index); e < compactGraph.getOutEdgesEnd(index); e ++){
+				Assertions.assertEquals(index, compactGraph.getEdgeSource(e));
+				Assertions.assertSame(node, compactGraph.getEdge(e).getFrom());
+			}
+		}
+		for(int e = 0; e < compactGraph.edgeCount(); e ++)
+			Assertions.assertEquals(compactGraph.getEdge(e).getPath().getStartPoint().distance(compactGraph.getEdge(e).getPath().getEndPoint()),
+				compactGraph.getEdgeWeight(e), 1.e-9);
+	}
+
+	@Test
+	void should_find_the_same_path(){
+		final TopologyCalculator topologyCalculator = new EuclideanCalculator();
+		final GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		final NearNodeMergeGraph graph = createGraph(factory);
+		final CompactGraph compactGraph = CompactGraph.freeze(graph);
+		final PathFindingStrategy pathFinder = new AStarPathFinder(new DistanceCalculator(topologyCalculator));
+		final Point start = factory.createPoint(0., 0.);
+		final Point end = factory.createPoint(2., 1.);
+
+		final Edge[] path = pathFinder.findPath(findNode(graph, start), findNode(graph, end), graph);
+		final Edge[] compactPath = pathFinder.findPath(findNode(compactGraph, start), findNode(compactGraph, end), compactGraph);
+
+		Assertions.assertEquals(extractIDs(Arrays.asList(path)), extractIDs(Arrays.asList(compactPath)));
+		Assertions.assertEquals(3, compactPath.length);
+	}
+
+	@Test
+	void should_find_the_same_path_in_hilbert_order(){
+		final TopologyCalculator topologyCalculator = new EuclideanCalculator();
+		final GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		final NearNodeMergeGraph graph = createGraph(factory);
+		graph.addApproximateDirectEdge("far", factory.createPoint(10., 10.), factory.createPoint(11., 10.));
+		final CompactGraph compactGraph = CompactGraph.freezeInHilbertOrder(graph);
+		final PathFindingStrategy pathFinder = new AStarPathFinder(new DistanceCalculator(topologyCalculator));
+		final Point start = factory.createPoint(0., 0.);
+		final Point end = factory.createPoint(2., 1.);
+
+		final Edge[] path = pathFinder.findPath(findNode(graph, start), findNode(graph, end), graph);
+		final Edge[] compactPath = pathFinder.findPath(findNode(compactGraph, start), findNode(compactGraph, end), compactGraph);
+
+		Assertions.assertEquals(new HashSet<>(extractPoints(graph.nodes())), new HashSet<>(extractPoints(compactGraph.nodes())));
+		Assertions.assertEquals(new HashSet<>(extractIDs(graph.edges())), new HashSet<>(extractIDs(compactGraph.edges())));
+		Assertions.assertEquals(extractIDs(Arrays.asList(path)), extractIDs(Arrays.asList(compactPath)));
+		//the far away nodes are at one end of the numbering
+		final int farIndex = compactGraph.indexOf(findNode(compactGraph, factory.createPoint(10., 10.)));
+		Assertions.assertTrue(farIndex == 0 || farIndex >= compactGraph.nodeCount() - 2);
+		for(int n = 0; n < compactGraph.nodeCount(); n ++)
+			for(int e = compactGraph.getOutEdgesStart(n); e < compactGraph.getOutEdgesEnd(n); e ++)
+				Assertions.assertEquals(n, compactGraph.getEdgeSource(e));
+	}
+
+	@Test
+	void should_be_immutable(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final CompactGraph compactGraph = CompactGraph.freeze(createGraph(factory));
+
+		final Node node = compactGraph.getNode(0);
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> node.addOutEdge(compactGraph.getEdge(0)));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> compactGraph.edges().clear());
+	}
+
+	@Test
+	void should_publish_the_same_views_to_concurrent_readers() throws Exception{
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final CompactGraph compactGraph = CompactGraph.freeze(createGraph(factory));
+		final int readers = 4;
+		final ExecutorService executor = Executors.newFixedThreadPool(readers);
+		try{
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<Edge[]>> results = new ArrayList<>(readers);
+			for(int r = 0; r < readers; r ++)
+				results.add(executor.submit(() -> {
+					start.await();
+					final Edge[] views = new Edge[compactGraph.edgeCount()];
+					for(int e = 0; e < views.length; e ++)
+						views[e] = compactGraph.getEdge(e);
+					return views;
+				}));
+			start.countDown();
+
+			final Edge[] views = results.get(0).get();
+			for(final Future<Edge[]> result : results){
+				final Edge[] otherViews = result.get();
+				for(int e = 0; e < views.length; e ++)
+					Assertions.assertSame(views[e], otherViews[e]);
+			}
+			for(int e = 0; e < views.length; e ++){
+				Assertions.assertSame(views[e], compactGraph.getEdge(e));
+				Assertions.assertEquals(e, views[e].getIndex());
+				Assertions.assertSame(views[e].getFrom(), compactGraph.getNode(compactGraph.getEdgeSource(e)));
+			}
+		}
+		finally{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void should_return_edges_near(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final NearNodeMergeGraph graph = createGraph(factory)
+			.withTree();
+		graph.addApproximateDirectEdge("far", factory.createPoint(10., 10.), factory.createPoint(11., 10.));
+		final CompactGraph compactGraph = CompactGraph.freeze(graph);
+
+		final Set<String> ids = new HashSet<>();
+		for(final Edge edge : compactGraph.getEdgesNear(factory.createPoint(10.5, 10.), 0.1))
+			ids.add(edge.getID());
+
+		Assertions.assertTrue(compactGraph.canHaveEdgesNear());
+		Assertions.assertEquals(Set.of("far"), ids);
+	}
+
+	@Test
+	void should_tell_unreachable_nodes(){
+		final TopologyCalculator topologyCalculator = new EuclideanCalculator();
+		final GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		final NearNodeMergeGraph graph = createGraph(factory);
+		graph.addApproximateDirectEdge("far", factory.createPoint(10., 10.), factory.createPoint(11., 10.));
+		final CompactGraph compactGraph = CompactGraph.freeze(graph);
+		final Node start = findNode(compactGraph, factory.createPoint(0., 0.));
+		final Node end = findNode(compactGraph, factory.createPoint(2., 1.));
+		final Node far = findNode(compactGraph, factory.createPoint(10., 10.));
+
+		Assertions.assertTrue(compactGraph.mayReach(start, end));
+		Assertions.assertFalse(compactGraph.mayReach(end, start));
+		Assertions.assertFalse(compactGraph.mayReach(start, far));
+		Assertions.assertEquals(2, compactGraph.weakComponentCount());
+		Assertions.assertEquals(compactGraph.nodeCount(), compactGraph.strongComponentCount());
+		final PathFindingStrategy pathFinder = new AStarPathFinder(new DistanceCalculator(topologyCalculator));
+		Assertions.assertEquals(0, pathFinder.findPath(end, start, compactGraph).length);
+	}
+
+	@Test
+	void should_find_strongly_connected_components(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final NearNodeMergeGraph graph = createGraph(factory);
+		//close the cycle
+		graph.addApproximateDirectEdge("7", factory.createPoint(2., 1.), factory.createPoint(0., 0.));
+		graph.addApproximateDirectEdge("far", factory.createPoint(10., 10.), factory.createPoint(11., 10.));
+		final CompactGraph compactGraph = CompactGraph.freeze(graph);
+		final Node start = findNode(compactGraph, factory.createPoint(0., 0.));
+		final Node end = findNode(compactGraph, factory.createPoint(2., 1.));
+
+		final int[] sizes = compactGraph.strongComponentSizes();
+		Arrays.sort(sizes);
+		Assertions.assertArrayEquals(new int[]{1, 1, 6}, sizes);
+		Assertions.assertEquals(compactGraph.getStrongComponent(compactGraph.indexOf(start)),
+			compactGraph.getStrongComponent(compactGraph.indexOf(end)));
+		Assertions.assertTrue(compactGraph.mayReach(end, start));
+	}
+
+
+	static NearNodeMergeGraph createGraph(final GeometryFactory factory){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.);
+		graph.addApproximateDirectEdge("0", factory.createPoint(0., 0.), factory.createPoint(1., 0.));
+		graph.addApproximateDirectEdge("1", factory.createPoint(1., 0.), factory.createPoint(2., 0.));
+		graph.addApproximateDirectEdge("2", factory.createPoint(1., 0.), factory.createPoint(1., 1.2));
+		graph.addApproximateDirectEdge("3", factory.createPoint(1., 1.2), factory.createPoint(2., 1.));
+		graph.addApproximateDirectEdge("4", factory.createPolyline(factory.createPoint(2., 0.), factory.createPoint(2., 0.5),
+			factory.createPoint(2., 1.)));
+		graph.addApproximateDirectEdge("5", factory.createPoint(0., 0.), factory.createPoint(0., 3.));
+		graph.addApproximateDirectEdge("6", factory.createPoint(0., 3.), factory.createPoint(2., 1.));
+		return graph;
+	}
+
+	static List<Point> extractPoints(final Collection<Node> nodes){
+		final List<Point> points = new ArrayList<>(nodes.size());
+		for(final Node node : nodes)
+			points.add(node.getPoint());
+		points.sort(Point::compareTo);
+		return points;
+	}
+
+	static List<String> extractIDs(final Collection<Edge> edges){
+		final List<String> ids = new ArrayList<>(edges.size());
+		for(final Edge edge : edges)
+			ids.add(edge.getID());
+		return ids;
+	}
+
+	private static Node findNode(final Graph graph, final Point point){
+		for(final Node node : graph.nodes())
+			if(node.getPoint().equals(point))
+				return node;
+		return null;
+	}
+
+}
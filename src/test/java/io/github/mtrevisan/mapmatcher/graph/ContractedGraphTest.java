@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.pathfinding.AStarPathFinder;
+import io.github.mtrevisan.mapmatcher.pathfinding.PathFindingStrategy;
+import io.github.mtrevisan.mapmatcher.pathfinding.ResumableDijkstraPathFinder;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.DistanceCalculator;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.EdgeWeightCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.TopologyCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+class ContractedGraphTest{
+
+	private static final TopologyCalculator TOPOLOGY_CALCULATOR = new EuclideanCalculator();
+	private static final GeometryFactory FACTORY = new GeometryFactory(TOPOLOGY_CALCULATOR);
+
+
+	@Test
+	void should_contract_a_one_way_chain(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		graph.addApproximateDirectEdge("a", FACTORY.createPolyline(point(0., 0.), point(0.5, 0.1), point(1., 0.)));
+		graph.addApproximateDirectEdge("b", FACTORY.createPolyline(point(1., 0.), point(2., 0.)));
+		graph.addApproximateDirectEdge("c", FACTORY.createPolyline(point(2., 0.), point(3., 0.)));
+		//a junction at the end of the chain
+		graph.addApproximateDirectEdge("d", FACTORY.createPolyline(point(3., 0.), point(4., 1.)));
+		graph.addApproximateDirectEdge("e", FACTORY.createPolyline(point(3., 0.), point(4., -1.)));
+
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graph);
+
+		Assertions.assertEquals(4, contractedGraph.nodes().size());
+		Assertions.assertEquals(3, contractedGraph.edges().size());
+		final Edge chain = findEdge(contractedGraph, "a");
+		Assertions.assertEquals("LINESTRING (0.0 0.0, 0.5 0.1, 1.0 0.0, 2.0 0.0, 3.0 0.0)", chain.getPath().toString());
+		Assertions.assertEquals(List.of("a", "b", "c"), extractIDs(contractedGraph.getOriginalEdges(chain)));
+		Assertions.assertArrayEquals(new int[]{0, 2, 3}, contractedGraph.getOriginalPointOffsets(chain));
+		Assertions.assertEquals("b", contractedGraph.getOriginalEdge(chain, 2).getID());
+		Assertions.assertEquals("c", contractedGraph.getOriginalEdge(chain, 4).getID());
+		Assertions.assertEquals("b", contractedGraph.getOriginalEdge(chain, point(1.6, 0.2)).getID());
+		Assertions.assertEquals(List.of("d"), extractIDs(contractedGraph.getOriginalEdges(findEdge(contractedGraph, "d"))));
+	}
+
+	@Test
+	void should_contract_a_two_way_chain(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		final Point[] points = {point(0., 0.), point(1., 0.), point(2., 0.), point(3., 0.)};
+		for(int i = 0; i < points.length - 1; i ++){
+			graph.addApproximateDirectEdge(String.valueOf(i), FACTORY.createPolyline(points[i], points[i + 1]));
+			graph.addApproximateDirectEdge(i + "-rev", FACTORY.createPolyline(points[i + 1], points[i]));
+		}
+		//a junction at the start of the chain
+		graph.addApproximateDirectEdge("x", FACTORY.createPolyline(point(0., 0.), point(-1., 1.)));
+		graph.addApproximateDirectEdge("y", FACTORY.createPolyline(point(0., 0.), point(-1., -1.)));
+
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graph);
+
+		Assertions.assertEquals(4, contractedGraph.nodes().size());
+		Assertions.assertEquals(4, contractedGraph.edges().size());
+		Assertions.assertEquals(List.of("0", "1", "2"), extractIDs(contractedGraph.getOriginalEdges(findEdge(contractedGraph, "0"))));
+		Assertions.assertEquals(List.of("2-rev", "1-rev", "0-rev"),
+			extractIDs(contractedGraph.getOriginalEdges(findEdge(contractedGraph, "2-rev"))));
+	}
+
+	@Test
+	void should_contract_a_cycle(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		graph.addApproximateDirectEdge("a", FACTORY.createPolyline(point(0., 0.), point(1., 0.)));
+		graph.addApproximateDirectEdge("b", FACTORY.createPolyline(point(1., 0.), point(1., 1.)));
+		graph.addApproximateDirectEdge("c", FACTORY.createPolyline(point(1., 1.), point(0., 0.)));
+
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graph);
+
+		Assertions.assertEquals(1, contractedGraph.edges().size());
+		final Edge cycle = contractedGraph.edges().iterator().next();
+		Assertions.assertEquals(cycle.getFrom(), cycle.getTo());
+		Assertions.assertEquals(3, contractedGraph.getOriginalEdges(cycle).length);
+	}
+
+	@Test
+	void should_find_the_same_path_as_the_original_graph(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		graph.addApproximateDirectEdge("0", FACTORY.createPolyline(point(0., 0.), point(1., 0.)));
+		graph.addApproximateDirectEdge("1", FACTORY.createPolyline(point(1., 0.), point(2., 0.)));
+		graph.addApproximateDirectEdge("2", FACTORY.createPolyline(point(2., 0.), point(3., 0.)));
+		graph.addApproximateDirectEdge("3", FACTORY.createPolyline(point(3., 0.), point(3., 1.)));
+		graph.addApproximateDirectEdge("4", FACTORY.createPolyline(point(3., 0.), point(4., 0.)));
+		graph.addApproximateDirectEdge("5", FACTORY.createPolyline(point(4., 0.), point(5., 0.)));
+		graph.addApproximateDirectEdge("6", FACTORY.createPolyline(point(5., 0.), point(5., 1.)));
+		graph.addApproximateDirectEdge("7", FACTORY.createPolyline(point(5., 0.), point(6., 0.)));
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graph);
+		final PathFindingStrategy pathFinder = new AStarPathFinder(new DistanceCalculator(TOPOLOGY_CALCULATOR));
+
+		final Edge[] path = pathFinder.findPath(findNode(graph, point(0., 0.)), findNode(graph, point(6., 0.)), graph);
+		final Edge[] contractedPath = pathFinder.findPath(findNode(contractedGraph, point(0., 0.)),
+			findNode(contractedGraph, point(6., 0.)), contractedGraph);
+
+		Assertions.assertEquals(List.of("0", "1", "2", "4", "5", "7"), extractIDs(path));
+		Assertions.assertEquals(3, contractedPath.length);
+		Assertions.assertEquals(extractIDs(path), extractIDs(contractedGraph.expandPath(contractedPath)));
+	}
+
+	@Test
+	void should_find_paths_with_the_same_cost_as_the_original_graph(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		//a winding chain, whose ends are nearer than the length of its path
+		graph.addApproximateDirectEdge("w0", FACTORY.createPolyline(point(0., 0.), point(0., 3.)));
+		graph.addApproximateDirectEdge("w1", FACTORY.createPolyline(point(0., 3.), point(4., 3.)));
+		graph.addApproximateDirectEdge("w2", FACTORY.createPolyline(point(4., 3.), point(4., 0.)));
+		//a shorter route, broken by a junction
+		graph.addApproximateDirectEdge("s0", FACTORY.createPolyline(point(0., 0.), point(2., -1.)));
+		graph.addApproximateDirectEdge("s1", FACTORY.createPolyline(point(2., -1.), point(4., 0.)));
+		graph.addApproximateDirectEdge("spur", FACTORY.createPolyline(point(2., -1.), point(2., -2.)));
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graph);
+		final DistanceCalculator calculator = new DistanceCalculator(TOPOLOGY_CALCULATOR);
+
+		Assertions.assertEquals(10., contractedGraph.getEdgeWeight(findEdge(contractedGraph, "w0"), calculator), 1.e-12);
+		for(final PathFindingStrategy pathFinder : List.of(new AStarPathFinder(calculator), new ResumableDijkstraPathFinder(calculator))){
+			final Edge[] path = pathFinder.findPath(findNode(graph, point(0., 0.)), findNode(graph, point(4., 0.)), graph);
+			final Edge[] contractedPath = pathFinder.findPath(findNode(contractedGraph, point(0., 0.)),
+				findNode(contractedGraph, point(4., 0.)), contractedGraph);
+
+			Assertions.assertEquals(List.of("s0", "s1"), extractIDs(path));
+			Assertions.assertEquals(extractIDs(path), extractIDs(contractedGraph.expandPath(contractedPath)));
+			Assertions.assertEquals(cost(graph, path, calculator), cost(contractedGraph, contractedPath, calculator), 1.e-12);
+		}
+	}
+
+	@Test
+	void should_keep_isolated_nodes(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		graph.addApproximateDirectEdge("a", FACTORY.createPolyline(point(0., 0.), point(1., 0.)));
+		graph.addApproximateDirectEdge("b", FACTORY.createPolyline(point(1., 0.), point(2., 0.)));
+		final Node isolatedNode = Node.of("isolated", point(5., 5.));
+		final List<Node> nodes = new ArrayList<>(graph.nodes());
+		nodes.add(isolatedNode);
+		final Graph graphWithIsolatedNode = new Graph(){
+			@Override
+			public GeometryFactory getFactory(){
+				return FACTORY;
+			}
+
+			@Override
+			public boolean isEmpty(){
+				return false;
+			}
+
+			@Override
+			public Collection<Node> nodes(){
+				return nodes;
+			}
+
+			@Override
+			public Collection<Edge> edges(){
+				return graph.edges();
+			}
+
+			@Override
+			public boolean canHaveEdgesNear(){
+				return false;
+			}
+
+			@Override
+			public Collection<Edge> getEdgesNear(final Point point, final double threshold){
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public String toStringWithObservations(final GPSPoint[] observations){
+				return graph.toStringWithObservations(observations);
+			}
+		};
+
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graphWithIsolatedNode);
+
+		Assertions.assertEquals(3, contractedGraph.nodes().size());
+		Assertions.assertEquals(1, contractedGraph.edges().size());
+		final Node contractedIsolatedNode = findNode(contractedGraph, point(5., 5.));
+		Assertions.assertNotNull(contractedIsolatedNode);
+		Assertions.assertEquals("isolated", contractedIsolatedNode.getID());
+		Assertions.assertTrue(contractedIsolatedNode.getOutEdges().isEmpty());
+	}
+
+	@Test
+	void should_weigh_a_chain_once_per_calculator(){
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.1);
+		graph.addApproximateDirectEdge("a", FACTORY.createPolyline(point(0., 0.), point(1., 0.)));
+		graph.addApproximateDirectEdge("b", FACTORY.createPolyline(point(1., 0.), point(2., 0.)));
+		graph.addApproximateDirectEdge("c", FACTORY.createPolyline(point(2., 0.), point(3., 0.)));
+		final ContractedGraph contractedGraph = ContractedGraph.contract(graph);
+		final Edge chain = findEdge(contractedGraph, "a");
+		final DistanceCalculator distanceCalculator = new DistanceCalculator(TOPOLOGY_CALCULATOR);
+		final AtomicInteger calls = new AtomicInteger();
+		final EdgeWeightCalculator countingCalculator = points -> {
+			calls.incrementAndGet();
+			return distanceCalculator.calculateWeight(points);
+		};
+
+		Assertions.assertEquals(3., contractedGraph.getEdgeWeight(chain, countingCalculator), 1.e-12);
+		final int callsPerChain = calls.get();
+		Assertions.assertEquals(3., contractedGraph.getEdgeWeight(chain, countingCalculator), 1.e-12);
+		Assertions.assertEquals(callsPerChain, calls.get());
+		//another calculator weighs the chain anew
+		final EdgeWeightCalculator doubleCalculator = points -> 2. * distanceCalculator.calculateWeight(points);
+		Assertions.assertEquals(6., contractedGraph.getEdgeWeight(chain, doubleCalculator), 1.e-12);
+	}
+
+
+	private static Point point(final double x, final double y){
+		return FACTORY.createPoint(x, y);
+	}
+
+	private static Edge findEdge(final Graph graph, final String id){
+		for(final Edge edge : graph.edges())
+			if(edge.getID().equals(id))
+				return edge;
+		return null;
+	}
+
+	private static Node findNode(final Graph graph, final Point point){
+		for(final Node node : graph.nodes())
+			if(node.getPoint().equals(point))
+				return node;
+		return null;
+	}
+
+	private static double cost(final Graph graph, final Edge[] path, final DistanceCalculator calculator){
+		double cost = 0.;
+		for(final Edge edge : path)
+			cost += graph.getEdgeWeight(edge, calculator);
+		return cost;
+	}
+
+	private static List<String> extractIDs(final Edge[] edges){
+		final List<String> ids = new ArrayList<>(edges.length);
+		for(final Edge edge : edges)
+			ids.add(edge.getID());
+		return ids;
+	}
+
+}
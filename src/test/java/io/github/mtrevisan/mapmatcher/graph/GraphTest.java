@@ -111,4 +111,70 @@ class GraphTest{
 		Assertions.assertEquals(expected, result);
 	}
 
+	@Test
+	void should_merge_near_nodes_across_grid_cells(){
+		GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.5);
+		graph.addApproximateDirectEdge("0", factory.createPoint(0., 0.), factory.createPoint(0.98, 0.));
+		graph.addApproximateDirectEdge("1", factory.createPoint(1.02, 0.), factory.createPoint(2., 0.));
+		graph.addApproximateDirectEdge("2", factory.createPoint(-10., 0.), factory.createPoint(-20., 0.));
+
+		Assertions.assertEquals(5, graph.nodes().size());
+		Assertions.assertEquals(1, graph.getNodesNear(factory.createPoint(1., 0.)).size());
+		Assertions.assertEquals(1, graph.getNodesNear(factory.createPoint(-10.3, 0.3)).size());
+		Assertions.assertTrue(graph.getNodesNear(factory.createPoint(-5., 0.)).isEmpty());
+	}
+
+	@Test
+	void should_return_edges_near_a_point_in_both_directions(){
+		GeometryFactory factory = new GeometryFactory(new GeoidalCalculator());
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(50.)
+			.withTree();
+		graph.addApproximateDirectEdge("0", factory.createPoint(12.15, 45.66), factory.createPoint(12.16, 45.66));
+		graph.addApproximateDirectEdge("0-rev", factory.createPoint(12.16, 45.66), factory.createPoint(12.15, 45.66));
+		graph.addApproximateDirectEdge("1", factory.createPoint(12.30, 45.70), factory.createPoint(12.31, 45.70));
+
+		final Set<String> result = new HashSet<>();
+		for(final Edge edge : graph.getEdgesNear(factory.createPoint(12.155, 45.6601), 100.))
+			result.add(edge.getID());
+
+		Assertions.assertEquals(Set.of("0", "0-rev"), result);
+	}
+
+	@Test
+	void should_return_edges_near_a_point_along_the_axes(){
+		GeometryFactory factory = new GeometryFactory(new GeoidalCalculator());
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(50.)
+			.withTree();
+		//about 90 m north of the point, outside a box whose corners are at the given distance
+		graph.addApproximateDirectEdge("0", factory.createPoint(12.154, 45.66091), factory.createPoint(12.156, 45.66091));
+
+		final Set<String> result = new HashSet<>();
+		for(final Edge edge : graph.getEdgesNear(factory.createPoint(12.155, 45.6601), 100.))
+			result.add(edge.getID());
+
+		Assertions.assertEquals(Set.of("0"), result);
+	}
+
+	@Test
+	void should_render_node_ids_from_source_ids(){
+		GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final NearNodeMergeGraph graph = new NearNodeMergeGraph(0.);
+		graph.addApproximateDirectEdge("a", factory.createPoint(0., 0.), factory.createPoint(1., 0.));
+		graph.addApproximateDirectEdge("b", factory.createPoint(1., 0.), factory.createPoint(2., 0.));
+		graph.addApproximateDirectEdge("c", factory.createPoint(3., 0.), factory.createPoint(1., 0.));
+
+		final List<Node> junction = new ArrayList<>(graph.getNodesNear(factory.createPoint(1., 0.)));
+		Assertions.assertEquals(1, junction.size());
+		Assertions.assertEquals("a/to,b/from,c/to", junction.get(0).getID());
+		final Set<Integer> nodeIndexes = new HashSet<>();
+		for(final Node node : graph.nodes())
+			nodeIndexes.add(node.getIndex());
+		Assertions.assertEquals(Set.of(0, 1, 2, 3), nodeIndexes);
+		final Set<Integer> edgeIndexes = new HashSet<>();
+		for(final Edge edge : graph.edges())
+			edgeIndexes.add(edge.getIndex());
+		Assertions.assertEquals(Set.of(0, 1, 2), edgeIndexes);
+	}
+
 }
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+class NearNodeMergeGraphBuilderTest{
+
+	@Test
+	void should_build_the_same_graph_as_incremental_insertion(){
+		final GeometryFactory factory = new GeometryFactory(new GeoidalCalculator());
+		final Random random = new Random(42);
+		final List<Polyline> paths = new ArrayList<>();
+		for(int i = 0; i < 500; i ++){
+			//endpoints on a coarse lattice with a small jitter, so that many of them are merged
+			final double x1 = 12. + random.nextInt(20) * 0.001 + random.nextDouble() * 0.0002;
+			final double y1 = 45. + random.nextInt(20) * 0.001 + random.nextDouble() * 0.0002;
+			final double x2 = 12. + random.nextInt(20) * 0.001 + random.nextDouble() * 0.0002;
+			final double y2 = 45. + random.nextInt(20) * 0.001 + random.nextDouble() * 0.0002;
+			paths.add(factory.createPolyline(factory.createPoint(x1, y1), factory.createPoint(x2, y2)));
+		}
+
+		for(final double threshold : new double[]{0., 10., 30.}){
+			final NearNodeMergeGraph graph = new NearNodeMergeGraph(threshold)
+				.withTree();
+			final NearNodeMergeGraphBuilder builder = new NearNodeMergeGraphBuilder(threshold)
+				.withTree();
+			for(int i = 0; i < paths.size(); i ++){
+				graph.addApproximateDirectEdge(String.valueOf(i), paths.get(i));
+				graph.addApproximateDirectEdge(i + "-rev", paths.get(i).reverse());
+				builder.addApproximateDirectEdge(String.valueOf(i), paths.get(i));
+				builder.addApproximateDirectEdge(i + "-rev", paths.get(i).reverse());
+			}
+			final NearNodeMergeGraph bulkGraph = builder.build();
+
+			Assertions.assertEquals(extractNodes(graph), extractNodes(bulkGraph));
+			Assertions.assertEquals(extractEdges(graph), extractEdges(bulkGraph));
+		}
+	}
+
+
+	private static List<String> extractNodes(final Graph graph){
+		final List<String> nodes = new ArrayList<>();
+		for(final Node node : graph.nodes())
+			nodes.add(node.getID() + " " + node.getPoint());
+		return nodes;
+	}
+
+	private static List<String> extractEdges(final Graph graph){
+		final List<String> edges = new ArrayList<>();
+		for(final Edge edge : graph.edges())
+			edges.add(edge.getID() + " " + edge.getFrom().getPoint() + " " + edge.getTo().getPoint());
+		return edges;
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+
+class TiledGraphTest{
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new GeoidalCalculator());
+
+
+	@Test
+	void should_load_only_touched_tiles(@TempDir final Path directory) throws IOException{
+		TiledGraph.write(createSegments(), 1., directory);
+		final TiledGraph graph = TiledGraph.open(directory, FACTORY, 2);
+
+		final Map<String, Polyline> segments = graph.query(Envelope.of(12.4, 12.6, 45.4, 45.6));
+
+		Assertions.assertEquals(Set.of("0"), segments.keySet());
+		Assertions.assertEquals(1, graph.residentTiles());
+	}
+
+	@Test
+	void should_evict_least_recently_used_tiles(@TempDir final Path directory) throws IOException{
+		TiledGraph.write(createSegments(), 1., directory);
+		final TiledGraph graph = TiledGraph.open(directory, FACTORY, 2);
+
+		graph.query(Envelope.of(12.4, 12.6, 45.4, 45.6));
+		graph.query(Envelope.of(13.1, 13.2, 45.4, 45.6));
+		graph.query(Envelope.of(15.1, 15.2, 45.4, 45.6));
+		final Map<String, Polyline> segments = graph.query(Envelope.of(12.4, 12.6, 45.4, 45.6));
+
+		Assertions.assertEquals(Set.of("0"), segments.keySet());
+		Assertions.assertEquals(2, graph.residentTiles());
+	}
+
+	@Test
+	void should_stitch_nodes_at_tile_borders(@TempDir final Path directory) throws IOException{
+		TiledGraph.write(createSegments(), 1., directory);
+		final TiledGraph graph = TiledGraph.open(directory, FACTORY, 4);
+
+		final Graph extracted = graph.extractGraph(new Point[]{
+			FACTORY.createPoint(12.5, 45.5),
+			FACTORY.createPoint(13.5, 45.5)
+		}, 5_000., 0.);
+
+		Assertions.assertEquals(2, extracted.edges().size());
+		//the node at the tile border is shared by both segments
+		Assertions.assertEquals(3, extracted.nodes().size());
+		for(final Edge edge : extracted.edges())
+			if(edge.getID().equals("0"))
+				Assertions.assertEquals(List.of("1"), edge.getOutEdges().stream().map(Edge::getID).toList());
+	}
+
+	@Test
+	void should_load_only_tiles_along_the_trajectory(@TempDir final Path directory) throws IOException{
+		TiledGraph.write(createSegments(), 1., directory);
+		final TiledGraph graph = TiledGraph.open(directory, FACTORY, 4);
+
+		//the envelope of the trajectory covers the tile of segment 1, the trajectory does not
+		final Graph extracted = graph.extractGraph(new Point[]{
+			FACTORY.createPoint(12.5, 45.5),
+			FACTORY.createPoint(12.5, 47.5),
+			FACTORY.createPoint(14.5, 47.5)
+		}, 5_000., 0.);
+
+		Assertions.assertEquals(List.of("0"), extracted.edges().stream().map(Edge::getID).toList());
+		Assertions.assertEquals(1, graph.residentTiles());
+	}
+
+	@Test
+	void should_not_read_tiles_of_a_previous_write(@TempDir final Path directory) throws IOException{
+		TiledGraph.write(createSegments(), 1., directory);
+		final Map<String, Polyline> remainingSegments = createSegments();
+		remainingSegments.remove("2");
+		TiledGraph.write(remainingSegments, 1., directory);
+		final TiledGraph graph = TiledGraph.open(directory, FACTORY, 4);
+
+		final Map<String, Polyline> segments = graph.query(Envelope.of(12., 16., 45., 46.));
+
+		Assertions.assertEquals(Set.of("0", "1"), segments.keySet());
+		try(final Stream<Path> files = Files.list(directory)){
+			Assertions.assertEquals(3, files.count());
+		}
+	}
+
+	@Test
+	void should_load_tiles_concurrently(@TempDir final Path directory) throws Exception{
+		TiledGraph.write(createSegments(), 1., directory);
+		final TiledGraph graph = TiledGraph.open(directory, FACTORY, 4);
+		final int readers = 4;
+		final ExecutorService executor = Executors.newFixedThreadPool(readers);
+		try{
+			final List<Future<Map<String, Polyline>>> results = new ArrayList<>(readers);
+			for(int r = 0; r < readers; r ++)
+				results.add(executor.submit(() -> graph.query(Envelope.of(12., 16., 45., 46.))));
+
+			for(final Future<Map<String, Polyline>> result : results)
+				Assertions.assertEquals(Set.of("0", "1", "2"), result.get().keySet());
+			Assertions.assertEquals(3, graph.residentTiles());
+		}
+		finally{
+			executor.shutdownNow();
+		}
+	}
+
+
+	private static Map<String, Polyline> createSegments(){
+		final Map<String, Polyline> segments = new LinkedHashMap<>();
+		segments.put("0", FACTORY.createPolyline(FACTORY.createPoint(12.5, 45.5), FACTORY.createPoint(13., 45.5)));
+		segments.put("1", FACTORY.createPolyline(FACTORY.createPoint(13., 45.5), FACTORY.createPoint(13.5, 45.5)));
+		segments.put("2", FACTORY.createPolyline(FACTORY.createPoint(15.5, 45.5), FACTORY.createPoint(15.6, 45.5)));
+		return segments;
+	}
+
+}
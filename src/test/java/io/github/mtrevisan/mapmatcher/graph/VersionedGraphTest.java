@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.graph;
+
+import io.github.mtrevisan.mapmatcher.pathfinding.AStarPathFinder;
+import io.github.mtrevisan.mapmatcher.pathfinding.PathFindingStrategy;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.DistanceCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.TopologyCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+class VersionedGraphTest{
+
+	@Test
+	void should_keep_old_snapshot_unchanged(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final VersionedGraph graph = new VersionedGraph(0.);
+		final VersionedGraph.Snapshot first = graph.update(editor -> editor
+			.addEdge("0", factory.createPolyline(factory.createPoint(0., 0.), factory.createPoint(1., 0.)))
+			.addEdge("1", factory.createPolyline(factory.createPoint(1., 0.), factory.createPoint(2., 0.))));
+
+		final VersionedGraph.Snapshot second = graph.update(editor -> editor
+			.removeEdge("1")
+			.addEdge("2", factory.createPolyline(factory.createPoint(1., 0.), factory.createPoint(1., 1.))));
+
+		Assertions.assertEquals(1, first.getVersion());
+		Assertions.assertEquals(2, second.getVersion());
+		Assertions.assertSame(second, graph.current());
+		Assertions.assertEquals(Set.of("0", "1"), extractIDs(first.getGraph()));
+		Assertions.assertEquals(Set.of("0", "2"), extractIDs(second.getGraph()));
+		Assertions.assertSame(first.getSegments().get("0"), second.getSegments().get("0"));
+	}
+
+	@Test
+	void should_not_publish_without_changes(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final VersionedGraph graph = new VersionedGraph(0.);
+		final VersionedGraph.Snapshot first = graph.update(editor -> editor
+			.addEdge("0", factory.createPolyline(factory.createPoint(0., 0.), factory.createPoint(1., 0.))));
+
+		final VersionedGraph.Snapshot second = graph.update(editor -> editor
+			.removeEdge("missing"));
+
+		Assertions.assertSame(first, second);
+	}
+
+	@Test
+	void should_find_edges_near_in_published_snapshot(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final VersionedGraph graph = new VersionedGraph(0.);
+		graph.update(editor -> editor
+			.addEdge("0", factory.createPolyline(factory.createPoint(0., 0.), factory.createPoint(1., 0.)))
+			.addEdge("far", factory.createPolyline(factory.createPoint(10., 10.), factory.createPoint(11., 10.))));
+
+		final Set<String> ids = new HashSet<>();
+		for(final Edge edge : graph.current().getGraph().getEdgesNear(factory.createPoint(10.5, 10.), 0.1))
+			ids.add(edge.getID());
+
+		Assertions.assertEquals(Set.of("far"), ids);
+	}
+
+	@Test
+	void should_share_the_base_graph_between_small_updates(){
+		final TopologyCalculator topologyCalculator = new EuclideanCalculator();
+		final GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		final VersionedGraph graph = new VersionedGraph(0.);
+		final int segments = VersionedGraph.MIN_COMPACTION_SIZE + 6;
+		final VersionedGraph.Snapshot first = graph.update(editor -> {
+			for(int i = 0; i < segments; i ++)
+				editor.addEdge(Integer.toString(i), factory.createPolyline(factory.createPoint(i, 0.), factory.createPoint(i + 1, 0.)));
+		});
+
+		//close a segment, and open a detour around it
+		final VersionedGraph.Snapshot second = graph.update(editor -> editor
+			.removeEdge("3")
+			.addEdge("3a", factory.createPolyline(factory.createPoint(3., 0.), factory.createPoint(3.5, 1.)))
+			.addEdge("3b", factory.createPolyline(factory.createPoint(3.5, 1.), factory.createPoint(4., 0.))));
+
+		//the delta of the first version is too big, so it has been compacted
+		Assertions.assertEquals(0, first.getOverlaySize());
+		Assertions.assertEquals(segments, first.getBaseGraph().edgeCount());
+		Assertions.assertSame(first.getBaseGraph(), second.getBaseGraph());
+		Assertions.assertEquals(3, second.getOverlaySize());
+		Assertions.assertTrue(extractIDs(first.getGraph()).contains("3"));
+		Assertions.assertFalse(extractIDs(second.getGraph()).contains("3"));
+		final PathFindingStrategy pathFinder = new AStarPathFinder(new DistanceCalculator(topologyCalculator));
+		final Graph secondGraph = second.getGraph();
+		final Edge[] path = pathFinder.findPath(findNode(secondGraph, factory.createPoint(0., 0.)),
+			findNode(secondGraph, factory.createPoint(6., 0.)), secondGraph);
+		Assertions.assertEquals(List.of("0", "1", "2", "3a", "3b", "4", "5"), extractIDs(path));
+		//the path of an unchanged segment is shared
+		Assertions.assertSame(first.getBaseGraph().getEdge(0).getPath(), path[0].getPath());
+		//the views are sized from the base graph and the delta
+		Assertions.assertEquals(first.getBaseGraph().nodeCount() + 1, secondGraph.nodes().size());
+		Assertions.assertEquals(segments - 1 + 2, secondGraph.edges().size());
+		Assertions.assertEquals(secondGraph.edges().size(), extractIDs(secondGraph).size());
+	}
+
+	@Test
+	void should_compact_a_large_delta(){
+		final GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		final VersionedGraph graph = new VersionedGraph(0.);
+		final VersionedGraph.Snapshot first = graph.update(editor -> editor
+			.addEdge("0", factory.createPolyline(factory.createPoint(0., 0.), factory.createPoint(1., 0.))));
+
+		final VersionedGraph.Snapshot second = graph.update(editor -> {
+			for(int i = 1; i <= VersionedGraph.MIN_COMPACTION_SIZE; i ++)
+				editor.addEdge(Integer.toString(i), factory.createPolyline(factory.createPoint(i, 0.), factory.createPoint(i + 1, 0.)));
+		});
+
+		Assertions.assertEquals(1, first.getOverlaySize());
+		Assertions.assertNotSame(first.getBaseGraph(), second.getBaseGraph());
+		Assertions.assertEquals(0, second.getOverlaySize());
+		Assertions.assertEquals(VersionedGraph.MIN_COMPACTION_SIZE + 1, second.getBaseGraph().edgeCount());
+		Assertions.assertEquals(extractIDs(second.getBaseGraph()), extractIDs(second.getGraph()));
+	}
+
+
+	private static Node findNode(final Graph graph, final Point point){
+		for(final Node node : graph.nodes())
+			if(node.getPoint().equals(point))
+				return node;
+		return null;
+	}
+
+	private static List<String> extractIDs(final Edge[] path){
+		final List<String> ids = new ArrayList<>(path.length);
+		for(final Edge edge : path)
+			ids.add(edge.getID());
+		return ids;
+	}
+
+	private static Set<String> extractIDs(final Graph graph){
+		final Set<String> ids = new HashSet<>();
+		for(final Edge edge : graph.edges())
+			ids.add(edge.getID());
+		return ids;
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+class DynamicHPRtreeTest{
+
+	@Test
+	void insert_after_query(){
+		DynamicHPRtree<Integer> tree = new DynamicHPRtree<>(4, 1_000, Runnable::run);
+		for(int i = 0; i < 10; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+		tree.rebuild();
+
+		Assertions.assertEquals(Set.of(4, 5), new HashSet<>(tree.query(Envelope.of(5., 5., 5., 5.))));
+
+		tree.insert(Envelope.of(5., 5., 5., 5.), 100);
+
+		Assertions.assertEquals(Set.of(4, 5, 100), new HashSet<>(tree.query(Envelope.of(5., 5., 5., 5.))));
+		Assertions.assertEquals(11, tree.size());
+		Assertions.assertEquals(1, tree.pendingUpdates());
+	}
+
+	@Test
+	void remove_from_base_and_delta(){
+		DynamicHPRtree<Integer> tree = new DynamicHPRtree<>(4, 1_000, Runnable::run);
+		for(int i = 0; i < 10; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+		tree.rebuild();
+		tree.insert(Envelope.of(5., 5., 5., 5.), 100);
+
+		Assertions.assertTrue(tree.remove(Envelope.of(5., 6., 5., 6.), 5));
+		Assertions.assertTrue(tree.remove(Envelope.of(5., 5., 5., 5.), 100));
+		Assertions.assertFalse(tree.remove(Envelope.of(5., 5., 5., 5.), 100));
+
+		Assertions.assertEquals(Set.of(4), new HashSet<>(tree.query(Envelope.of(5., 5., 5., 5.))));
+		Assertions.assertEquals(9, tree.size());
+
+		tree.rebuild();
+
+		Assertions.assertEquals(Set.of(4), new HashSet<>(tree.query(Envelope.of(5., 5., 5., 5.))));
+		Assertions.assertEquals(0, tree.pendingUpdates());
+	}
+
+	@Test
+	void rebuild_when_over_threshold(){
+		DynamicHPRtree<Integer> tree = new DynamicHPRtree<>(4, 8, Runnable::run);
+		for(int i = 0; i < 100; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+
+		Assertions.assertTrue(tree.pendingUpdates() < 8);
+		Assertions.assertEquals(100, tree.query(Envelope.of(0., 100., 0., 100.)).size());
+	}
+
+	@Test
+	void rebuild_inline_when_the_executor_rejects(){
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		DynamicHPRtree<Integer> tree = new DynamicHPRtree<>(4, 8, executor);
+		for(int i = 0; i < 100; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+
+		Assertions.assertTrue(tree.pendingUpdates() < 8);
+		Assertions.assertEquals(100, tree.query(Envelope.of(0., 100., 0., 100.)).size());
+	}
+
+	@Test
+	void keep_updates_made_during_background_rebuilds() throws InterruptedException{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		DynamicHPRtree<Integer> tree = new DynamicHPRtree<>(8, 16, executor);
+		Set<Integer> live = new HashSet<>();
+		for(int i = 0; i < 5_000; i ++){
+			tree.insert(Envelope.of(i, i + 1, 0., 1.), i);
+			live.add(i);
+			if(i % 3 == 0){
+				Assertions.assertTrue(tree.remove(Envelope.of(i / 2, i / 2 + 1, 0., 1.), i / 2));
+				live.remove(i / 2);
+			}
+		}
+		executor.shutdown();
+		Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		Assertions.assertEquals(live, new HashSet<>(tree.query(Envelope.of(0., 5_000., 0., 1.))));
+		Assertions.assertEquals(live.size(), tree.size());
+	}
+
+	@Test
+	void match_a_static_tree(){
+		Random random = new Random(42);
+		DynamicHPRtree<Integer> tree = new DynamicHPRtree<>(8, 50, Runnable::run);
+		List<Envelope> envelopes = new ArrayList<>();
+		Set<Integer> live = new HashSet<>();
+		for(int i = 0; i < 2_000; i ++){
+			if(!live.isEmpty() && random.nextInt(3) == 0){
+				int item = live.iterator().next();
+				Assertions.assertTrue(tree.remove(envelopes.get(item), item));
+				live.remove(item);
+			}
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			envelopes.add(Envelope.of(x, x + 1., y, y + 1.));
+			tree.insert(envelopes.get(i), i);
+			live.add(i);
+		}
+
+		HPRtree<Integer> expected = new HPRtree<>();
+		for(int item : live)
+			expected.insert(envelopes.get(item), item);
+		for(int q = 0; q < 100; q ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			Envelope search = Envelope.of(x, x + 5., y, y + 5.);
+			Assertions.assertEquals(new HashSet<>(expected.query(search)), new HashSet<>(tree.query(search)));
+		}
+		Assertions.assertEquals(live.size(), tree.size());
+	}
+
+}
@@ -24,6 +24,8 @@
  */
 package io.github.mtrevisan.mapmatcher.helpers.hprtree;
 
+import io.github.mtrevisan.mapmatcher.TestPathHelper;
+import io.github.mtrevisan.mapmatcher.helpers.index.NearItem;
 import io.github.mtrevisan.mapmatcher.spatial.Envelope;
 import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
 import io.github.mtrevisan.mapmatcher.spatial.Point;
@@ -48,7 +50,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 class HPRTreeTest{
@@ -80,7 +88,7 @@ out skel qt;
 	public static void main(String[] args) throws IOException{
 		//extract highways
 		final File roadsFile = new File(FILENAME_ROADS_RAW);
-		final List<Polyline> roads = extractPolylines(roadsFile);
+		final List<Polyline> roads = TestPathHelper.readPolylines(roadsFile.getPath(), FACTORY);
 
 		//extract toll booths
 		final File tollBoothsFile = new File(FILENAME_TOLL_BOOTHS_RAW);
@@ -99,41 +107,6 @@ out skel qt;
 		writePolylines(reducedRoads, outputRoadsFile);
 	}
 
-	private static List<Polyline> extractPolylines(final File file) throws IOException{
-		final List<Polyline> polylines = new ArrayList<>();
-		try(final BufferedReader br = new BufferedReader(new FileReader(file))){
-			String readLine;
-			while((readLine = br.readLine()) != null)
-				if(!readLine.isEmpty())
-					polylines.add(parsePolyline(readLine));
-		}
-		return polylines;
-	}
-
-	private static Polyline parsePolyline(final String line){
-		if(!(line.startsWith("LINESTRING (") || line.startsWith("LINESTRING(")) && !line.endsWith(")"))
-			throw new IllegalArgumentException("Unrecognized element, cannot parse line: " + line);
-
-		List<Point> points = new ArrayList<>(0);
-		int startIndex = line.indexOf('(') + 1;
-		while(true){
-			int separatorIndex = line.indexOf(" ", startIndex + 1);
-			if(separatorIndex < 0)
-				break;
-
-			int endIndex = line.indexOf(", ", separatorIndex + 1);
-			if(endIndex < 0)
-				endIndex = line.indexOf(')', separatorIndex + 1);
-			points.add(FACTORY.createPoint(
-				Double.parseDouble(line.substring(startIndex, separatorIndex)),
-				Double.parseDouble(line.substring(separatorIndex + 1, endIndex))
-			));
-			startIndex = endIndex + 2;
-		}
-
-		return FACTORY.createPolyline(points.toArray(Point[]::new));
-	}
-
 	private static Set<Point> extractPoints(final File file){
 		final List<Point> lines = new ArrayList<>();
 		try(final BufferedReader br = new BufferedReader(new FileReader(file))){
@@ -243,7 +216,7 @@ out skel qt;
 	@Test
 	void query_tree() throws IOException{
 		HPRtree<Polyline> tree = new HPRtree<>();
-		List<Polyline> highways = extractPolylines(new File(FILENAME_ROADS_SIMPLIFIED));
+		List<Polyline> highways = TestPathHelper.readPolylines(FILENAME_ROADS_SIMPLIFIED, FACTORY);
 		for(Polyline polyline : highways){
 			Envelope geoBoundingBox = polyline.getBoundingBox();
 			tree.insert(geoBoundingBox, polyline);
@@ -342,6 +315,223 @@ out skel qt;
 		queryGrid(100, new HPRtree<>(2));
 	}
 
+	@Test
+	void query_with_visitor(){
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		for(int i = 0; i < 100; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+
+		List<Integer> visited = new ArrayList<>();
+		boolean completed = tree.query(0., 0., 10., 10., (item, envelope) -> {
+			Assertions.assertEquals(Envelope.of(item, item + 1, item, item + 1), envelope);
+			visited.add(item);
+			return true;
+		});
+
+		Assertions.assertTrue(completed);
+		Assertions.assertEquals(new HashSet<>(tree.query(Envelope.of(0., 10., 0., 10.))), new HashSet<>(visited));
+		Assertions.assertEquals(11, visited.size());
+	}
+
+	@Test
+	void query_with_bounds_visitor(){
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		for(int i = 0; i < 100; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+
+		List<Integer> visited = new ArrayList<>();
+		boolean completed = tree.query(0., 0., 10., 10., (item, minX, minY, maxX, maxY) -> {
+			Assertions.assertEquals(Envelope.of(item, item + 1, item, item + 1), Envelope.of(minX, maxX, minY, maxY));
+			visited.add(item);
+			return (visited.size() < 5);
+		});
+
+		Assertions.assertFalse(completed);
+		Assertions.assertEquals(5, visited.size());
+	}
+
+	@Test
+	void query_with_early_termination(){
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		for(int i = 0; i < 100; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+
+		List<Integer> visited = new ArrayList<>();
+		boolean completed = tree.query(Envelope.of(0., 100., 0., 100.), (item, envelope) -> {
+			visited.add(item);
+			return (visited.size() < 3);
+		});
+
+		Assertions.assertFalse(completed);
+		Assertions.assertEquals(3, visited.size());
+		Assertions.assertTrue(tree.query(200., 200., 300., 300., (item, envelope) -> false));
+	}
+
+	@Test
+	void batch_query(){
+		Random random = new Random(7);
+		for(HPRtree<Integer> tree : List.of(new HPRtree<Integer>(), new HPRtree<Integer>(2), new HPRtree<Integer>(2_000))){
+			for(int i = 0; i < 1_000; i ++){
+				double x = random.nextDouble() * 100.;
+				double y = random.nextDouble() * 100.;
+				tree.insert(Envelope.of(x, x + random.nextDouble(), y, y + random.nextDouble()), i);
+			}
+			Envelope[] searchEnvelopes = new Envelope[50];
+			for(int i = 0; i < searchEnvelopes.length; i ++){
+				double x = random.nextDouble() * 120. - 10.;
+				double y = random.nextDouble() * 120. - 10.;
+				searchEnvelopes[i] = (i % 10 == 0? null: Envelope.of(x, x + 5., y, y + 5.));
+			}
+
+			List<Set<Integer>> found = new ArrayList<>();
+			for(int i = 0; i < searchEnvelopes.length; i ++)
+				found.add(new HashSet<>());
+			boolean completed = tree.query(searchEnvelopes, (item, envelope, searchIndex) -> found.get(searchIndex).add(item));
+
+			Assertions.assertTrue(completed);
+			for(int i = 0; i < searchEnvelopes.length; i ++)
+				Assertions.assertEquals((searchEnvelopes[i] != null? new HashSet<>(tree.query(searchEnvelopes[i])): Set.of()),
+					found.get(i));
+		}
+	}
+
+	@Test
+	void batch_query_with_early_termination(){
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		for(int i = 0; i < 100; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+
+		List<Integer> visited = new ArrayList<>();
+		boolean completed = tree.query(new Envelope[]{Envelope.of(0., 50., 0., 50.), Envelope.of(40., 100., 40., 100.)},
+			(item, envelope, searchIndex) -> {
+				visited.add(item);
+				return (visited.size() < 3);
+			});
+
+		Assertions.assertFalse(completed);
+		Assertions.assertEquals(3, visited.size());
+	}
+
+	@Test
+	void concurrent_queries() throws Exception{
+		Random random = new Random(11);
+		List<Envelope> envelopes = new ArrayList<>();
+		HPRtree<Integer> tree = new HPRtree<>();
+		for(int i = 0; i < 20_000; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			Envelope envelope = Envelope.of(x, x + random.nextDouble(), y, y + random.nextDouble());
+			envelopes.add(envelope);
+			tree.insert(envelope, i);
+		}
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			//let all the threads issue their first query (that builds the tree) at the same time
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Integer>> results = new ArrayList<>();
+			for(int t = 0; t < threads; t ++){
+				long seed = t;
+				results.add(executor.submit(() -> {
+					Random queryRandom = new Random(seed);
+					start.await();
+					int checked = 0;
+					for(int q = 0; q < 200; q ++){
+						double x = queryRandom.nextDouble() * 100.;
+						double y = queryRandom.nextDouble() * 100.;
+						Envelope searchEnvelope = Envelope.of(x, x + 2., y, y + 2.);
+						Set<Integer> expected = new HashSet<>();
+						for(int i = 0; i < envelopes.size(); i ++)
+							if(envelopes.get(i).intersects(searchEnvelope))
+								expected.add(i);
+
+						Assertions.assertEquals(expected, new HashSet<>(tree.query(searchEnvelope)));
+						checked ++;
+					}
+					return checked;
+				}));
+			}
+			start.countDown();
+
+			for(Future<Integer> result : results)
+				Assertions.assertEquals(200, result.get(60, TimeUnit.SECONDS));
+		}
+		finally{
+			executor.shutdownNow();
+		}
+		Assertions.assertEquals(20_000, tree.size());
+		Assertions.assertThrows(IllegalStateException.class, () -> tree.insert(Envelope.of(0., 1., 0., 1.), -1));
+	}
+
+	@Test
+	void nearest(){
+		GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		Random random = new Random(42);
+		List<Polyline> geometries = new ArrayList<>();
+		for(int i = 0; i < 1_000; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			geometries.add(factory.createPolyline(factory.createPoint(x, y),
+				factory.createPoint(x + random.nextDouble(), y + random.nextDouble())));
+		}
+		for(HPRtree<Polyline> tree : List.of(new HPRtree<Polyline>(), new HPRtree<Polyline>(2), new HPRtree<Polyline>(2_000))){
+			for(Polyline geometry : geometries)
+				tree.insert(geometry.getBoundingBox(), geometry);
+
+			for(int q = 0; q < 50; q ++){
+				Point point = factory.createPoint(random.nextDouble() * 120. - 10., random.nextDouble() * 120. - 10.);
+				List<Polyline> expected = new ArrayList<>(geometries);
+				expected.sort(Comparator.comparingDouble(point::distance));
+
+				Assertions.assertEquals(expected.subList(0, 5), tree.nearest(point, 5, Point::distance));
+				double maxDistance = point.distance(expected.get(2));
+				Assertions.assertEquals(expected.subList(0, 3), tree.nearest(point, 5, maxDistance, Point::distance));
+			}
+		}
+	}
+
+	@Test
+	void within(){
+		GeometryFactory euclideanFactory = new GeometryFactory(new EuclideanCalculator());
+		Random random = new Random(42);
+		for(GeometryFactory factory : List.of(euclideanFactory, FACTORY)){
+			List<Polyline> geometries = new ArrayList<>();
+			for(int i = 0; i < 1_000; i ++){
+				double x = 12. + random.nextDouble();
+				double y = 45. + random.nextDouble();
+				geometries.add(factory.createPolyline(factory.createPoint(x, y),
+					factory.createPoint(x + random.nextDouble() * 0.01, y + random.nextDouble() * 0.01)));
+			}
+			HPRtree<Polyline> tree = new HPRtree<>();
+			for(Polyline geometry : geometries)
+				tree.insert(geometry.getBoundingBox(), geometry);
+
+			for(int q = 0; q < 50; q ++){
+				Point point = factory.createPoint(12. + random.nextDouble(), 45. + random.nextDouble());
+				double radius = (factory == FACTORY? 5_000.: 0.05);
+				List<Polyline> expected = new ArrayList<>();
+				for(Polyline geometry : geometries)
+					if(point.distance(geometry) <= radius)
+						expected.add(geometry);
+				expected.sort(Comparator.comparingDouble(point::distance));
+
+				List<NearItem<Polyline>> found = tree.within(point, radius, Point::distance);
+
+				Assertions.assertEquals(expected, found.stream().map(NearItem::getItem).toList());
+				for(NearItem<Polyline> item : found)
+					Assertions.assertEquals(point.distance(item.getItem()), item.getDistance());
+			}
+		}
+	}
+
+	@Test
+	void nearest_empty_tree(){
+		HPRtree<Polyline> tree = new HPRtree<>();
+
+		Assertions.assertTrue(tree.nearest(FACTORY.createPoint(12., 45.), 3, Point::distance).isEmpty());
+	}
+
 
 	private void queryGrid(int size, HPRtree<Integer> tree){
 		for(int i = 0; i < size; i ++)
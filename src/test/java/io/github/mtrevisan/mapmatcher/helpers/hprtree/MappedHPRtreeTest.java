@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.hprtree;
+
+import io.github.mtrevisan.mapmatcher.helpers.index.Corridor;
+import io.github.mtrevisan.mapmatcher.helpers.index.NearItem;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleBiFunction;
+
+
+class MappedHPRtreeTest{
+
+	@Test
+	void should_answer_as_the_written_tree(@TempDir final Path directory) throws IOException{
+		Random random = new Random(0);
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		for(int i = 0; i < 1_000; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			tree.insert(Envelope.of(x, x + random.nextDouble(), y, y + random.nextDouble()), i);
+		}
+		Path file = directory.resolve("tree.idx");
+		MappedHPRtree.write(tree, file, Integer::intValue);
+
+		MappedHPRtree<Integer> mapped = MappedHPRtree.open(file, Integer::valueOf);
+
+		Assertions.assertEquals(1_000, mapped.size());
+		for(int i = 0; i < 100; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			Envelope searchEnvelope = Envelope.of(x, x + 5., y, y + 5.);
+			Assertions.assertEquals(new HashSet<>(tree.query(searchEnvelope)), new HashSet<>(mapped.query(searchEnvelope)));
+		}
+		List<Integer> visited = new ArrayList<>();
+		Assertions.assertFalse(mapped.query(0., 0., 100., 100., (item, envelope) -> visited.add(item) && visited.size() < 3));
+		Assertions.assertEquals(3, visited.size());
+	}
+
+	@Test
+	void should_answer_the_spatial_queries_as_the_written_tree(@TempDir final Path directory) throws IOException{
+		GeometryFactory factory = new GeometryFactory(new EuclideanCalculator());
+		Random random = new Random(2);
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		List<Point> points = new ArrayList<>();
+		for(int i = 0; i < 1_000; i ++){
+			Point point = factory.createPoint(random.nextDouble() * 100., random.nextDouble() * 100.);
+			points.add(point);
+			tree.insert(Envelope.of(point), i);
+		}
+		Path file = directory.resolve("tree.idx");
+		MappedHPRtree.write(tree, file, Integer::intValue);
+		ToDoubleBiFunction<Point, Integer> distance = (point, item) -> point.distance(points.get(item));
+
+		MappedHPRtree<Integer> mapped = MappedHPRtree.open(file, Integer::valueOf);
+
+		for(int i = 0; i < 30; i ++){
+			Point point = factory.createPoint(random.nextDouble() * 100., random.nextDouble() * 100.);
+			Assertions.assertEquals(tree.nearest(point, 5, distance), mapped.nearest(point, 5, distance));
+			Assertions.assertEquals(tree.within(point, 5., distance).stream().map(NearItem::getItem).toList(),
+				mapped.within(point, 5., distance).stream().map(NearItem::getItem).toList());
+		}
+		Corridor corridor = Corridor.of(new Point[]{factory.createPoint(10., 10.), factory.createPoint(50., 30.),
+			factory.createPoint(90., 80.)}, 3.);
+		Assertions.assertEquals(new HashSet<>(tree.query(corridor)), new HashSet<>(mapped.query(corridor)));
+		Assertions.assertThrows(IllegalStateException.class, () -> mapped.insert(Envelope.of(0., 1., 0., 1.), 0));
+	}
+
+	@Test
+	void should_answer_as_a_small_tree(@TempDir final Path directory) throws IOException{
+		HPRtree<Integer> tree = new HPRtree<>();
+		for(int i = 0; i < 10; i ++)
+			tree.insert(Envelope.of(i, i + 1, i, i + 1), i);
+		Path file = directory.resolve("tree.idx");
+		MappedHPRtree.write(tree, file, Integer::intValue);
+
+		MappedHPRtree<Integer> mapped = MappedHPRtree.open(file, Integer::valueOf);
+
+		Assertions.assertEquals(Set.of(4, 5), new HashSet<>(mapped.query(Envelope.of(5., 5., 5., 5.))));
+		Assertions.assertTrue(mapped.query(Envelope.of(20., 21., 20., 21.)).isEmpty());
+	}
+
+	@Test
+	void should_answer_as_an_empty_tree(@TempDir final Path directory) throws IOException{
+		Path file = directory.resolve("tree.idx");
+		MappedHPRtree.write(new HPRtree<Integer>(), file, Integer::intValue);
+
+		MappedHPRtree<Integer> mapped = MappedHPRtree.open(file, Integer::valueOf);
+
+		Assertions.assertEquals(0, mapped.size());
+		Assertions.assertTrue(mapped.query(Envelope.of(0., 1., 0., 1.)).isEmpty());
+	}
+
+	@Test
+	void should_map_an_index_embedded_in_a_buffer() throws IOException{
+		Random random = new Random(1);
+		HPRtree<Integer> tree = new HPRtree<>(4);
+		for(int i = 0; i < 500; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			tree.insert(Envelope.of(x, x + random.nextDouble(), y, y + random.nextDouble()), i);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream output = new DataOutputStream(bytes)){
+			output.writeLong(42L);
+			MappedHPRtree.of(tree, Integer::intValue, Integer::valueOf)
+				.write(output);
+			output.writeLong(43L);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		buffer.position(Long.BYTES);
+
+		MappedHPRtree<Integer> mapped = MappedHPRtree.map(buffer, Integer::valueOf);
+
+		Assertions.assertEquals(43L, buffer.getLong());
+		Assertions.assertEquals(500, mapped.size());
+		for(int i = 0; i < 100; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			Envelope searchEnvelope = Envelope.of(x, x + 5., y, y + 5.);
+			Assertions.assertEquals(new HashSet<>(tree.query(searchEnvelope)), new HashSet<>(mapped.query(searchEnvelope)));
+		}
+	}
+
+	@Test
+	void should_reject_a_file_that_is_not_an_index(@TempDir final Path directory) throws IOException{
+		Path file = directory.resolve("tree.idx");
+		Files.write(file, new byte[64]);
+
+		Assertions.assertThrows(IOException.class, () -> MappedHPRtree.open(file, Integer::valueOf));
+	}
+
+}
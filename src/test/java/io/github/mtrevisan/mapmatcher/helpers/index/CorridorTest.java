@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+class CorridorTest{
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new EuclideanCalculator());
+
+
+	@Test
+	void diagonal_segment(){
+		Corridor corridor = Corridor.of(new Point[]{FACTORY.createPoint(0., 0.), FACTORY.createPoint(10., 10.)}, 1.);
+
+		Assertions.assertEquals(1, corridor.size());
+		//crossing the segment
+		Assertions.assertTrue(corridor.intersects(4., 6., 6., 7.));
+		//near the segment
+		Assertions.assertTrue(corridor.intersects(5.6, 4., 6., 4.5));
+		//beyond the end point, within the buffer
+		Assertions.assertTrue(corridor.intersects(10.5, 10.5, 11., 11.));
+		//in the corners of the envelope of the capsule, far from the segment
+		Assertions.assertTrue(corridor.getEnvelope().intersects(FACTORY.createPoint(9., 1.)));
+		Assertions.assertFalse(corridor.intersects(8., 0., 9., 1.));
+		Assertions.assertFalse(corridor.intersects(0., 8., 2., 9.));
+		//beyond the end point, outside the buffer
+		Assertions.assertFalse(corridor.intersects(10.8, 10.8, 11., 11.));
+	}
+
+	@Test
+	void single_point(){
+		Corridor corridor = Corridor.of(new Point[]{null, FACTORY.createPoint(0., 0.), null}, 1.);
+
+		Assertions.assertEquals(1, corridor.size());
+		Assertions.assertTrue(corridor.intersects(0.5, 0.5, 2., 2.));
+		Assertions.assertFalse(corridor.intersects(0.8, 0.8, 2., 2.));
+
+		Assertions.assertEquals(0, Corridor.of(new Point[0], 1.).size());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> Corridor.of(new Point[0], 0.));
+	}
+
+	@Test
+	void geoid(){
+		GeometryFactory factory = new GeometryFactory(new GeoidalCalculator());
+		Point start = factory.createPoint(12., 45.);
+		Point end = factory.createPoint(12.1, 45.1);
+		Corridor corridor = Corridor.of(factory.createPolyline(start, end), 500.);
+
+		//points at less than 500 m from the trajectory, on both sides
+		Point middle = factory.createPoint(12.05, 45.05);
+		for(double bearing : new double[]{135., 315.}){
+			Point near = middle.destination(bearing, 450.);
+			Assertions.assertTrue(corridor.intersects(near.getX(), near.getY(), near.getX(), near.getY()));
+			Point far = middle.destination(bearing, 1_000.);
+			Assertions.assertFalse(corridor.intersects(far.getX(), far.getY(), far.getX(), far.getY()));
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.TestPathHelper;
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Measures the heap retained by a built {@link HPRtree}, its build time, and the time of box queries, on the segments of the Italian
+ * highways (each indexed with an <code>Integer</code> payload).
+ * <p>
+ * The retained heap is the difference of the used heap (after a few garbage collections) before and after building the tree, so run
+ * it on an otherwise idle JVM; the last round is reported, the previous ones warm up the JIT.
+ * </p>
+ */
+class HPRtreeMemoryBenchmark{
+
+	private static final String FILENAME_ROADS_SIMPLIFIED = "src/test/resources/it.highways.simplified.5.wkt";
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new EuclideanCalculator());
+
+	private static final int QUERIES = 200_000;
+	private static final double QUERY_HALF_SIZE = 0.005;
+	private static final int ROUNDS = 4;
+
+
+	public static void main(final String[] args) throws IOException{
+		final List<Envelope> envelopes = extractSegmentEnvelopes(TestPathHelper.readPolylines(FILENAME_ROADS_SIMPLIFIED, FACTORY));
+		final double[][] queries = createQueries(new Random(1), envelopes);
+
+		long[] timings = null;
+		for(int round = 0; round < ROUNDS; round ++)
+			timings = measure(envelopes, queries);
+
+		System.out.printf("items %d, build %.1f ms, retained %.1f MB (%.0f B/item), %d queries %.1f ms (%d hits)%n", envelopes.size(),
+			timings[0] / 1.e6, timings[1] / 1048576., timings[1] / (double)envelopes.size(), queries.length, timings[2] / 1.e6, timings[3]);
+	}
+
+	private static long[] measure(final List<Envelope> envelopes, final double[][] queries){
+		final long[] timings = new long[4];
+
+		final long usedBefore = usedHeap();
+		long start = System.nanoTime();
+		final HPRtree<Integer> tree = new HPRtree<>();
+		for(int i = 0; i < envelopes.size(); i ++){
+			//NOTE: insert a copy, so the envelopes retained by the tree are accounted for
+			final Envelope envelope = envelopes.get(i);
+			tree.insert(Envelope.of(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY()), i);
+		}
+		tree.build();
+		timings[0] = System.nanoTime() - start;
+		timings[1] = usedHeap() - usedBefore;
+
+		final long[] hits = new long[1];
+		start = System.nanoTime();
+		for(final double[] query : queries)
+			tree.query(query[0], query[1], query[2], query[3], (item, envelope) -> ++ hits[0] > 0);
+		timings[2] = System.nanoTime() - start;
+		timings[3] = hits[0];
+
+		return timings;
+	}
+
+	private static long usedHeap(){
+		final Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i ++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static double[][] createQueries(final Random random, final List<Envelope> envelopes){
+		final double[][] queries = new double[QUERIES][];
+		for(int i = 0; i < QUERIES; i ++){
+			final Envelope envelope = envelopes.get(random.nextInt(envelopes.size()));
+			final double x = envelope.getMinX();
+			final double y = envelope.getMinY();
+			queries[i] = new double[]{x - QUERY_HALF_SIZE, y - QUERY_HALF_SIZE, x + QUERY_HALF_SIZE, y + QUERY_HALF_SIZE};
+		}
+		return queries;
+	}
+
+	private static List<Envelope> extractSegmentEnvelopes(final List<Polyline> polylines){
+		final List<Envelope> envelopes = new ArrayList<>();
+		for(final Polyline polyline : polylines){
+			final Point[] points = polyline.getPoints();
+			for(int i = 1; i < points.length; i ++)
+				envelopes.add(Envelope.of(points[i - 1], points[i]));
+		}
+		return envelopes;
+	}
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+
+class PolylineChunkTest{
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new EuclideanCalculator());
+
+
+	@Test
+	void split(){
+		Polyline polyline = createStaircase(7);
+
+		List<PolylineChunk<String>> chunks = PolylineChunk.split("road", polyline, 3);
+
+		Assertions.assertEquals(3, chunks.size());
+		Assertions.assertEquals(0, chunks.get(0).getSegmentOffset());
+		Assertions.assertEquals(3, chunks.get(0).getSegmentCount());
+		Assertions.assertEquals(3, chunks.get(1).getSegmentOffset());
+		Assertions.assertEquals(3, chunks.get(1).getSegmentCount());
+		Assertions.assertEquals(6, chunks.get(2).getSegmentOffset());
+		Assertions.assertEquals(1, chunks.get(2).getSegmentCount());
+		//consecutive chunks share their boundary point
+		Assertions.assertEquals(chunks.get(0).getPolyline().getEndPoint(), chunks.get(1).getPolyline().getStartPoint());
+		Assertions.assertEquals(polyline.getEndPoint(), chunks.get(2).getPolyline().getEndPoint());
+		for(PolylineChunk<String> chunk : chunks)
+			Assertions.assertEquals("road", chunk.getItem());
+
+		Assertions.assertSame(polyline, PolylineChunk.split("road", polyline, 10).get(0).getPolyline());
+		Assertions.assertEquals(1, PolylineChunk.split("point", FACTORY.createPolyline(FACTORY.createPoint(1., 1.)), 2).size());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> PolylineChunk.split("road", polyline, 0));
+	}
+
+	@Test
+	void distance(){
+		Polyline polyline = createStaircase(20);
+		List<PolylineChunk<Polyline>> chunks = PolylineChunk.split(polyline, polyline, 4);
+
+		for(Point point : new Point[]{FACTORY.createPoint(3.2, 5.7), FACTORY.createPoint(-2., 0.5), FACTORY.createPoint(15., 4.)}){
+			double minDistance = Double.POSITIVE_INFINITY;
+			for(PolylineChunk<Polyline> chunk : chunks)
+				minDistance = Math.min(minDistance, chunk.distance(point));
+
+			Assertions.assertEquals(point.distance(polyline), minDistance, 1.e-12);
+		}
+	}
+
+	@Test
+	void query_touches_only_nearby_segments(){
+		Polyline polyline = createStaircase(100);
+		SpatialIndex<PolylineChunk<Polyline>> index = new HPRtree<>();
+		PolylineChunk.insert(index, polyline, polyline, 1);
+
+		Assertions.assertEquals(100, index.size());
+		//the whole polyline would be returned, only the two segments around (10, 10) are
+		List<PolylineChunk<Polyline>> chunks = index.query(Envelope.of(FACTORY.createPoint(10., 10.)));
+		Assertions.assertEquals(2, chunks.size());
+		for(PolylineChunk<Polyline> chunk : chunks){
+			Assertions.assertSame(polyline, chunk.getItem());
+			Assertions.assertTrue(chunk.getSegmentOffset() == 19 || chunk.getSegmentOffset() == 20);
+		}
+	}
+
+
+	/** Creates a staircase that alternates horizontal and vertical unit segments, starting at the origin. */
+	private static Polyline createStaircase(final int segments){
+		Point[] points = new Point[segments + 1];
+		for(int i = 0; i <= segments; i ++)
+			points[i] = FACTORY.createPoint((i + 1) / 2, i / 2);
+		return FACTORY.createPolyline(points);
+	}
+
+}
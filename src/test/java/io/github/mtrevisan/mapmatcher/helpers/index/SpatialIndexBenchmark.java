@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.TestPathHelper;
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+
+/**
+ * Compares the spatial indexes on a skewed region (the segments of the Italian highways) and on a dense one (short segments evenly
+ * spread over a city-sized area), to pick the index that suits a region.
+ * <p>
+ * The coordinates are kept planar, so the timings measure the indexes and not the geodetic distances.
+ * </p>
+ */
+class SpatialIndexBenchmark{
+
+	private static final String FILENAME_ROADS_SIMPLIFIED = "src/test/resources/it.highways.simplified.5.wkt";
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new EuclideanCalculator());
+
+	private static final int QUERIES = 100_000;
+	private static final double QUERY_HALF_SIZE = 0.001;
+	private static final int ROUNDS = 3;
+
+
+	public static void main(final String[] args) throws IOException{
+		final Map<String, Supplier<SpatialIndex<Polyline>>> indexes = new LinkedHashMap<>();
+		indexes.put("HPRtree", HPRtree::new);
+		indexes.put("STRtree", STRtree::new);
+		indexes.put("GridIndex", GridIndex::new);
+
+		final Map<String, List<Polyline>> regions = new LinkedHashMap<>();
+		regions.put("skewed (highways)", extractSegments(TestPathHelper.readPolylines(FILENAME_ROADS_SIMPLIFIED, FACTORY)));
+		regions.put("dense (city)", createCity(new Random(1), 100_000));
+
+		System.out.printf("%-18s %-10s %10s %12s %12s %12s%n", "region", "index", "build [ms]", "query [ms]", "nearest [ms]",
+			"within [ms]");
+		for(final Map.Entry<String, List<Polyline>> region : regions.entrySet()){
+			final List<Polyline> segments = region.getValue();
+			final Point[] points = createQueryPoints(new Random(2), segments);
+			for(final Map.Entry<String, Supplier<SpatialIndex<Polyline>>> index : indexes.entrySet()){
+				//the last round is reported, the previous ones warm up the JIT
+				long[] timings = null;
+				for(int round = 0; round < ROUNDS; round ++)
+					timings = measure(index.getValue(), segments, points);
+
+				System.out.printf("%-18s %-10s %10.1f %12.1f %12.1f %12.1f%n", region.getKey(), index.getKey(), timings[0] / 1.e6,
+					timings[1] / 1.e6, timings[2] / 1.e6, timings[3] / 1.e6);
+			}
+		}
+	}
+
+	private static long[] measure(final Supplier<SpatialIndex<Polyline>> supplier, final List<Polyline> segments, final Point[] points){
+		final long[] timings = new long[4];
+
+		long start = System.nanoTime();
+		final SpatialIndex<Polyline> index = supplier.get();
+		for(final Polyline segment : segments)
+			index.insert(segment.getBoundingBox(), segment);
+		index.build();
+		timings[0] = System.nanoTime() - start;
+
+		final long[] hits = new long[1];
+		start = System.nanoTime();
+		for(final Point point : points)
+			index.query(point.getX() - QUERY_HALF_SIZE, point.getY() - QUERY_HALF_SIZE, point.getX() + QUERY_HALF_SIZE,
+				point.getY() + QUERY_HALF_SIZE, (item, envelope) -> ++ hits[0] > 0);
+		timings[1] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int i = 0; i < points.length; i += 10)
+			hits[0] += index.nearest(points[i], 5, Point::distance).size();
+		timings[2] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int i = 0; i < points.length; i += 10)
+			hits[0] += index.within(points[i], QUERY_HALF_SIZE, Point::distance).size();
+		timings[3] = System.nanoTime() - start;
+
+		return timings;
+	}
+
+	private static Point[] createQueryPoints(final Random random, final List<Polyline> segments){
+		final Point[] points = new Point[QUERIES];
+		for(int i = 0; i < QUERIES; i ++){
+			final Point start = segments.get(random.nextInt(segments.size())).getStartPoint();
+			points[i] = FACTORY.createPoint(start.getX() + (random.nextDouble() - 0.5) * QUERY_HALF_SIZE,
+				start.getY() + (random.nextDouble() - 0.5) * QUERY_HALF_SIZE);
+		}
+		return points;
+	}
+
+	private static List<Polyline> createCity(final Random random, final int count){
+		final List<Polyline> segments = new ArrayList<>(count);
+		for(int i = 0; i < count; i ++){
+			final double x = 12.2 + random.nextDouble() * 0.2;
+			final double y = 45.4 + random.nextDouble() * 0.2;
+			final double angle = random.nextDouble() * 2. * Math.PI;
+			segments.add(FACTORY.createPolyline(FACTORY.createPoint(x, y),
+				FACTORY.createPoint(x + Math.cos(angle) * 0.001, y + Math.sin(angle) * 0.001)));
+		}
+		return segments;
+	}
+
+	private static List<Polyline> extractSegments(final List<Polyline> polylines){
+		final List<Polyline> segments = new ArrayList<>();
+		for(final Polyline polyline : polylines){
+			final Point[] points = polyline.getPoints();
+			for(int i = 1; i < points.length; i ++)
+				segments.add(FACTORY.createPolyline(points[i - 1], points[i]));
+		}
+		return segments;
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.helpers.index;
+
+import io.github.mtrevisan.mapmatcher.helpers.hprtree.HPRtree;
+import io.github.mtrevisan.mapmatcher.spatial.Envelope;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.GeoidalCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+
+class SpatialIndexTest{
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new EuclideanCalculator());
+
+	private static final List<Supplier<SpatialIndex<Polyline>>> INDEXES = List.of(HPRtree::new, () -> new HPRtree<>(2), STRtree::new,
+		() -> new STRtree<>(2), GridIndex::new, () -> new GridIndex<>(1));
+
+
+	@Test
+	void query(){
+		Random random = new Random(42);
+		List<Polyline> geometries = createGeometries(random, 2_000);
+		for(Supplier<SpatialIndex<Polyline>> supplier : INDEXES){
+			SpatialIndex<Polyline> index = createIndex(supplier, geometries);
+
+			Assertions.assertEquals(geometries.size(), index.size());
+			for(int q = 0; q < 100; q ++){
+				double x = random.nextDouble() * 120. - 10.;
+				double y = random.nextDouble() * 120. - 10.;
+				Envelope searchEnvelope = Envelope.of(x, x + random.nextDouble() * 10., y, y + random.nextDouble() * 10.);
+				Set<Polyline> expected = new HashSet<>();
+				for(Polyline geometry : geometries)
+					if(geometry.getBoundingBox().intersects(searchEnvelope))
+						expected.add(geometry);
+
+				List<Polyline> found = index.query(searchEnvelope);
+
+				Assertions.assertEquals(expected, new HashSet<>(found));
+				//no item is visited twice
+				Assertions.assertEquals(expected.size(), found.size());
+			}
+			Assertions.assertThrows(IllegalStateException.class, () -> index.insert(Envelope.of(0., 1., 0., 1.), null));
+		}
+	}
+
+	@Test
+	void query_with_early_termination(){
+		List<Polyline> geometries = createGeometries(new Random(1), 500);
+		for(Supplier<SpatialIndex<Polyline>> supplier : INDEXES){
+			SpatialIndex<Polyline> index = createIndex(supplier, geometries);
+
+			List<Polyline> visited = new ArrayList<>();
+			boolean completed = index.query(-10., -10., 110., 110., (item, envelope) -> {
+				visited.add(item);
+				return (visited.size() < 3);
+			});
+
+			Assertions.assertFalse(completed);
+			Assertions.assertEquals(3, visited.size());
+		}
+	}
+
+	@Test
+	void nearest_and_within(){
+		Random random = new Random(7);
+		List<Polyline> geometries = createGeometries(random, 2_000);
+		for(Supplier<SpatialIndex<Polyline>> supplier : INDEXES){
+			SpatialIndex<Polyline> index = createIndex(supplier, geometries);
+
+			for(int q = 0; q < 30; q ++){
+				Point point = FACTORY.createPoint(random.nextDouble() * 120. - 10., random.nextDouble() * 120. - 10.);
+				List<Polyline> expected = new ArrayList<>(geometries);
+				expected.sort(Comparator.comparingDouble(point::distance));
+
+				Assertions.assertEquals(expected.subList(0, 5), index.nearest(point, 5, Point::distance));
+				double radius = point.distance(expected.get(3));
+				Assertions.assertEquals(expected.subList(0, 4), index.nearest(point, 10, radius, Point::distance));
+				Assertions.assertEquals(expected.subList(0, 4),
+					index.within(point, radius, Point::distance).stream().map(NearItem::getItem).toList());
+			}
+		}
+	}
+
+	@Test
+	void nearest_at_high_latitude(){
+		GeometryFactory factory = new GeometryFactory(new GeoidalCalculator());
+		Point point = factory.createPoint(0., 80.);
+		//the meridians converge, so the point of the meridian 10° E nearest to the search point lies at 80.15° N, poleward of the
+		//nearest corner of the eastern boxes
+		List<Point> points = new ArrayList<>();
+		points.add(factory.createPoint(10., 80.15));
+		for(int i = 0; i < 15; i ++)
+			points.add(factory.createPoint(10., 79. + i * 0.05));
+		//nearer than the nearest corner of the eastern boxes, but farther than their nearest point
+		for(int i = 0; i < 16; i ++)
+			points.add(factory.createPoint(-9.97 - i * 0.05, 80.));
+		List<Point> expected = new ArrayList<>(points);
+		expected.sort(Comparator.comparingDouble(point::distance));
+		List<Supplier<SpatialIndex<Point>>> indexes = List.of(HPRtree::new, () -> new HPRtree<>(2), STRtree::new, () -> new STRtree<>(2),
+			GridIndex::new, () -> new GridIndex<>(1));
+		for(Supplier<SpatialIndex<Point>> supplier : indexes){
+			SpatialIndex<Point> index = supplier.get();
+			for(Point item : points)
+				index.insert(Envelope.of(item), item);
+			index.build();
+
+			Assertions.assertEquals(expected.subList(0, 3), index.nearest(point, 3, Point::distance));
+		}
+	}
+
+	@Test
+	void corridor(){
+		Random random = new Random(11);
+		List<Polyline> geometries = createGeometries(random, 2_000);
+		Point[] trajectory = new Point[50];
+		for(int i = 0; i < trajectory.length; i ++)
+			trajectory[i] = FACTORY.createPoint(i * 2. + random.nextDouble(), i * 1.5 + random.nextDouble() * 10.);
+		//the gaps of the observations are skipped
+		trajectory[20] = null;
+		Corridor corridor = Corridor.of(trajectory, 2.);
+		Set<Polyline> expected = new HashSet<>();
+		for(Polyline geometry : geometries){
+			Envelope envelope = geometry.getBoundingBox();
+			if(corridor.intersects(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY()))
+				expected.add(geometry);
+		}
+		for(Supplier<SpatialIndex<Polyline>> supplier : INDEXES){
+			SpatialIndex<Polyline> index = createIndex(supplier, geometries);
+
+			List<Polyline> found = index.query(corridor);
+
+			Assertions.assertEquals(expected, new HashSet<>(found));
+			//no item is visited twice
+			Assertions.assertEquals(expected.size(), found.size());
+		}
+	}
+
+	@Test
+	void empty_index(){
+		for(Supplier<SpatialIndex<Polyline>> supplier : INDEXES){
+			SpatialIndex<Polyline> index = supplier.get();
+
+			Assertions.assertTrue(index.query(Envelope.of(0., 1., 0., 1.)).isEmpty());
+			Assertions.assertTrue(index.nearest(FACTORY.createPoint(0., 0.), 3, Point::distance).isEmpty());
+			Assertions.assertEquals(0, index.size());
+		}
+	}
+
+
+	private static List<Polyline> createGeometries(final Random random, final int count){
+		List<Polyline> geometries = new ArrayList<>();
+		for(int i = 0; i < count; i ++){
+			double x = random.nextDouble() * 100.;
+			double y = random.nextDouble() * 100.;
+			//a few long items, spanning many cells
+			double size = (i % 100 == 0? 20.: 1.);
+			geometries.add(FACTORY.createPolyline(FACTORY.createPoint(x, y),
+				FACTORY.createPoint(x + random.nextDouble() * size, y + random.nextDouble() * size)));
+		}
+		return geometries;
+	}
+
+	private static SpatialIndex<Polyline> createIndex(final Supplier<SpatialIndex<Polyline>> supplier, final List<Polyline> geometries){
+		SpatialIndex<Polyline> index = supplier.get();
+		for(Polyline geometry : geometries)
+			index.insert(geometry.getBoundingBox(), geometry);
+		index.build();
+		return index;
+	}
+
+}
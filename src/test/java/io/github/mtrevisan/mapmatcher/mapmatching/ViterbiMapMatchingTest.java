@@ -27,6 +27,7 @@ package io.github.mtrevisan.mapmatcher.mapmatching;
 import io.github.mtrevisan.mapmatcher.TestPathHelper;
 import io.github.mtrevisan.mapmatcher.graph.Edge;
 import io.github.mtrevisan.mapmatcher.graph.Graph;
+import io.github.mtrevisan.mapmatcher.graph.Node;
 import io.github.mtrevisan.mapmatcher.helpers.PathHelper;
 import io.github.mtrevisan.mapmatcher.mapmatching.calculators.emission.BayesianEmissionCalculator;
 import io.github.mtrevisan.mapmatcher.mapmatching.calculators.emission.EmissionProbabilityCalculator;
@@ -35,6 +36,7 @@ import io.github.mtrevisan.mapmatcher.mapmatching.calculators.initial.InitialPro
 import io.github.mtrevisan.mapmatcher.mapmatching.calculators.initial.UniformInitialCalculator;
 import io.github.mtrevisan.mapmatcher.mapmatching.calculators.transition.DirectionTransitionPlugin;
 import io.github.mtrevisan.mapmatcher.mapmatching.calculators.transition.TransitionProbabilityCalculator;
+import io.github.mtrevisan.mapmatcher.pathfinding.ResumableDijkstraPathFinder;
 import io.github.mtrevisan.mapmatcher.pathfinding.calculators.DistanceCalculator;
 import io.github.mtrevisan.mapmatcher.spatial.GPSPoint;
 import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
@@ -103,6 +105,62 @@ class ViterbiMapMatchingTest{
 		Assertions.assertEquals(expected, Arrays.toString(Arrays.stream(path).map(e -> (e != null? e.getID(): null)).toArray()));
 	}
 
+	@Test
+	void should_match_E0_E1_with_resumable_path_finder_and_release_its_search_spaces(){
+		final GeoidalCalculator topologyCalculator = new GeoidalCalculator();
+		final InitialProbabilityCalculator initialCalculator = new UniformInitialCalculator();
+		final TransitionProbabilityCalculator transitionCalculator = new TransitionProbabilityCalculator()
+			.withPlugin(new DirectionTransitionPlugin());
+		final EmissionProbabilityCalculator emissionCalculator = new BayesianEmissionCalculator();
+		final ResumableDijkstraPathFinder pathFinder = new ResumableDijkstraPathFinder(new DistanceCalculator(topologyCalculator));
+		final MapMatchingStrategy strategy = new ViterbiMapMatching(initialCalculator, transitionCalculator, emissionCalculator,
+			pathFinder);
+
+		final GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		final Point node11 = factory.createPoint(12.159747628109386, 45.66132709541773);
+		final Point node12_31_41 = factory.createPoint(12.238140517207398, 45.65897415921759);
+		final Point node22 = factory.createPoint(12.242949896905884, 45.69828882177029);
+		final Point node23 = factory.createPoint(12.200627355552967, 45.732876303059044);
+		final Point node32_51_61 = factory.createPoint(12.343946870589775, 45.65931029901404);
+		final Point node42 = factory.createPoint(12.25545428412434, 45.61054896081151);
+		final Point node52 = factory.createPoint(12.297776825477285, 45.7345547621876);
+		final Point node62 = factory.createPoint(12.322785599913317, 45.610885391198394);
+
+		final Polyline edge0 = factory.createPolyline(node11, node12_31_41);
+		final Polyline edge1 = factory.createPolyline(node12_31_41, node22, node23);
+		final Polyline edge2 = factory.createPolyline(node12_31_41, node32_51_61);
+		final Polyline edge3 = factory.createPolyline(node12_31_41, node42);
+		final Polyline edge4 = factory.createPolyline(node32_51_61, node52);
+		final Polyline edge5 = factory.createPolyline(node32_51_61, node62);
+
+		ZonedDateTime timestamp = ZonedDateTime.now();
+		final GPSPoint[] observations = new GPSPoint[]{
+			GPSPoint.of(12.142791962642718, 45.64824627395467, timestamp),
+			GPSPoint.of(12.166829013921557, 45.658700732309484, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.190331908504874, 45.663553924585955, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.219176370039179, 45.65720735774349, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.237871854367, 45.65310037232308, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.243213421318018, 45.675125223889154, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.23894016775725, 45.691544896329816, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.237337697671506, 45.70684070823364, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.23306444411162, 45.725861366408196, (timestamp = TestPathHelper.advanceTime(timestamp, 60))),
+			GPSPoint.of(12.215971429868546, 45.731454445518864, (timestamp = TestPathHelper.advanceTime(timestamp, 60)))
+		};
+
+		final Polyline[] edges = new Polyline[]{edge0, edge1, edge2, edge3, edge4, edge5};
+		final Collection<Polyline> observedEdges = TestPathHelper.extractObservedEdges(edges, observations, 100_000.);
+		final Graph graph = PathHelper.extractDirectGraph(observedEdges, 50.);
+
+		final Point[] filteredObservations = TestPathHelper.extractObservations(edges, observations, 400.);
+		final Edge[] path = strategy.findPath(graph, filteredObservations, 6_700.);
+
+		final String expected = "[null, 0, 0, 0, 3, 1, 1, 1, null, null]";
+		Assertions.assertEquals(expected, Arrays.toString(Arrays.stream(path).map(e -> (e != null? e.getID(): null)).toArray()));
+		//the search spaces are scoped to the match
+		for(final Node node : graph.nodes())
+			Assertions.assertEquals(0, pathFinder.settledNodes(node));
+	}
+
 	@Test
 	void should_match_E0_E1_with_gaussian_emission_probability_direct_graph(){
 		final GeoidalCalculator topologyCalculator = new GeoidalCalculator();
@@ -81,4 +81,20 @@ class AStarPathFinderTest{
 		Assertions.assertArrayEquals(testGraph.getShortestPath(), path);
 	}
 
+	@Test
+	void should_count_the_settled_nodes(){
+		ShortestPathPathfindingTestGraphs.TestGraphSummary testGraph = ShortestPathPathfindingTestGraphs.euclideanDistanceTestGraphConnected();
+		AStarPathFinder pathfinder = new AStarPathFinder(testGraph.getCalculator());
+
+		pathfinder.findPath(testGraph.getStart(), testGraph.getStart(), testGraph.getGraph());
+
+		Assertions.assertEquals(0, pathfinder.getSettledNodes());
+
+		Edge[] path = pathfinder.findPath(testGraph.getStart(), testGraph.getEnd(), testGraph.getGraph());
+
+		//every node of the path but the end is settled
+		Assertions.assertTrue(pathfinder.getSettledNodes() >= path.length);
+		Assertions.assertTrue(pathfinder.getSettledNodes() < testGraph.getGraph().nodes().size());
+	}
+
 }
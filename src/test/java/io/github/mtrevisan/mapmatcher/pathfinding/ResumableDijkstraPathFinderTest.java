@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.pathfinding;
+
+import io.github.mtrevisan.mapmatcher.graph.Edge;
+import io.github.mtrevisan.mapmatcher.graph.Graph;
+import io.github.mtrevisan.mapmatcher.graph.NearNodeMergeGraph;
+import io.github.mtrevisan.mapmatcher.graph.Node;
+import io.github.mtrevisan.mapmatcher.graph.VersionedGraph;
+import io.github.mtrevisan.mapmatcher.pathfinding.calculators.DistanceCalculator;
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Point;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+class ResumableDijkstraPathFinderTest{
+
+	@Test
+	void should_return_void_path(){
+		ShortestPathPathfindingTestGraphs.TestGraphSummary testGraph = ShortestPathPathfindingTestGraphs.euclideanDistanceTestGraphConnected();
+		PathFindingStrategy pathfinder = new ResumableDijkstraPathFinder(testGraph.getCalculator());
+
+		Edge[] path = pathfinder.findPath(testGraph.getStart(), testGraph.getStart(), testGraph.getGraph());
+
+		Assertions.assertEquals(0, path.length);
+	}
+
+	@Test
+	void should_return_the_shortest_path_connected(){
+		ShortestPathPathfindingTestGraphs.TestGraphSummary testGraph = ShortestPathPathfindingTestGraphs.euclideanDistanceTestGraphConnected();
+		PathFindingStrategy pathfinder = new ResumableDijkstraPathFinder(testGraph.getCalculator());
+
+		Edge[] path = pathfinder.findPath(testGraph.getStart(), testGraph.getEnd(), testGraph.getGraph());
+
+		Assertions.assertArrayEquals(testGraph.getShortestPath(), path);
+	}
+
+	@Test
+	void should_return_the_shortest_path_disconnected(){
+		ShortestPathPathfindingTestGraphs.TestGraphSummary testGraph = ShortestPathPathfindingTestGraphs.nodeCountTestGraphDisconnected();
+		PathFindingStrategy pathfinder = new ResumableDijkstraPathFinder(testGraph.getCalculator());
+
+		Edge[] path = pathfinder.findPath(testGraph.getStart(), testGraph.getEnd(), testGraph.getGraph());
+
+		Assertions.assertArrayEquals(testGraph.getShortestPath(), path);
+	}
+
+	@Test
+	void should_resume_the_search_for_a_farther_target(){
+		ShortestPathPathfindingTestGraphs.TestGraphSummary testGraph = ShortestPathPathfindingTestGraphs.euclideanDistanceTestGraphConnected();
+		ResumableDijkstraPathFinder pathfinder = new ResumableDijkstraPathFinder(testGraph.getCalculator());
+		Edge[] shortestPath = testGraph.getShortestPath();
+		Node middle = shortestPath[0].getTo();
+
+		Edge[] nearPath = pathfinder.findPath(testGraph.getStart(), middle, testGraph.getGraph());
+		int settledNear = pathfinder.settledNodes(testGraph.getStart());
+		Edge[] farPath = pathfinder.findPath(testGraph.getStart(), testGraph.getEnd(), testGraph.getGraph());
+		int settledFar = pathfinder.settledNodes(testGraph.getStart());
+
+		Assertions.assertArrayEquals(new Edge[]{shortestPath[0]}, nearPath);
+		Assertions.assertArrayEquals(shortestPath, farPath);
+		Assertions.assertTrue(settledNear > 0 && settledNear <= settledFar);
+		//already settled target: no further expansion
+		pathfinder.findPath(testGraph.getStart(), middle, testGraph.getGraph());
+		Assertions.assertEquals(settledFar, pathfinder.settledNodes(testGraph.getStart()));
+	}
+
+	@Test
+	void should_discard_the_search_spaces_when_the_graph_changes_in_place(){
+		EuclideanCalculator topologyCalculator = new EuclideanCalculator();
+		GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		Point a = factory.createPoint(0., 0.);
+		Point b = factory.createPoint(5., 5.);
+		Point c = factory.createPoint(10., 0.);
+		NearNodeMergeGraph graph = new NearNodeMergeGraph(0.5);
+		graph.addApproximateDirectEdge("AB", a, b);
+		graph.addApproximateDirectEdge("BC", b, c);
+		Node start = graph.getNodesNear(a).iterator().next();
+		Node end = graph.getNodesNear(c).iterator().next();
+		ResumableDijkstraPathFinder pathfinder = new ResumableDijkstraPathFinder(new DistanceCalculator(topologyCalculator));
+
+		Edge[] detour = pathfinder.findPath(start, end, graph);
+		graph.addApproximateDirectEdge("AC", a, c);
+		Edge[] shortcut = pathfinder.findPath(start, end, graph);
+
+		Assertions.assertEquals(2, detour.length);
+		Assertions.assertEquals(1, shortcut.length);
+		Assertions.assertEquals("AC", shortcut[0].getID());
+		pathfinder.clear();
+		Assertions.assertEquals(0, pathfinder.settledNodes(start));
+	}
+
+	@Test
+	void should_discard_the_search_spaces_when_an_edge_is_replaced_in_a_new_version(){
+		EuclideanCalculator topologyCalculator = new EuclideanCalculator();
+		GeometryFactory factory = new GeometryFactory(topologyCalculator);
+		Point a = factory.createPoint(0., 0.);
+		Point b = factory.createPoint(5., 5.);
+		Point c = factory.createPoint(10., 0.);
+		VersionedGraph graph = new VersionedGraph(0.5);
+		Graph first = graph.update(editor -> editor
+			.addEdge("AB", factory.createPolyline(a, b))
+			.addEdge("BC", factory.createPolyline(b, c))
+			.addEdge("CA", factory.createPolyline(c, a)))
+			.getGraph();
+		//same number of nodes and edges
+		Graph second = graph.update(editor -> editor
+			.removeEdge("CA")
+			.addEdge("AC", factory.createPolyline(a, c)))
+			.getGraph();
+		ResumableDijkstraPathFinder pathfinder = new ResumableDijkstraPathFinder(new DistanceCalculator(topologyCalculator));
+
+		Edge[] detour = pathfinder.findPath(findNode(first, a), findNode(first, c), first);
+		Edge[] shortcut = pathfinder.findPath(findNode(second, a), findNode(second, c), second);
+
+		Assertions.assertEquals(2, detour.length);
+		Assertions.assertEquals(1, shortcut.length);
+		Assertions.assertEquals("AC", shortcut[0].getID());
+	}
+
+
+	private static Node findNode(final Graph graph, final Point point){
+		for(final Node node : graph.nodes())
+			if(node.getPoint().equals(point))
+				return node;
+		return null;
+	}
+
+}
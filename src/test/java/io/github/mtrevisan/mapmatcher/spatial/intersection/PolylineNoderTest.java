@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2023 Mauro Trevisan
+ * <p>
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mtrevisan.mapmatcher.spatial.intersection;
+
+import io.github.mtrevisan.mapmatcher.spatial.GeometryFactory;
+import io.github.mtrevisan.mapmatcher.spatial.Polyline;
+import io.github.mtrevisan.mapmatcher.spatial.topologies.EuclideanCalculator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+class PolylineNoderTest{
+
+	private static final GeometryFactory FACTORY = new GeometryFactory(new EuclideanCalculator());
+
+
+	@Test
+	void should_split_at_crossings(){
+		final List<Polyline> polylines = Arrays.asList(
+			FACTORY.createPolyline(FACTORY.createPoint(0.8, 6.1), FACTORY.createPoint(11.72, 9.32)),
+			FACTORY.createPolyline(FACTORY.createPoint(6.84, 3.56), FACTORY.createPoint(15.06, 8.38)),
+			FACTORY.createPolyline(FACTORY.createPoint(3.5, 8.17), FACTORY.createPoint(10.44, 4.08)),
+			FACTORY.createPolyline(FACTORY.createPoint(13.32, 4.22), FACTORY.createPoint(2.42, 12.67))
+		);
+
+		final List<Polyline[]> pieces = new PolylineNoder(1)
+			.node(polylines);
+
+		//4 crossings, each one splits two polylines
+		Assertions.assertEquals(12, countPieces(pieces));
+		Assertions.assertEquals(3, pieces.get(0).length);
+		Assertions.assertEquals(polylines.get(0).getStartPoint(), pieces.get(0)[0].getStartPoint());
+		Assertions.assertEquals(pieces.get(0)[0].getEndPoint(), pieces.get(0)[1].getStartPoint());
+		Assertions.assertEquals(polylines.get(0).getEndPoint(), pieces.get(0)[2].getEndPoint());
+	}
+
+	@Test
+	void should_split_at_vertices_and_junctions(){
+		final List<Polyline> polylines = Arrays.asList(
+			//crosses the second polyline on one of its vertices
+			FACTORY.createPolyline(FACTORY.createPoint(0., 0.), FACTORY.createPoint(2., 2.), FACTORY.createPoint(4., 0.)),
+			FACTORY.createPolyline(FACTORY.createPoint(0., 2.), FACTORY.createPoint(4., 2.)),
+			//ends on the interior of the second polyline
+			FACTORY.createPolyline(FACTORY.createPoint(3., 4.), FACTORY.createPoint(3., 2.)),
+			//touches nothing
+			FACTORY.createPolyline(FACTORY.createPoint(10., 10.), FACTORY.createPoint(11., 11.))
+		);
+
+		final List<Polyline[]> pieces = new PolylineNoder()
+			.node(polylines);
+
+		Assertions.assertEquals(2, pieces.get(0).length);
+		Assertions.assertEquals("LINESTRING (0.0 0.0, 2.0 2.0)", pieces.get(0)[0].toString());
+		Assertions.assertEquals("LINESTRING (2.0 2.0, 4.0 0.0)", pieces.get(0)[1].toString());
+		Assertions.assertEquals(3, pieces.get(1).length);
+		Assertions.assertEquals("LINESTRING (2.0 2.0, 3.0 2.0)", pieces.get(1)[1].toString());
+		Assertions.assertEquals(1, pieces.get(2).length);
+		Assertions.assertSame(polylines.get(3), pieces.get(3)[0]);
+	}
+
+	@Test
+	void should_not_depend_on_partitioning(){
+		final Random random = new Random(42);
+		final List<Polyline> polylines = new ArrayList<>();
+		for(int i = 0; i < 300; i ++)
+			polylines.add(FACTORY.createPolyline(
+				FACTORY.createPoint(random.nextDouble() * 100., random.nextDouble() * 100.),
+				FACTORY.createPoint(random.nextDouble() * 100., random.nextDouble() * 100.),
+				FACTORY.createPoint(random.nextDouble() * 100., random.nextDouble() * 100.)));
+
+		final List<Polyline[]> pieces = new PolylineNoder(7)
+			.node(polylines);
+		final List<Polyline[]> expected = new PolylineNoder(Integer.MAX_VALUE)
+			.node(polylines);
+
+		Assertions.assertEquals(polylines.size(), pieces.size());
+		for(int i = 0; i < polylines.size(); i ++)
+			Assertions.assertArrayEquals(expected.get(i), pieces.get(i));
+		Assertions.assertEquals(polylines.size() + 2 * countCrossings(polylines), countPieces(pieces));
+	}
+
+
+	private static int countPieces(final List<Polyline[]> pieces){
+		int count = 0;
+		for(final Polyline[] polylinePieces : pieces)
+			count += polylinePieces.length;
+		return count;
+	}
+
+	/**
+	 * Counts the crossings by brute force, assuming no crossing is on a vertex.
+	 */
+	private static int countCrossings(final List<Polyline> polylines){
+		final EuclideanCalculator calculator = new EuclideanCalculator();
+		int count = 0;
+		for(int i = 0; i < polylines.size(); i ++)
+			for(int j = i; j < polylines.size(); j ++)
+				for(int si = 0; si < 2; si ++)
+					for(int sj = (i == j? si + 2: 0); sj < 2; sj ++)
+						count += calculator.intersection(segment(polylines.get(i), si), segment(polylines.get(j), sj))
+							.size();
+		return count;
+	}
+
+	private static Polyline segment(final Polyline polyline, final int index){
+		return FACTORY.createPolyline(polyline.getPoints()[index], polyline.getPoints()[index + 1]);
+	}
+
+}